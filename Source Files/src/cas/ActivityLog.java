@@ -10,6 +10,14 @@ import java.text.SimpleDateFormat;
 
 public class ActivityLog{
 	
+	private final int userId;
+	private final String postcode;
+	private final int barcode;
+	private final long retailPrice;
+	private final int quantity;
+	private final String status;
+	private final String paymentType;
+	private final long date;
 	private final String log;
 	private static SimpleDateFormat formatter = new SimpleDateFormat("dd-MM-yyyy");
 	
@@ -23,13 +31,8 @@ public class ActivityLog{
 	 * @param status A description of the activity.
 	 */
 	public ActivityLog(User user, Product product, int quantity, String status) {
-		this.log = user.getId() + ", " + 
-				   user.getPostcode() + ", " +
-				   product.getBarcode() + ", " +
-				   product.getRetailPrice() + ", " +
-				   quantity + ", " + 
-				   status + ", " + 
-				   formatter.format(new Date());
+		this(user.getId(), user.getPostcode(), product.getBarcode(), product.getRetailPricePence(),
+				quantity, status, null, new Date());
 	}
 	
 	/**
@@ -43,14 +46,108 @@ public class ActivityLog{
 	 * @param paymentType The payment type involved in the activity.
 	 */
 	public ActivityLog(User user, Product product, int quantity, String status, String paymentType) {
-		this.log = user.getId() + ", " + 
-				   user.getPostcode() + ", " +
-				   product.getBarcode() + ", " + 
-				   product.getRetailPrice() + ", " +
-				   quantity + ", " + 
-				   status + ", " + 
-				   paymentType + ", " + 
-				   formatter.format(new Date());
+		this(user.getId(), user.getPostcode(), product.getBarcode(), product.getRetailPricePence(),
+				quantity, status, paymentType, new Date());
+	}
+	
+	/**
+	 * Creates an ActivityLog instance from the fields of an activity which
+	 * has already been logged, e.g. one read back from a StorageEngine.
+	 * @param userId The id of the User involved in the activity.
+	 * @param postcode The postcode of the User involved in the activity.
+	 * @param barcode The bar code of the Product involved in the activity.
+	 * @param retailPrice The retail price in pence of the Product at the time of the activity.
+	 * @param quantity The amount of the Product involved in the activity.
+	 * @param status A description of the activity.
+	 * @param paymentType The payment type involved in the activity, or null if there was none.
+	 * @param date When the activity occurred.
+	 */
+	public ActivityLog(int userId, String postcode, int barcode, long retailPrice, int quantity,
+			String status, String paymentType, Date date) {
+		this.userId = userId;
+		this.postcode = postcode;
+		this.barcode = barcode;
+		this.retailPrice = retailPrice;
+		this.quantity = quantity;
+		this.status = status;
+		this.paymentType = paymentType;
+		this.date = date.getTime();
+		
+		//The formatter is not thread safe, so the log is formatted once by the thread creating it.
+		synchronized(formatter) {
+			this.log = userId + ", " + 
+					   postcode + ", " +
+					   barcode + ", " +
+					   Money.format(retailPrice) + ", " +
+					   quantity + ", " + 
+					   status + ", " + 
+					   (paymentType == null ? "" : paymentType + ", ") + 
+					   formatter.format(date);
+		}
+	}
+	
+	/**
+	 * Returns the id of the User involved in the activity.
+	 * @return the id of the User involved in the activity.
+	 */
+	public int getUserId() {
+		return this.userId;
+	}
+	
+	/**
+	 * Returns the postcode of the User involved in the activity.
+	 * @return the postcode of the User involved in the activity.
+	 */
+	public String getPostcode() {
+		return this.postcode;
+	}
+	
+	/**
+	 * Returns the bar code of the Product involved in the activity.
+	 * @return the bar code of the Product involved in the activity.
+	 */
+	public int getBarcode() {
+		return this.barcode;
+	}
+	
+	/**
+	 * Returns the retail price in pence of the Product at the time of the activity.
+	 * @return the retail price in pence of the Product at the time of the activity.
+	 */
+	public long getRetailPricePence() {
+		return this.retailPrice;
+	}
+	
+	/**
+	 * Returns the amount of the Product involved in the activity.
+	 * @return the amount of the Product involved in the activity.
+	 */
+	public int getQuantity() {
+		return this.quantity;
+	}
+	
+	/**
+	 * Returns the description of the activity.
+	 * @return the description of the activity.
+	 */
+	public String getStatus() {
+		return this.status;
+	}
+	
+	/**
+	 * Returns the payment type involved in the activity.
+	 * @return the payment type involved in the activity, or null if there was none.
+	 */
+	public String getPaymentType() {
+		return this.paymentType;
+	}
+	
+	/**
+	 * Returns when the activity occurred.
+	 * @return when the activity occurred.
+	 */
+	public Date getDate() {
+		return new Date(this.date);
 	}
 	
 	/**
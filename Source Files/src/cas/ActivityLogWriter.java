@@ -0,0 +1,202 @@
+/**
+ * Appends ActivityLogs to the ActivityLog file through a single channel which
+ * is kept open. Records written by concurrent or consecutive calls are grouped
+ * into one write and, depending on the DurabilityPolicy, one force to disk.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class ActivityLogWriter {
+	private final FileChannel channel;
+	private final DurabilityPolicy policy;
+	private ScheduledExecutorService scheduler;
+
+	//Records waiting to be written, and sequence numbers of the batches written so far.
+	private StringBuilder pending;
+	private long enqueuedSeq;
+	private long writtenSeq;
+	private boolean isWriting;
+	private boolean isClosed;
+
+	/**
+	 * Creates an ActivityLogWriter which appends to the file at the given path.
+	 * @param activityLogPath The file path of the ActivityLog file.
+	 * @param policy When written records are forced to disk.
+	 * @param intervalMillis How often the background thread writes records
+	 * when the policy is not EVERY_RECORD.
+	 * @throws IOException Thrown if the ActivityLog file cannot be opened.
+	 */
+	public ActivityLogWriter(String activityLogPath, DurabilityPolicy policy,
+			long intervalMillis) throws IOException {
+		if(activityLogPath == null)
+			throw new IllegalArgumentException("File path is null");
+		if(policy == null)
+			throw new IllegalArgumentException("Policy is null");
+		if(intervalMillis <= 0)
+			throw new IllegalArgumentException("Interval must be positive");
+
+		this.channel = FileChannel.open(Paths.get(activityLogPath), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		this.policy = policy;
+		this.pending = new StringBuilder();
+
+		if(policy != DurabilityPolicy.EVERY_RECORD) {
+			this.scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "ActivityLog writer");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+			this.scheduler.scheduleWithFixedDelay(new Runnable() {
+				public void run() {
+					try {
+						commit(currentSeq());
+					} catch(IOException e) {
+						System.err.println("Activity logs could not be written.\n" + e.getMessage());
+					}
+				}
+			}, intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+		}
+	}
+
+	/**
+	 * Writes the given ActivityLogs to the ActivityLog file. Under the EVERY_RECORD
+	 * policy this returns once they are on disk; otherwise they are written by
+	 * the background thread.
+	 * @param logs The ActivityLogs to write.
+	 * @throws IOException Thrown if the ActivityLog file cannot be written to.
+	 */
+	public void write(List<ActivityLog> logs) throws IOException {
+		if(logs == null)
+			throw new IllegalArgumentException("Logs is null");
+
+		long seq;
+		synchronized(this) {
+			if(isClosed)
+				throw new IOException("ActivityLog writer is closed");
+
+			for(ActivityLog log : logs)
+				pending.append(log.toString()).append('\n');
+			seq = ++enqueuedSeq;
+		}
+
+		if(policy == DurabilityPolicy.EVERY_RECORD)
+			commit(seq);
+	}
+
+	/**
+	 * Writes the given ActivityLogs to the ActivityLog file and returns once
+	 * they are on disk, whatever the policy. Used for logs which must be on
+	 * disk before the change they record is made, e.g. the sales of a checkout.
+	 * @param logs The ActivityLogs to write.
+	 * @throws IOException Thrown if the ActivityLog file cannot be written to.
+	 */
+	public void writeNow(List<ActivityLog> logs) throws IOException {
+		write(logs);
+		if(policy != DurabilityPolicy.EVERY_RECORD) {
+			commit(currentSeq());
+			if(policy == DurabilityPolicy.ON_SHUTDOWN)
+				channel.force(false);
+		}
+	}
+
+	/**
+	 * Writes every record waiting to be written and forces the file to disk.
+	 * @throws IOException Thrown if the ActivityLog file cannot be written to.
+	 */
+	public void flush() throws IOException {
+		commit(currentSeq());
+		channel.force(false);
+	}
+
+	/**
+	 * Writes every record waiting to be written, forces the file to disk
+	 * and closes it. The writer cannot be used after it is closed.
+	 * @throws IOException Thrown if the ActivityLog file cannot be written to.
+	 */
+	public void close() throws IOException {
+		if(scheduler != null)
+			scheduler.shutdown();
+
+		synchronized(this) {
+			if(isClosed)
+				return;
+			isClosed = true;
+		}
+
+		flush();
+		channel.close();
+	}
+
+	/**
+	 * Returns the sequence number of the last batch of records to be enqueued.
+	 * @return The sequence number of the last batch of records.
+	 */
+	private synchronized long currentSeq() {
+		return enqueuedSeq;
+	}
+
+	/**
+	 * Ensures every batch up to and including the given sequence number has been
+	 * written. The first caller to find no write in progress writes everything
+	 * enqueued so far, including other callers' records, which then return
+	 * without writing.
+	 * @param seq The sequence number of the batch which must be written.
+	 * @throws IOException Thrown if the ActivityLog file cannot be written to.
+	 */
+	private void commit(long seq) throws IOException {
+		String batch;
+		long batchSeq;
+
+		synchronized(this) {
+			while(writtenSeq < seq && isWriting) {
+				try {
+					wait();
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IOException("Interrupted while writing activity logs", e);
+				}
+			}
+			if(writtenSeq >= seq)
+				return;
+
+			isWriting = true;
+			batch = pending.toString();
+			pending = new StringBuilder();
+			batchSeq = enqueuedSeq;
+		}
+
+		boolean isWritten = false;
+		try {
+			ByteBuffer buffer = ByteBuffer.wrap(batch.getBytes(StandardCharsets.UTF_8));
+			while(buffer.hasRemaining())
+				channel.write(buffer);
+			if(policy != DurabilityPolicy.ON_SHUTDOWN)
+				channel.force(false);
+			isWritten = true;
+		}
+		finally {
+			synchronized(this) {
+				if(isWritten)
+					writtenSeq = batchSeq;
+				else
+					pending.insert(0, batch);
+				isWriting = false;
+				notifyAll();
+			}
+		}
+	}
+}
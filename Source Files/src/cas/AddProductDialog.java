@@ -28,6 +28,7 @@ import javax.swing.DefaultComboBoxModel;
 import java.awt.Dialog.ModalityType;
 import java.awt.event.ActionListener;
 import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
 import java.awt.event.ActionEvent;
 
 public class AddProductDialog extends JDialog {
@@ -40,15 +41,15 @@ public class AddProductDialog extends JDialog {
 	private JTextField txtRetailPrice;
 	private JTextField txtButtonCount;
 	
-	private Database db;
+	private AsyncDatabase db;
 
 	/**
 	 * Creates the AddProductDialog, initialises its
 	 * fields and events.
-	 * @param systemDatabase The Database object which is
+	 * @param systemDatabase The AsyncDatabase object which is
 	 * being used by the system/main frame.
 	 */
-	public AddProductDialog(Database systemDatabase) {
+	public AddProductDialog(AsyncDatabase systemDatabase) {
 		if(systemDatabase == null)
 			throw new IllegalArgumentException("systemDatabase is null");
 		
@@ -282,6 +283,9 @@ public class AddProductDialog extends JDialog {
 		JPanel buttonPane = new JPanel();
 		buttonPane.setLayout(new FlowLayout(FlowLayout.RIGHT));
 		getContentPane().add(buttonPane, BorderLayout.SOUTH);
+		
+		BusyIndicator busyIndicator = new BusyIndicator();
+		buttonPane.add(busyIndicator);
 	
 		JButton btnSubmit = new JButton("Submit");
 		btnSubmit.addActionListener(new ActionListener() {
@@ -320,13 +324,24 @@ public class AddProductDialog extends JDialog {
 						formProduct = new Keyboard(barcode, brand, colour, isWired, type, layout, originalCost, retailPrice, quantity);
 					}
 					
-					//If correctly parsed, add Product to Database.
-					Inventory products = db.getProducts();
-					if(!products.add(formProduct))
-						throw new Exception("A product with this barcode already exists.");
-					
-					db.writeProducts(products);	
-					dispose();
+					//If correctly parsed, add Product to Database in the background.
+					btnSubmit.setEnabled(false);
+					CompletableFuture<Boolean> added = db.addProduct(formProduct);
+					busyIndicator.track(added);
+					AsyncDatabase.whenDone(added, new AsyncDatabase.Callback<Boolean>() {
+						public void succeeded(Boolean isAdded) {
+							btnSubmit.setEnabled(true);
+							if(isAdded)
+								dispose();
+							else
+								showWarning("A product with this barcode already exists.");
+						}
+						
+						public void failed(Throwable cause) {
+							btnSubmit.setEnabled(true);
+							showWarning(cause.getMessage());
+						}
+					});
 				
 				} catch(NumberFormatException ex) {
 					showWarning("A number you entered is invalid.");
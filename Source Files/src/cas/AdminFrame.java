@@ -7,11 +7,12 @@ package cas;
 
 import java.awt.BorderLayout;
 import java.awt.EventQueue;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.border.EmptyBorder;
-import javax.swing.table.DefaultTableModel;
 import javax.swing.JTable;
 import javax.swing.JScrollPane;
 import javax.swing.JButton;
@@ -21,7 +22,8 @@ import javax.swing.JOptionPane;
 
 import java.awt.Font;
 import java.awt.event.ActionListener;
-import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import java.awt.event.ActionEvent;
 import javax.swing.ListSelectionModel;
 
@@ -29,23 +31,29 @@ public class AdminFrame extends JFrame {
 
 	private JPanel contentPane;
 	private JTable tblProducts;
-	private DefaultTableModel dtmProduct;
+	private ProductTableModel productModel;
 	
 	private Database db;
+	private AsyncDatabase asyncDb;
+	private Inventory products;
+	private BusyIndicator busyIndicator;
+	private InventoryListener inventoryListener;
 	
 	/**
 	 * Creates the AdminFrame and initialises its fields and events.
-	 * @param systemDatabase The Database object which is
+	 * @param systemDatabase The AsyncDatabase object which is
 	 * being used by the system/main frame.
 	 */
-	public AdminFrame(Database systemDatabase) {
+	public AdminFrame(AsyncDatabase systemDatabase) {
 		if(systemDatabase == null)
 			throw new IllegalArgumentException("systemDatabase is null");
 		
-		this.db = systemDatabase;	
+		this.asyncDb = systemDatabase;
+		this.db = systemDatabase.getDatabase();	
 		
 		setTitle("CASH - Admin");
-		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		//Disposed rather than exited on close, so that windowClosed can stop listening to the stock first.
+		setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 		setBounds(100, 100, 900, 480);
 		contentPane = new JPanel();
 		contentPane.setBorder(new EmptyBorder(5, 5, 5, 5));
@@ -64,8 +72,8 @@ public class AdminFrame extends JFrame {
 		btnAddProduct.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				//Launches the dialog for adding a new product to the system.
-				new AddProductDialog(db);
-				populateTable();
+				//The new product is shown once the Database reports it.
+				new AddProductDialog(asyncDb);
 				
 			}
 		});
@@ -78,11 +86,30 @@ public class AdminFrame extends JFrame {
 		lblTable.setBounds(10, 11, 125, 20);
 		contentPane.add(lblTable);
 		
-		this.dtmProduct = new DefaultTableModel();
-		dtmProduct.setColumnIdentifiers(new Object[] {"Barcode", "Name", "Type", "Brand", "Colour",
-													  "Connectivity", "Quantity", "Original Cost",
-													  "Retail Price", "Additional Information"});
-		tblProducts.setModel(dtmProduct);
+		busyIndicator = new BusyIndicator();
+		busyIndicator.setBounds(10, 411, 729, 14);
+		contentPane.add(busyIndicator);
+		
+		this.productModel = new ProductTableModel(true);
+		tblProducts.setModel(productModel);
+		
+		//Keeps the shown products up to date as the stock changes.
+		this.inventoryListener = new InventoryListener() {
+			public void inventoryChanged(final List<InventoryEvent> events) {
+				EventQueue.invokeLater(new Runnable() {
+					public void run() {
+						applyChanges(events);
+					}
+				});
+			}
+		};
+		db.addInventoryListener(inventoryListener);
+		addWindowListener(new WindowAdapter() {
+			public void windowClosed(WindowEvent e) {
+				db.removeInventoryListener(inventoryListener);
+				System.exit(0);
+			}
+		});
 		populateTable();
 		
 		this.setVisible(true);
@@ -92,56 +119,51 @@ public class AdminFrame extends JFrame {
 	 * Populates tblProducts with the the products held in systemDatabase. 
 	 */
 	private void populateTable() {
-		try {
-			Inventory products = db.getProducts();
-			products.sortByQuantity();
-			dtmProduct.setRowCount(0);
-		    
-			for(int i = 0; i < products.size(); i++) {
-				Product p = products.get(i);
-				Object[] rowData;
-				
-				if(p instanceof Keyboard) {
-					rowData = new Object[] {
-							p.getBarcode(),
-							"Keyboard",
-							((Keyboard)p).getType(),
-							p.getBrand(),
-							p.getColour(),
-							p.isWired() ? "wired" : "wireless",
-							p.getQuantity(),
-							"£" + p.getOriginalCost(),
-							"£" + p.getRetailPrice(),
-							((Keyboard)p).getLayout().toString() + " layout"
-					};
-					
-				}
-				else if(p instanceof Mouse) {
-					rowData = new Object[] {
-							p.getBarcode(),
-							"Mouse",
-							((Mouse)p).getType(),
-							p.getBrand(),
-							p.getColour(),
-							p.isWired() ? "wired" : "wireless",
-							p.getQuantity(),
-							"£" + p.getOriginalCost(),
-							"£" + p.getRetailPrice(),
-							((Mouse)p).getButtonCount() + " buttons"
-					};
-					
-				}
-				//Ignore any unrecognised product subclasses.
-				else {
-					continue;
-				}
-				
-				dtmProduct.addRow(rowData);
+		CompletableFuture<Inventory> loading = asyncDb.getProducts();
+		busyIndicator.track(loading);
+		AsyncDatabase.whenDone(loading, new AsyncDatabase.Callback<Inventory>() {
+			public void succeeded(Inventory result) {
+				products = result;
+				showProducts();
 			}
+			
+			public void failed(Throwable cause) {
+				showWarning(cause.getMessage());
+			}
+		});
+	}
+	
+	/**
+	 * Shows every product in products in tblProducts, sorted by quantity.
+	 */
+	private void showProducts() {
+		InventoryView view = products.view();
+		view.sort(ProductComparators.BY_QUANTITY);
+		productModel.setView(view);
+	}
+	
+	/**
+	 * Applies the given changes to the stock to the products shown, keeping
+	 * them sorted by quantity. Changes in quantity only sort the shown view
+	 * again; if products were added or removed, every product is shown again.
+	 * @param events The changes to the stock.
+	 */
+	private void applyChanges(List<InventoryEvent> events) {
+		if(products == null)
+			return;
 		
-		} catch(IOException ex) {
-			showWarning(ex.getMessage());			
+		boolean isReshaped = false;
+		for(InventoryEvent event : events) {
+			products.apply(event);
+			if(event.getType() != InventoryEvent.Type.QUANTITY_CHANGED)
+				isReshaped = true;
 		}
+		
+		//Removing products makes the shown view unusable, so it must be replaced.
+		if(isReshaped)
+			showProducts();
+		else
+			productModel.sort(ProductComparators.BY_QUANTITY);
 	}
 	
 	/**
@@ -0,0 +1,254 @@
+/**
+ * An AsyncDatabase runs the operations of a Database on a background thread
+ * and returns a CompletableFuture for each, so that the Swing event dispatch
+ * thread never waits for the stock to be read or written. Operations are run
+ * one at a time in the order they were requested, so a change requested
+ * before a read is seen by it.
+ * <p>
+ * An operation can be cancelled until it starts, in which case it is never
+ * run. Once an operation has started it runs to completion, as stopping a
+ * write part way would leave the files inconsistent. If an operation fails,
+ * its future completes exceptionally with the IOException or
+ * IllegalArgumentException thrown by the Database.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.awt.EventQueue;
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.function.BiConsumer;
+
+public class AsyncDatabase implements Closeable {
+
+	/**
+	 * Receives the outcome of an operation on the event dispatch thread.
+	 */
+	public interface Callback<T> {
+		/**
+		 * Called if the operation succeeded.
+		 * @param result The result of the operation.
+		 */
+		public void succeeded(T result);
+
+		/**
+		 * Called if the operation failed. Not called if it was cancelled.
+		 * @param cause The exception thrown by the operation.
+		 */
+		public void failed(Throwable cause);
+	}
+
+	private final Database db;
+	private final ExecutorService executor;
+
+	/**
+	 * Creates an AsyncDatabase which runs the operations of the given Database.
+	 * @param db The Database whose operations are run.
+	 */
+	public AsyncDatabase(Database db) {
+		if(db == null)
+			throw new IllegalArgumentException("Database is null");
+
+		this.db = db;
+		this.executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Database");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Returns the Database whose operations are run. Its methods block, so
+	 * they should not be called on the event dispatch thread.
+	 * @return The Database whose operations are run.
+	 */
+	public Database getDatabase() {
+		return this.db;
+	}
+
+	/**
+	 * Runs the given task on the background thread, in turn with the other
+	 * operations. Used for work which makes several calls to the Database.
+	 * @param task The task to run.
+	 * @return A future completed with the result of the task.
+	 */
+	public <T> CompletableFuture<T> submit(final Callable<T> task) {
+		if(task == null)
+			throw new IllegalArgumentException("Task is null");
+
+		final CompletableFuture<T> future = new CompletableFuture<T>();
+		executor.execute(new Runnable() {
+			public void run() {
+				//The future is already done if it was cancelled before it started.
+				if(future.isDone())
+					return;
+
+				try {
+					future.complete(task.call());
+				}
+				catch(Throwable e) {
+					future.completeExceptionally(e);
+				}
+			}
+		});
+		return future;
+	}
+
+	//Methods for handling stock.
+	/**
+	 * Reads the products in stock. See Database.getProducts.
+	 * @return A future completed with the products in stock.
+	 */
+	public CompletableFuture<Inventory> getProducts() {
+		return submit(new Callable<Inventory>() {
+			public Inventory call() throws Exception {
+				return db.getProducts();
+			}
+		});
+	}
+
+	/**
+	 * Reads a snapshot of the products in stock. See Database.getSnapshot.
+	 * @return A future completed with a snapshot of the products in stock.
+	 */
+	public CompletableFuture<InventorySnapshot> getSnapshot() {
+		return submit(new Callable<InventorySnapshot>() {
+			public InventorySnapshot call() throws Exception {
+				return db.getSnapshot();
+			}
+		});
+	}
+
+	/**
+	 * Reads the product with the given bar code. See Database.getProduct.
+	 * @param barcode The bar code of the product.
+	 * @return A future completed with the product, or with null if there is none.
+	 */
+	public CompletableFuture<Product> getProduct(final int barcode) {
+		return submit(new Callable<Product>() {
+			public Product call() throws Exception {
+				return db.getProduct(barcode);
+			}
+		});
+	}
+
+	/**
+	 * Adds the given product to the stock. See Database.addProduct.
+	 * @param product The product to add. It is copied, so it may be changed afterwards.
+	 * @return A future completed with true if the product was added, or
+	 * false if its bar code is already in use.
+	 */
+	public CompletableFuture<Boolean> addProduct(Product product) {
+		final Product copy = product.copy();
+		return submit(new Callable<Boolean>() {
+			public Boolean call() throws Exception {
+				return db.addProduct(copy);
+			}
+		});
+	}
+
+	/**
+	 * Changes the quantity in stock of a product. See Database.adjustQuantity.
+	 * @param barcode The bar code of the product whose quantity is changed.
+	 * @param delta The amount to add to the quantity. Negative to remove stock.
+	 * @param reason A description of why the quantity changed, e.g. "purchased".
+	 * @return A future completed once the quantity has been changed.
+	 */
+	public CompletableFuture<Void> adjustQuantity(final int barcode, final int delta, final String reason) {
+		return submit(new Callable<Void>() {
+			public Void call() throws Exception {
+				db.adjustQuantity(barcode, delta, reason);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Replaces the products in stock. See Database.writeProducts.
+	 * @param products The products which should be in stock. They are
+	 * copied, so they may be changed afterwards.
+	 * @return A future completed once the products have been written.
+	 */
+	public CompletableFuture<Void> writeProducts(Inventory products) {
+		final Inventory copy = products.copy();
+		return submit(new Callable<Void>() {
+			public Void call() throws Exception {
+				db.writeProducts(copy);
+				return null;
+			}
+		});
+	}
+	//End methods for handling stock.
+
+	/**
+	 * Reads every User. See Database.getUsers.
+	 * @return A future completed with every User.
+	 */
+	public CompletableFuture<ArrayList<User>> getUsers() {
+		return submit(new Callable<ArrayList<User>>() {
+			public ArrayList<User> call() throws Exception {
+				return db.getUsers();
+			}
+		});
+	}
+
+	/**
+	 * Writes the given ActivityLogs. See Database.writeActivityLogs.
+	 * @param logs The ActivityLogs to write.
+	 * @return A future completed once the ActivityLogs have been written.
+	 */
+	public CompletableFuture<Void> writeActivityLogs(List<ActivityLog> logs) {
+		final ArrayList<ActivityLog> copy = new ArrayList<ActivityLog>(logs);
+		return submit(new Callable<Void>() {
+			public Void call() throws Exception {
+				db.writeActivityLogs(copy);
+				return null;
+			}
+		});
+	}
+
+	/**
+	 * Stops the background thread once every operation already requested
+	 * has run. The Database itself is not closed.
+	 */
+	@Override
+	public void close() {
+		executor.shutdown();
+	}
+
+	/**
+	 * Gives the outcome of the given future to the given callback on the
+	 * event dispatch thread once it completes. Nothing is called if the
+	 * future is cancelled.
+	 * @param future The future of an operation.
+	 * @param callback The callback to give the outcome to.
+	 */
+	public static <T> void whenDone(CompletableFuture<T> future, final Callback<T> callback) {
+		future.whenComplete(new BiConsumer<T, Throwable>() {
+			public void accept(final T result, final Throwable error) {
+				EventQueue.invokeLater(new Runnable() {
+					public void run() {
+						Throwable cause = error;
+						if(cause instanceof CompletionException && cause.getCause() != null)
+							cause = cause.getCause();
+
+						if(cause == null)
+							callback.succeeded(result);
+						else if(!(cause instanceof CancellationException))
+							callback.failed(cause);
+					}
+				});
+			}
+		});
+	}
+}
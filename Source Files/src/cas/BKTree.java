@@ -0,0 +1,162 @@
+/**
+ * A BKTree holds a set of terms, such as the distinct brands in stock, and
+ * finds every term within a given edit distance of a query. Each child of
+ * a node is keyed by its distance from the node's term, and by the triangle
+ * inequality only children whose key is within the query's limit of the
+ * query's distance from the node can hold matches, so a search visits a
+ * small part of the tree. The cost of a search depends on the number of
+ * distinct terms and the length of the query, never on how many products
+ * share a term.
+ * <p>
+ * Distances are Levenshtein distances: the fewest single character
+ * insertions, deletions and substitutions turning one term into another.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+
+public class BKTree {
+
+	/**
+	 * A term and its children, keyed by their distance from it.
+	 */
+	private static final class Node {
+		private final String term;
+		private HashMap<Integer, Node> children;
+
+		private Node(String term) {
+			this.term = term;
+		}
+	}
+
+	private Node root;
+	private int size;
+
+	/**
+	 * Adds the given term, unless it is already held.
+	 * @param term The term to add.
+	 * @return true if the term was added. Returns false if it was already held.
+	 */
+	public boolean add(String term) {
+		if(term == null)
+			throw new IllegalArgumentException("Term is null.");
+
+		if(root == null) {
+			root = new Node(term);
+			size++;
+			return true;
+		}
+
+		Node node = root;
+		while(true) {
+			int d = distance(term, node.term);
+			if(d == 0)
+				return false;
+
+			if(node.children == null)
+				node.children = new HashMap<Integer, Node>();
+			Node child = node.children.get(d);
+			if(child == null) {
+				node.children.put(d, new Node(term));
+				size++;
+				return true;
+			}
+			node = child;
+		}
+	}
+
+	/**
+	 * Returns the number of terms held.
+	 * @return The number of terms held.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns every term within the given distance of the query.
+	 * @param query The term to search for.
+	 * @param maxDistance The greatest distance of a returned term from the query.
+	 * @return A map from each term found to its distance from the query.
+	 */
+	public Map<String, Integer> search(String query, int maxDistance) {
+		if(query == null)
+			throw new IllegalArgumentException("Query is null.");
+		if(maxDistance < 0)
+			throw new IllegalArgumentException("Distance is negative.");
+
+		HashMap<String, Integer> found = new HashMap<String, Integer>();
+		if(root == null)
+			return found;
+
+		ArrayDeque<Node> pending = new ArrayDeque<Node>();
+		pending.push(root);
+		while(!pending.isEmpty()) {
+			Node node = pending.pop();
+			int d = distance(query, node.term);
+			if(d <= maxDistance)
+				found.put(node.term, d);
+
+			if(node.children == null)
+				continue;
+			for(int key = Math.max(1, d - maxDistance); key <= d + maxDistance; key++) {
+				Node child = node.children.get(key);
+				if(child != null)
+					pending.push(child);
+			}
+		}
+
+		return found;
+	}
+
+	/**
+	 * Returns the Levenshtein distance between the given strings.
+	 * @param a A string.
+	 * @param b Another string.
+	 * @return The edit distance between the strings.
+	 */
+	public static int distance(String a, String b) {
+		return distance(a, b, Integer.MAX_VALUE - 1);
+	}
+
+	/**
+	 * Returns the Levenshtein distance between the given strings, or
+	 * limit + 1 once it is known to be greater than limit, which saves
+	 * comparing the rest of two very different strings.
+	 * @param a A string.
+	 * @param b Another string.
+	 * @param limit The greatest distance of interest.
+	 * @return The edit distance between the strings, or limit + 1 if it is greater than limit.
+	 */
+	public static int distance(String a, String b, int limit) {
+		if(Math.abs(a.length() - b.length()) > limit)
+			return limit + 1;
+
+		//Two rows of the edit distance table, each one character of a longer than the last.
+		int[] previous = new int[b.length() + 1];
+		int[] current = new int[b.length() + 1];
+		for(int j = 0; j <= b.length(); j++)
+			previous[j] = j;
+
+		for(int i = 1; i <= a.length(); i++) {
+			current[0] = i;
+			int rowMin = current[0];
+			for(int j = 1; j <= b.length(); j++) {
+				int cost = a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1;
+				current[j] = Math.min(Math.min(current[j - 1] + 1, previous[j] + 1), previous[j - 1] + cost);
+				rowMin = Math.min(rowMin, current[j]);
+			}
+			if(rowMin > limit)
+				return limit + 1;
+
+			int[] swap = previous;
+			previous = current;
+			current = swap;
+		}
+
+		return Math.min(previous[b.length()], limit + 1);
+	}
+}
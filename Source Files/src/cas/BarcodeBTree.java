@@ -0,0 +1,474 @@
+/**
+ * A BarcodeBTree is a B+tree held in a file of 4KB pages which maps bar codes
+ * to int values, such as the slots of a FixedWidthProductStore. Finding,
+ * adding or changing a bar code reads one page per level of the tree, so only
+ * a handful of pages are touched however large the tree grows, and only a
+ * fixed number of recently used pages are kept in memory.
+ * <p>
+ * Page 0 is a header holding the root page, the number of pages and entries,
+ * and whether the tree was closed cleanly. Leaf pages hold sorted bar codes
+ * and their values, and are linked to the next leaf. Internal pages hold
+ * sorted bar codes separating the pages below them. Removing a bar code does
+ * not merge pages, as a catalogue rarely shrinks by much.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+public class BarcodeBTree implements Closeable {
+	public static final int PAGE_SIZE = 4096;
+	//Number of pages kept in memory.
+	private static final int CACHED_PAGES = 64;
+
+	private static final int MAGIC = 0x43415342;
+	private static final short VERSION = 1;
+	private static final int NO_PAGE = -1;
+
+	//Positions of the header fields.
+	private static final int ROOT_OFFSET = 8;
+	private static final int PAGE_COUNT_OFFSET = 12;
+	private static final int SIZE_OFFSET = 16;
+	private static final int CLEAN_OFFSET = 20;
+
+	//Layout of a page. A leaf's entries are key, value pairs. An internal
+	//page's entries are a first child followed by key, child pairs.
+	private static final int TYPE_OFFSET = 0;
+	private static final int COUNT_OFFSET = 2;
+	private static final int NEXT_LEAF_OFFSET = 4;
+	private static final int ENTRIES_OFFSET = 8;
+	private static final byte LEAF = 1;
+	private static final byte INTERNAL = 2;
+	//One less than fits, as a page holds one entry too many just before it is split.
+	private static final int LEAF_CAPACITY = (PAGE_SIZE - ENTRIES_OFFSET) / 8 - 1;
+	private static final int INTERNAL_CAPACITY = (PAGE_SIZE - ENTRIES_OFFSET - 4) / 8 - 1;
+
+	private final File indexFile;
+	private final FileChannel channel;
+	private final LinkedHashMap<Integer, Page> pages;
+	private final boolean wasClean;
+	private int root;
+	private int pageCount;
+	private int size;
+
+	/**
+	 * A page held in memory, and whether it has changed since it was read.
+	 */
+	private static class Page {
+		private final ByteBuffer data;
+		private boolean isDirty;
+
+		private Page(ByteBuffer data) {
+			this.data = data;
+		}
+	}
+
+	/**
+	 * The result of splitting a page: the first bar code of the new page and
+	 * the new page's number.
+	 */
+	private static class Split {
+		private final int key;
+		private final int page;
+
+		private Split(int key, int page) {
+			this.key = key;
+			this.page = page;
+		}
+	}
+
+	/**
+	 * Opens the tree in the file at the given path, creating an empty tree
+	 * if the file does not exist.
+	 * @param indexPath The file path of the tree.
+	 * @throws IOException Thrown if the file cannot be opened or is not a bar code tree.
+	 */
+	public BarcodeBTree(String indexPath) throws IOException {
+		if(indexPath == null)
+			throw new IllegalArgumentException("Index path is null");
+
+		this.indexFile = new File(indexPath);
+		this.channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.pages = new LinkedHashMap<Integer, Page>(CACHED_PAGES * 2, 0.75f, true);
+
+		try {
+			if(channel.size() == 0) {
+				this.wasClean = false;
+				clear();
+			}
+			else {
+				ByteBuffer header = readPage(0);
+				if(header.getInt(0) != MAGIC || header.getShort(4) != VERSION ||
+						header.getShort(6) != PAGE_SIZE / 256)
+					throw new IOException(indexFile + " is not a bar code index");
+
+				this.wasClean = header.get(CLEAN_OFFSET) == 1;
+				this.root = header.getInt(ROOT_OFFSET);
+				this.pageCount = header.getInt(PAGE_COUNT_OFFSET);
+				this.size = header.getInt(SIZE_OFFSET);
+			}
+
+			//Until the tree is closed, its pages may not match its header.
+			writeHeader(false);
+			channel.force(false);
+		}
+		catch(IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns true if the tree was closed cleanly when it was last used.
+	 * Otherwise its contents may be out of date and it should be rebuilt.
+	 * @return true if the tree was closed cleanly.
+	 */
+	public boolean wasClean() {
+		return this.wasClean;
+	}
+
+	/**
+	 * Returns the number of bar codes in the tree.
+	 * @return The number of bar codes in the tree.
+	 */
+	public synchronized int size() {
+		return this.size;
+	}
+
+	/**
+	 * Removes every bar code from the tree.
+	 * @throws IOException Thrown if the tree cannot be written.
+	 */
+	public synchronized void clear() throws IOException {
+		pages.clear();
+		channel.truncate(0);
+		pageCount = 1;
+		size = 0;
+		root = newPage(LEAF);
+		writeHeader(false);
+	}
+
+	/**
+	 * Returns the value of the given bar code.
+	 * @param barcode The bar code to look up.
+	 * @return The bar code's value, or -1 if the tree does not hold the bar code.
+	 * @throws IOException Thrown if the tree cannot be read.
+	 */
+	public synchronized int get(int barcode) throws IOException {
+		ByteBuffer page = page(root).data;
+		while(page.get(TYPE_OFFSET) == INTERNAL)
+			page = page(child(page, childIndex(page, barcode))).data;
+
+		int i = search(page, barcode);
+		return i >= 0 ? value(page, i) : -1;
+	}
+
+	/**
+	 * Sets the value of the given bar code, adding it if the tree does not hold it.
+	 * @param barcode The bar code.
+	 * @param value The bar code's value.
+	 * @throws IOException Thrown if the tree cannot be read or written.
+	 */
+	public synchronized void put(int barcode, int value) throws IOException {
+		Split split = put(root, barcode, value);
+
+		//The root was split, so the tree grows a level.
+		if(split != null) {
+			int newRoot = newPage(INTERNAL);
+			ByteBuffer page = page(newRoot).data;
+			page.putShort(COUNT_OFFSET, (short)1);
+			page.putInt(ENTRIES_OFFSET, root);
+			page.putInt(ENTRIES_OFFSET + 4, split.key);
+			page.putInt(ENTRIES_OFFSET + 8, split.page);
+			root = newRoot;
+		}
+	}
+
+	/**
+	 * Puts the bar code in the subtree below the given page.
+	 * @return The split of the page, or null if it was not split.
+	 */
+	private Split put(int pageNumber, int barcode, int value) throws IOException {
+		Page page = page(pageNumber);
+		ByteBuffer data = page.data;
+
+		if(data.get(TYPE_OFFSET) == LEAF) {
+			int i = search(data, barcode);
+			page.isDirty = true;
+			if(i >= 0) {
+				data.putInt(ENTRIES_OFFSET + i * 8 + 4, value);
+				return null;
+			}
+
+			insertEntry(data, -i - 1, barcode, value, 0);
+			size++;
+			return count(data) > LEAF_CAPACITY ? splitLeaf(pageNumber) : null;
+		}
+
+		int c = childIndex(data, barcode);
+		Split split = put(child(data, c), barcode, value);
+		if(split == null)
+			return null;
+
+		//Add the new child after the one which was split.
+		page = page(pageNumber);
+		page.isDirty = true;
+		insertEntry(page.data, c, split.key, split.page, 4);
+		return count(page.data) > INTERNAL_CAPACITY ? splitInternal(pageNumber) : null;
+	}
+
+	/**
+	 * Removes the given bar code from the tree.
+	 * @param barcode The bar code to remove.
+	 * @return true if the bar code was removed. Returns false if the tree does not hold it.
+	 * @throws IOException Thrown if the tree cannot be read or written.
+	 */
+	public synchronized boolean remove(int barcode) throws IOException {
+		int pageNumber = root;
+		ByteBuffer data = page(pageNumber).data;
+		while(data.get(TYPE_OFFSET) == INTERNAL) {
+			pageNumber = child(data, childIndex(data, barcode));
+			data = page(pageNumber).data;
+		}
+
+		int i = search(data, barcode);
+		if(i < 0)
+			return false;
+
+		int count = count(data);
+		int from = ENTRIES_OFFSET + (i + 1) * 8;
+		moveBytes(data, from, from - 8, (count - i - 1) * 8);
+		data.putShort(COUNT_OFFSET, (short)(count - 1));
+		page(pageNumber).isDirty = true;
+		size--;
+		return true;
+	}
+
+	//Methods for working within a page.
+	private static int count(ByteBuffer page) {
+		return page.getShort(COUNT_OFFSET);
+	}
+
+	private static int key(ByteBuffer page, int i) {
+		return page.getInt(ENTRIES_OFFSET + i * 8);
+	}
+
+	private static int value(ByteBuffer page, int i) {
+		return page.getInt(ENTRIES_OFFSET + i * 8 + 4);
+	}
+
+	/**
+	 * Returns the index of the bar code in a leaf, or (-(insertion point) - 1)
+	 * if the leaf does not hold it.
+	 */
+	private static int search(ByteBuffer leaf, int barcode) {
+		int low = 0;
+		int high = count(leaf) - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			int key = key(leaf, mid);
+			if(key < barcode)
+				low = mid + 1;
+			else if(key > barcode)
+				high = mid - 1;
+			else
+				return mid;
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * Returns the index of the child of an internal page below which the bar code belongs.
+	 */
+	private static int childIndex(ByteBuffer internal, int barcode) {
+		//Keys follow the first child, so key i separates child i from child i + 1.
+		int low = 0;
+		int high = count(internal);
+		while(low < high) {
+			int mid = (low + high) >>> 1;
+			if(internal.getInt(ENTRIES_OFFSET + 4 + mid * 8) <= barcode)
+				low = mid + 1;
+			else
+				high = mid;
+		}
+		return low;
+	}
+
+	private static int child(ByteBuffer internal, int i) {
+		//Child i follows key i - 1.
+		return internal.getInt(ENTRIES_OFFSET + i * 8);
+	}
+
+	/**
+	 * Inserts a key and value as entry i of a page. skip is the number of
+	 * bytes before the first entry, i.e. 4 for the first child of an internal page.
+	 */
+	private static void insertEntry(ByteBuffer page, int i, int key, int value, int skip) {
+		int count = count(page);
+		int at = ENTRIES_OFFSET + skip + i * 8;
+		moveBytes(page, at, at + 8, (count - i) * 8);
+		page.putInt(at, key);
+		page.putInt(at + 4, value);
+		page.putShort(COUNT_OFFSET, (short)(count + 1));
+	}
+
+	private static void moveBytes(ByteBuffer page, int from, int to, int length) {
+		byte[] array = page.array();
+		System.arraycopy(array, from, array, to, length);
+	}
+
+	/**
+	 * Moves the upper half of a full leaf to a new leaf.
+	 */
+	private Split splitLeaf(int pageNumber) throws IOException {
+		int newPage = newPage(LEAF);
+		ByteBuffer left = page(pageNumber).data;
+		ByteBuffer right = page(newPage).data;
+
+		int count = count(left);
+		int keep = count / 2;
+		System.arraycopy(left.array(), ENTRIES_OFFSET + keep * 8,
+				right.array(), ENTRIES_OFFSET, (count - keep) * 8);
+		left.putShort(COUNT_OFFSET, (short)keep);
+		right.putShort(COUNT_OFFSET, (short)(count - keep));
+		right.putInt(NEXT_LEAF_OFFSET, left.getInt(NEXT_LEAF_OFFSET));
+		left.putInt(NEXT_LEAF_OFFSET, newPage);
+
+		return new Split(key(right, 0), newPage);
+	}
+
+	/**
+	 * Moves the upper half of a full internal page to a new page. The middle
+	 * key moves up to the parent.
+	 */
+	private Split splitInternal(int pageNumber) throws IOException {
+		int newPage = newPage(INTERNAL);
+		ByteBuffer left = page(pageNumber).data;
+		ByteBuffer right = page(newPage).data;
+
+		int count = count(left);
+		int mid = count / 2;
+		int midKey = left.getInt(ENTRIES_OFFSET + 4 + mid * 8);
+		//The right page's first child is the child after the middle key.
+		int from = ENTRIES_OFFSET + 4 + mid * 8 + 4;
+		System.arraycopy(left.array(), from, right.array(), ENTRIES_OFFSET, 4 + (count - mid - 1) * 8);
+		left.putShort(COUNT_OFFSET, (short)mid);
+		right.putShort(COUNT_OFFSET, (short)(count - mid - 1));
+
+		return new Split(midKey, newPage);
+	}
+	//End methods for working within a page.
+
+	//Methods for reading and writing pages.
+	/**
+	 * Returns the given page, reading it into memory if needed.
+	 */
+	private Page page(int pageNumber) throws IOException {
+		Page page = pages.get(pageNumber);
+		if(page == null) {
+			page = new Page(readPage(pageNumber));
+			cache(pageNumber, page);
+		}
+		return page;
+	}
+
+	/**
+	 * Adds a page to those held in memory, writing out the least recently
+	 * used page if too many are held.
+	 */
+	private void cache(int pageNumber, Page page) throws IOException {
+		pages.put(pageNumber, page);
+		if(pages.size() > CACHED_PAGES) {
+			Iterator<Map.Entry<Integer, Page>> eldest = pages.entrySet().iterator();
+			Map.Entry<Integer, Page> e = eldest.next();
+			if(e.getValue().isDirty)
+				writePage(e.getKey(), e.getValue().data);
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Creates an empty page of the given type at the end of the file.
+	 */
+	private int newPage(byte type) throws IOException {
+		ByteBuffer data = ByteBuffer.allocate(PAGE_SIZE);
+		data.put(TYPE_OFFSET, type);
+		data.putInt(NEXT_LEAF_OFFSET, NO_PAGE);
+
+		Page page = new Page(data);
+		page.isDirty = true;
+		int pageNumber = pageCount++;
+		cache(pageNumber, page);
+		return pageNumber;
+	}
+
+	private ByteBuffer readPage(int pageNumber) throws IOException {
+		ByteBuffer data = ByteBuffer.allocate(PAGE_SIZE);
+		long position = (long)pageNumber * PAGE_SIZE;
+		while(data.hasRemaining()) {
+			if(channel.read(data, position + data.position()) < 0)
+				throw new IOException(indexFile + " is shorter than expected");
+		}
+		return data;
+	}
+
+	private void writePage(int pageNumber, ByteBuffer data) throws IOException {
+		ByteBuffer source = data.duplicate();
+		source.clear();
+		long position = (long)pageNumber * PAGE_SIZE;
+		while(source.hasRemaining())
+			channel.write(source, position + source.position());
+	}
+
+	private void writeHeader(boolean isClean) throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(PAGE_SIZE);
+		header.putInt(0, MAGIC);
+		header.putShort(4, VERSION);
+		header.putShort(6, (short)(PAGE_SIZE / 256));
+		header.putInt(ROOT_OFFSET, root);
+		header.putInt(PAGE_COUNT_OFFSET, pageCount);
+		header.putInt(SIZE_OFFSET, size);
+		header.put(CLEAN_OFFSET, (byte)(isClean ? 1 : 0));
+		writePage(0, header);
+	}
+
+	/**
+	 * Writes every changed page and the header to the file.
+	 * @throws IOException Thrown if the tree cannot be written.
+	 */
+	public synchronized void flush() throws IOException {
+		for(Map.Entry<Integer, Page> e : pages.entrySet()) {
+			if(e.getValue().isDirty) {
+				writePage(e.getKey(), e.getValue().data);
+				e.getValue().isDirty = false;
+			}
+		}
+		writeHeader(false);
+	}
+	//End methods for reading and writing pages.
+
+	/**
+	 * Writes every changed page, marks the tree as closed cleanly and closes the file.
+	 * @throws IOException Thrown if the tree cannot be written.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(!channel.isOpen())
+			return;
+
+		flush();
+		channel.force(false);
+		writeHeader(true);
+		channel.force(false);
+		channel.close();
+	}
+}
@@ -0,0 +1,181 @@
+/**
+ * A BarcodeIndex maps product bar codes to positions, such as the position of
+ * a Product within an Inventory. It is an open-addressing hash table over
+ * primitive ints, so lookups neither box their keys nor follow references.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.util.Arrays;
+
+public class BarcodeIndex {
+	//0 is never a valid bar code, so it marks an empty slot.
+	private static final int EMPTY = 0;
+	private static final int DEFAULT_CAPACITY = 16;
+
+	private int[] keys;
+	private int[] values;
+	private int size;
+
+	/**
+	 * Creates an empty BarcodeIndex.
+	 */
+	public BarcodeIndex() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Creates an empty BarcodeIndex with room for the given number of bar codes.
+	 * @param expectedSize The number of bar codes expected to be held.
+	 */
+	public BarcodeIndex(int expectedSize) {
+		if(expectedSize < 0)
+			throw new IllegalArgumentException("Expected size is negative.");
+
+		//Keep the table at most half full.
+		int capacity = DEFAULT_CAPACITY;
+		while(capacity < expectedSize * 2)
+			capacity *= 2;
+
+		this.keys = new int[capacity];
+		this.values = new int[capacity];
+	}
+
+	/**
+	 * Returns a copy of this BarcodeIndex.
+	 * @return A copy of this BarcodeIndex.
+	 */
+	public BarcodeIndex copy() {
+		BarcodeIndex copy = new BarcodeIndex(0);
+		copy.keys = Arrays.copyOf(keys, keys.length);
+		copy.values = Arrays.copyOf(values, values.length);
+		copy.size = size;
+		return copy;
+	}
+
+	/**
+	 * Returns the number of bar codes in the index.
+	 * @return The number of bar codes in the index.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the position mapped to the given bar code.
+	 * @param barcode The bar code to look up.
+	 * @return The position mapped to the bar code, or -1 if it is not in the index.
+	 */
+	public int get(int barcode) {
+		if(barcode == EMPTY)
+			return -1;
+
+		int mask = keys.length - 1;
+		for(int slot = hash(barcode) & mask; keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+			if(keys[slot] == barcode)
+				return values[slot];
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Maps the given bar code to the given position, replacing any existing mapping.
+	 * @param barcode The bar code to map.
+	 * @param position The position to map it to.
+	 */
+	public void put(int barcode, int position) {
+		if(!Product.verifyBarcode(barcode))
+			throw new IllegalArgumentException("Invalid barcode.");
+
+		if((size + 1) * 2 > keys.length)
+			resize(keys.length * 2);
+
+		int mask = keys.length - 1;
+		int slot = hash(barcode) & mask;
+		while(keys[slot] != EMPTY && keys[slot] != barcode)
+			slot = (slot + 1) & mask;
+
+		if(keys[slot] == EMPTY) {
+			keys[slot] = barcode;
+			size++;
+		}
+		values[slot] = position;
+	}
+
+	/**
+	 * Removes the given bar code from the index.
+	 * @param barcode The bar code to remove.
+	 * @return The position the bar code was mapped to, or -1 if it was not in the index.
+	 */
+	public int remove(int barcode) {
+		if(barcode == EMPTY)
+			return -1;
+
+		int mask = keys.length - 1;
+		int slot = hash(barcode) & mask;
+		while(keys[slot] != barcode) {
+			if(keys[slot] == EMPTY)
+				return -1;
+			slot = (slot + 1) & mask;
+		}
+
+		int position = values[slot];
+		size--;
+
+		//Shift later entries of the probe sequence back so none become unreachable.
+		int gap = slot;
+		for(int next = (gap + 1) & mask; keys[next] != EMPTY; next = (next + 1) & mask) {
+			int home = hash(keys[next]) & mask;
+			if(((next - home) & mask) >= ((next - gap) & mask)) {
+				keys[gap] = keys[next];
+				values[gap] = values[next];
+				gap = next;
+			}
+		}
+		keys[gap] = EMPTY;
+
+		return position;
+	}
+
+	/**
+	 * Removes every bar code from the index.
+	 */
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		size = 0;
+	}
+
+	/**
+	 * Moves every entry into a table of the given capacity.
+	 * @param capacity The new capacity, which must be a power of two.
+	 */
+	private void resize(int capacity) {
+		int[] oldKeys = keys;
+		int[] oldValues = values;
+		keys = new int[capacity];
+		values = new int[capacity];
+
+		int mask = capacity - 1;
+		for(int i = 0; i < oldKeys.length; i++) {
+			if(oldKeys[i] != EMPTY) {
+				int slot = hash(oldKeys[i]) & mask;
+				while(keys[slot] != EMPTY)
+					slot = (slot + 1) & mask;
+				keys[slot] = oldKeys[i];
+				values[slot] = oldValues[i];
+			}
+		}
+	}
+
+	/**
+	 * Spreads the bits of a bar code, since consecutive bar codes
+	 * would otherwise fill consecutive slots.
+	 * @param barcode The bar code to hash.
+	 * @return The hash of the bar code.
+	 */
+	private static int hash(int barcode) {
+		int h = barcode * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
@@ -8,8 +8,16 @@ package cas;
 
 import java.math.BigDecimal;
 import java.util.ArrayList;
+import java.util.Comparator;
 
 public class Basket {
+	//Orders entries by their quantity in the basket in descending order.
+	private static final Comparator<BasketEntry> BY_QUANTITY = new Comparator<BasketEntry>() {
+		public int compare(BasketEntry a, BasketEntry b) {
+			return Integer.compare(b.getQuantity(), a.getQuantity());
+		}
+	};
+	
 	private ArrayList<BasketEntry> contents;
 	
 	/**
@@ -31,20 +39,6 @@ public class Basket {
 			return this.contents.get(index);
 	}
 
-	/**
-	 * Sets the element in contents at position index to the given BasketEntry.
-	 * @param index The position of the element in contents to set to entry.
-	 * @param entry The BasketEntry to add to contents.
-	 */
-	private void set(int index, BasketEntry entry) {
-		if(index < 0 || index >= size())
-			throw new IllegalArgumentException("Index is out of bounds.");
-		if(entry == null)
-			throw new IllegalArgumentException("Entry is null");
-		
-		this.contents.set(index, entry);
-	}
-	
 	/**
 	 * Returns the number of BasketEntry objects in the basket.
 	 * @return the number of BasketEntry objects in the basket.
@@ -105,19 +99,19 @@ public class Basket {
 	 * Sorts the contents of the basket by their quantity in descending order.
 	 */
 	public void sortByQuantity() {
-		//Sort by insertion sort.
-		for(int i = 0; i < size() - 1; i++) {
-			int indexOfMax = i;
-			
-			for(int j = i + 1; j < size(); j++) {
-				if(get(indexOfMax).getQuantity() < get(j).getQuantity())
-					indexOfMax = j;
-			}
-			
-			BasketEntry temp = get(i);
-			set(i, get(indexOfMax));
-			set(indexOfMax, temp);
-		}
+		sort(BY_QUANTITY);
+	}
+	
+	/**
+	 * Sorts the contents of the basket by the given ordering. Entries which
+	 * the ordering considers equal keep their relative positions.
+	 * @param ordering The ordering by which to sort.
+	 */
+	public void sort(Comparator<? super BasketEntry> ordering) {
+		if(ordering == null)
+			throw new IllegalArgumentException("Ordering is null.");
+		
+		this.contents.sort(ordering);
 	}
 	
 	/**
@@ -145,18 +139,9 @@ public class Basket {
 	 * @return true if entry is valid. Returns false otherwise.
 	 */
 	private boolean validateBasketEntry(BasketEntry entry, Inventory stock) {
-		boolean isValid = false;
-		
-		for(int i = 0; i < stock.size(); i++) {
-			if(stock.get(i).getBarcode() == entry.getProduct().getBarcode()) {
-				if(stock.get(i).getQuantity() >= entry.getQuantity()) {
-					isValid = true;
-					break;
-				}
-			}
-		}
+		Product p = stock.getByBarcode(entry.getProduct().getBarcode());
 		
-		return isValid;
+		return p != null && p.getQuantity() >= entry.getQuantity();
 	}
 
 	/**
@@ -164,12 +149,21 @@ public class Basket {
 	 * @return the sum of the retail prices of all items in the basket.
 	 */
 	public BigDecimal getTotalPrice() {
-		BigDecimal totalPrice = new BigDecimal(0);
+		return Money.toBigDecimal(getTotalPricePence());
+	}
+
+	/**
+	 * Returns the sum of the retail prices of all items in the basket in pence.
+	 * @return the sum of the retail prices of all items in the basket in pence.
+	 */
+	public long getTotalPricePence() {
+		long totalPrice = 0;
 		
 		for(int i = 0; i < size(); i++) {
 			//Retail price of Product * quantity of Product in basket.
-			BigDecimal price = get(i).getProduct().getRetailPrice().multiply(new BigDecimal(get(i).getQuantity()));
-			totalPrice = totalPrice.add(price);
+			BasketEntry entry = get(i);
+			long price = Money.multiply(entry.getProduct().getRetailPricePence(), entry.getQuantity());
+			totalPrice = Math.addExact(totalPrice, price);
 		}
 		
 		return totalPrice;
@@ -0,0 +1,80 @@
+/**
+ * A BasketTableModel shows the products in a Customer's basket in a JTable,
+ * along with how many of each are in the basket. Cells are read from the
+ * basket when the table asks for them. Products which were out of stock
+ * when they were added are not shown.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import javax.swing.table.AbstractTableModel;
+
+public class BasketTableModel extends AbstractTableModel {
+	private static final long serialVersionUID = 1L;
+
+	private static final int[] COLUMNS = {ProductTableModel.BARCODE, ProductTableModel.NAME,
+			ProductTableModel.TYPE, ProductTableModel.BRAND, ProductTableModel.COLOUR,
+			ProductTableModel.CONNECTIVITY, ProductTableModel.QUANTITY,
+			ProductTableModel.RETAIL_PRICE, ProductTableModel.ADDITIONAL_INFORMATION};
+	private static final String[] COLUMN_NAMES = {"Barcode", "Name", "Type", "Brand", "Colour",
+			"Connectivity", "Quantity in Stock", "Retail Price", "Additional Information",
+			"Quantity in Basket"};
+
+	private final Customer basketHolder;
+	//The position in the basket of the entry shown in each row.
+	private int[] entries;
+	private int size;
+
+	/**
+	 * Creates a BasketTableModel showing the basket of the given Customer.
+	 * @param basketHolder The Customer whose basket is shown.
+	 */
+	public BasketTableModel(Customer basketHolder) {
+		if(basketHolder == null)
+			throw new IllegalArgumentException("basketHolder is null.");
+
+		this.basketHolder = basketHolder;
+		this.entries = new int[0];
+		refresh();
+	}
+
+	/**
+	 * Sorts the basket by quantity and shows it again, after it has changed.
+	 */
+	public void refresh() {
+		basketHolder.sortByQuantity();
+		if(entries.length < basketHolder.basketSize())
+			entries = new int[basketHolder.basketSize()];
+
+		size = 0;
+		for(int i = 0; i < basketHolder.basketSize(); i++) {
+			if(basketHolder.getFromBasket(i).getProduct().getQuantity() > 0)
+				entries[size++] = i;
+		}
+		fireTableDataChanged();
+	}
+
+	@Override
+	public int getRowCount() {
+		return this.size;
+	}
+
+	@Override
+	public int getColumnCount() {
+		return COLUMN_NAMES.length;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return COLUMN_NAMES[column];
+	}
+
+	@Override
+	public Object getValueAt(int row, int column) {
+		BasketEntry entry = basketHolder.getFromBasket(entries[row]);
+		if(column == COLUMNS.length)
+			return entry.getQuantity();
+
+		return ProductTableModel.valueOf(entry.getProduct(), COLUMNS[column]);
+	}
+}
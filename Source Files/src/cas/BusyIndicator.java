@@ -0,0 +1,51 @@
+/**
+ * A BusyIndicator is a progress bar which is shown while any of the
+ * operations it tracks are running, so the user can see that the stock is
+ * being read or written while the rest of the window stays responsive. As
+ * the Database does not report how far through an operation it is, the bar
+ * is indeterminate.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+
+import javax.swing.JProgressBar;
+import javax.swing.SwingUtilities;
+
+public class BusyIndicator extends JProgressBar {
+	private static final long serialVersionUID = 1L;
+
+	//The number of tracked operations which have not completed. Only used on the event dispatch thread.
+	private int running;
+
+	/**
+	 * Creates a BusyIndicator, which is hidden until an operation is tracked.
+	 */
+	public BusyIndicator() {
+		setIndeterminate(true);
+		setVisible(false);
+	}
+
+	/**
+	 * Shows the indicator until the given future completes. Must be called
+	 * on the event dispatch thread.
+	 * @param future The future of an operation.
+	 */
+	public void track(CompletableFuture<?> future) {
+		running++;
+		setVisible(true);
+
+		future.whenComplete(new BiConsumer<Object, Throwable>() {
+			public void accept(Object result, Throwable error) {
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run() {
+						running--;
+						setVisible(running > 0);
+					}
+				});
+			}
+		});
+	}
+}
@@ -0,0 +1,358 @@
+/**
+ * A ConcurrentInventory holds the quantities in stock of a catalogue of
+ * products so that many threads, such as one per till, can take and return
+ * stock at the same time without a lock. Each quantity is an element of an
+ * int array which is only changed by compare-and-set, so stock can never be
+ * taken below zero: when two threads race for the last item, exactly one of
+ * them gets it. Threads changing different products never wait for each other.
+ * <p>
+ * Products are added and removed under a lock. The quantities are kept in
+ * fixed size chunks which are never copied, so adding a product cannot lose
+ * a change made to an existing quantity at the same time. The bar code
+ * index is replaced rather than changed, so a lookup never sees it half
+ * updated; as that copies the index, many products should be added with
+ * one call to addAll. A removed product's slot is not reused, so a product
+ * added again later starts with its new quantity.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+public class ConcurrentInventory {
+	private static final int CHUNK_SHIFT = 10;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+	private static final VarHandle QUANTITY = MethodHandles.arrayElementVarHandle(int[].class);
+
+	/**
+	 * The products and their quantities, as published to readers. Only the
+	 * elements of the quantity chunks change once a Table is published. A
+	 * slot whose bar code no longer maps to it holds a removed product.
+	 */
+	private static final class Table {
+		private final BarcodeIndex slots;
+		private final Product[][] products;
+		private final int[][] quantities;
+		private final int size;
+
+		private Table(BarcodeIndex slots, Product[][] products, int[][] quantities, int size) {
+			this.slots = slots;
+			this.products = products;
+			this.quantities = quantities;
+			this.size = size;
+		}
+	}
+
+	private volatile Table table;
+
+	/**
+	 * Creates an empty ConcurrentInventory.
+	 */
+	public ConcurrentInventory() {
+		this.table = new Table(new BarcodeIndex(), new Product[0][], new int[0][], 0);
+	}
+
+	/**
+	 * Creates a ConcurrentInventory holding copies of the products in the
+	 * given Inventory, with their current quantities.
+	 * @param products The products to hold.
+	 */
+	public ConcurrentInventory(Inventory products) {
+		if(products == null)
+			throw new IllegalArgumentException("Inventory is null");
+
+		int size = products.size();
+		int chunkCount = (size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT;
+		BarcodeIndex slots = new BarcodeIndex(size);
+		Product[][] productChunks = new Product[chunkCount][];
+		int[][] quantityChunks = new int[chunkCount][];
+
+		for(int i = 0; i < chunkCount; i++) {
+			productChunks[i] = new Product[CHUNK_SIZE];
+			quantityChunks[i] = new int[CHUNK_SIZE];
+		}
+		for(int slot = 0; slot < size; slot++) {
+			Product p = products.get(slot).copy();
+			slots.put(p.getBarcode(), slot);
+			productChunks[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] = p;
+			quantityChunks[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] = p.getQuantity();
+		}
+
+		this.table = new Table(slots, productChunks, quantityChunks, size);
+	}
+
+	/**
+	 * Returns the number of products in the inventory.
+	 * @return The number of products in the inventory.
+	 */
+	public int size() {
+		return table.slots.size();
+	}
+
+	/**
+	 * Returns true if the inventory holds a product with the given bar code.
+	 * @param barcode The bar code of the product.
+	 * @return true if the inventory holds the bar code.
+	 */
+	public boolean contains(int barcode) {
+		return table.slots.get(barcode) >= 0;
+	}
+
+	/**
+	 * Adds a copy of the given product, with its current quantity, unless a
+	 * product with the same bar code is already held.
+	 * @param product The product to add.
+	 * @return true if the product was added. Returns false if its bar code is already held.
+	 */
+	public boolean add(Product product) {
+		return addAll(Collections.singletonList(product)) == 1;
+	}
+
+	/**
+	 * Adds a copy of each of the given products, with its current quantity,
+	 * unless a product with the same bar code is already held. The bar code
+	 * index is copied once for all of them.
+	 * @param products The products to add.
+	 * @return The number of products added.
+	 */
+	public synchronized int addAll(List<Product> products) {
+		if(products == null)
+			throw new IllegalArgumentException("Products is null");
+		for(Product product : products) {
+			if(product == null)
+				throw new IllegalArgumentException("null is not a valid Product");
+		}
+
+		Table current = table;
+		BarcodeIndex slots = null;
+		Product[][] productChunks = current.products;
+		int[][] quantityChunks = current.quantities;
+		int size = current.size;
+
+		for(Product product : products) {
+			if((slots == null ? current.slots : slots).get(product.getBarcode()) >= 0)
+				continue;
+			if(slots == null)
+				slots = current.slots.copy();
+
+			int slot = size++;
+			if((slot & CHUNK_MASK) == 0) {
+				//Only the arrays of chunks are copied; the chunks are shared with the current table.
+				productChunks = Arrays.copyOf(productChunks, productChunks.length + 1);
+				quantityChunks = Arrays.copyOf(quantityChunks, quantityChunks.length + 1);
+				productChunks[productChunks.length - 1] = new Product[CHUNK_SIZE];
+				quantityChunks[quantityChunks.length - 1] = new int[CHUNK_SIZE];
+			}
+
+			Product copy = product.copy();
+			productChunks[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK] = copy;
+			QUANTITY.setVolatile(quantityChunks[slot >>> CHUNK_SHIFT], slot & CHUNK_MASK, copy.getQuantity());
+			slots.put(copy.getBarcode(), slot);
+		}
+
+		if(slots == null)
+			return 0;
+		table = new Table(slots, productChunks, quantityChunks, size);
+		return size - current.size;
+	}
+
+	/**
+	 * Removes the product with the given bar code. Its slot is left unused,
+	 * so a thread still changing its quantity cannot affect another product.
+	 * @param barcode The bar code of the product to remove.
+	 * @return true if the product was removed. Returns false if the bar code is not held.
+	 */
+	public synchronized boolean remove(int barcode) {
+		Table current = table;
+		if(current.slots.get(barcode) < 0)
+			return false;
+
+		BarcodeIndex slots = current.slots.copy();
+		slots.remove(barcode);
+		table = new Table(slots, current.products, current.quantities, current.size);
+		return true;
+	}
+
+	//Methods for reading products.
+	/**
+	 * Returns a copy of the product with the given bar code, with its current quantity.
+	 * @param barcode The bar code of the product.
+	 * @return A copy of the product, or null if the inventory does not hold the bar code.
+	 */
+	public Product get(int barcode) {
+		Table t = table;
+		int slot = t.slots.get(barcode);
+		if(slot < 0)
+			return null;
+
+		Product copy = t.products[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK].copy();
+		copy.setQuantity(quantityAt(t, slot));
+		return copy;
+	}
+
+	/**
+	 * Returns the current quantity in stock of the product with the given bar code.
+	 * @param barcode The bar code of the product.
+	 * @return The quantity in stock.
+	 */
+	public int getQuantity(int barcode) {
+		Table t = table;
+		return quantityAt(t, slotOf(t, barcode));
+	}
+
+	/**
+	 * Returns the current quantity in stock of the product with the given
+	 * bar code, or the given quantity if it is not held.
+	 * @param barcode The bar code of the product.
+	 * @param defaultQuantity The quantity returned if the bar code is not held.
+	 * @return The quantity in stock, or defaultQuantity.
+	 */
+	public int getQuantityOrDefault(int barcode, int defaultQuantity) {
+		Table t = table;
+		int slot = t.slots.get(barcode);
+		return slot < 0 ? defaultQuantity : quantityAt(t, slot);
+	}
+
+	/**
+	 * Returns an Inventory holding copies of every product, in the order
+	 * they were added, with their quantities as they are read. Quantities
+	 * changed while the copy is made may or may not be included.
+	 * @return An Inventory of copies of the products.
+	 */
+	public Inventory toInventory() {
+		Table t = table;
+		Inventory products = new Inventory();
+
+		for(int slot = 0; slot < t.size; slot++) {
+			Product p = t.products[slot >>> CHUNK_SHIFT][slot & CHUNK_MASK];
+			if(t.slots.get(p.getBarcode()) != slot)
+				continue;
+
+			Product copy = p.copy();
+			copy.setQuantity(quantityAt(t, slot));
+			products.add(copy);
+		}
+
+		return products;
+	}
+	//End methods for reading products.
+
+	//Methods for changing quantities.
+	/**
+	 * Takes the given amount of the product with the given bar code, if at
+	 * least that much is in stock.
+	 * @param barcode The bar code of the product.
+	 * @param amount The amount to take.
+	 * @return true if the stock was taken. Returns false, changing nothing,
+	 * if less than amount is in stock.
+	 */
+	public boolean decrementIfAvailable(int barcode, int amount) {
+		if(amount < 0)
+			throw new IllegalArgumentException("Amount is negative");
+
+		Table t = table;
+		int slot = slotOf(t, barcode);
+		int[] chunk = t.quantities[slot >>> CHUNK_SHIFT];
+		int index = slot & CHUNK_MASK;
+
+		while(true) {
+			int quantity = (int)QUANTITY.getVolatile(chunk, index);
+			if(quantity < amount)
+				return false;
+			if(QUANTITY.compareAndSet(chunk, index, quantity, quantity - amount))
+				return true;
+		}
+	}
+
+	/**
+	 * Takes the given amounts of the products with the given bar codes, if
+	 * every amount is in stock; otherwise nothing is taken. Each amount is
+	 * taken in turn and, if one is not in stock, those already taken are
+	 * returned, so another thread may briefly see them missing.
+	 * @param barcodes The bar codes of the products.
+	 * @param amounts The amount to take of each product.
+	 * @return true if every amount was taken. Returns false, changing
+	 * nothing, if any amount is not in stock.
+	 */
+	public boolean decrementAllIfAvailable(int[] barcodes, int[] amounts) {
+		if(barcodes == null || amounts == null || barcodes.length != amounts.length)
+			throw new IllegalArgumentException("Bar codes and amounts do not match");
+
+		//Check every bar code first, so that a missing product cannot interrupt the loop below.
+		Table t = table;
+		for(int barcode : barcodes)
+			slotOf(t, barcode);
+
+		for(int i = 0; i < barcodes.length; i++) {
+			if(!decrementIfAvailable(barcodes[i], amounts[i])) {
+				for(int j = 0; j < i; j++)
+					increment(barcodes[j], amounts[j]);
+				return false;
+			}
+		}
+
+		return true;
+	}
+
+	/**
+	 * Returns the given amount of the product with the given bar code to stock.
+	 * @param barcode The bar code of the product.
+	 * @param amount The amount to return.
+	 * @return The quantity in stock after the amount is returned.
+	 */
+	public int increment(int barcode, int amount) {
+		if(amount < 0)
+			throw new IllegalArgumentException("Amount is negative");
+
+		Table t = table;
+		int slot = slotOf(t, barcode);
+		int[] chunk = t.quantities[slot >>> CHUNK_SHIFT];
+		int index = slot & CHUNK_MASK;
+
+		while(true) {
+			int quantity = (int)QUANTITY.getVolatile(chunk, index);
+			if(quantity > Integer.MAX_VALUE - amount)
+				throw new IllegalArgumentException("Quantity of product " + barcode + " is too large");
+			if(QUANTITY.compareAndSet(chunk, index, quantity, quantity + amount))
+				return quantity + amount;
+		}
+	}
+
+	/**
+	 * Sets the quantity in stock of the product with the given bar code,
+	 * e.g. after a stock take.
+	 * @param barcode The bar code of the product.
+	 * @param quantity The new quantity in stock.
+	 */
+	public void setQuantity(int barcode, int quantity) {
+		if(quantity < 0)
+			throw new IllegalArgumentException("Quantity is negative");
+
+		Table t = table;
+		int slot = slotOf(t, barcode);
+		QUANTITY.setVolatile(t.quantities[slot >>> CHUNK_SHIFT], slot & CHUNK_MASK, quantity);
+	}
+	//End methods for changing quantities.
+
+	/**
+	 * Returns the slot of the given bar code in the given table.
+	 */
+	private static int slotOf(Table t, int barcode) {
+		int slot = t.slots.get(barcode);
+		if(slot < 0)
+			throw new IllegalArgumentException("No product has the barcode " + barcode);
+		return slot;
+	}
+
+	/**
+	 * Returns the quantity in the given slot of the given table.
+	 */
+	private static int quantityAt(Table t, int slot) {
+		return (int)QUANTITY.getVolatile(t.quantities[slot >>> CHUNK_SHIFT], slot & CHUNK_MASK);
+	}
+}
@@ -1,6 +1,6 @@
 /**
  * Stores immutable information about, and methods for, executing a credit card payment
- * for a given Product and User.
+ * for the basket of a given Customer.
  * @author Joseph Marcus Tungate
  */
 
@@ -9,29 +9,21 @@ package cas;
 public class CreditCardPayment implements PaymentMethod{
 	private Database db;
 	private Customer cardHolder;
-	private Product item;
-	private int itemQuantity;
 	private String cardNumber;
 	private String securityCode;
 	
 	/**
 	 * Creates a CreditCardPayment instance from the given parameters.
 	 * @param systemDatabase The Database object to be involved in the payment.
-	 * @param cardHolder The Customer who is purchasing item.
-	 * @param item The Product being purchased by cardHolder.
-	 * @param itemQuantity The quantity of item involved in the payment.
+	 * @param cardHolder The Customer whose basket is being purchased.
 	 * @param cardNumber The card number of the card held by cardHolder.
 	 * @param securityCode The security code of the card held by cardHolder
 	 */
-	public CreditCardPayment(Database systemDatabase, Customer cardHolder, Product item, int itemQuantity, String cardNumber, String securityCode) {
+	public CreditCardPayment(Database systemDatabase, Customer cardHolder, String cardNumber, String securityCode) {
 		if(systemDatabase == null)
 			throw new IllegalArgumentException("systemDatabase is null.");		
 		if(cardHolder == null)
 			throw new IllegalArgumentException("cardHolder is null.");
-		if(item == null)
-			throw new IllegalArgumentException("item is null.");
-		if(itemQuantity < 0 || itemQuantity > item.getQuantity())
-			throw new IllegalArgumentException("Invalid item quantity.");
 		if(!validateCardNumber(cardNumber)) {
 			throw new IllegalArgumentException("Invalid card number.");
 		}
@@ -41,27 +33,21 @@ public class CreditCardPayment implements PaymentMethod{
 		
 		this.db = systemDatabase;
 		this.cardHolder = cardHolder;
-		this.item = item;
-		this.itemQuantity = itemQuantity;
 		this.cardNumber = cardNumber;
 		this.securityCode = securityCode;
 	}
 	
 	/**
 	 * Attempts to carry out the transaction described by this object.
+	 * The whole basket is purchased, or nothing is if the transaction fails.
 	 * Returns true if the transaction was successful, false otherwise.
 	 * @returns true if the transaction was successful. Returns false otherwise.
 	 */
 	@Override
 	public boolean processPayment(){
 		try {
-		//Updates database to reflect purchase.
-		Inventory products = db.getProducts();
-		Product product = products.getByBarcode(this.item.getBarcode());
-		product.setQuantity(product.getQuantity() - this.itemQuantity);
-		db.writeProducts(products);
-		//Write activity log.
-		db.writeActivityLog(new ActivityLog(cardHolder, product, itemQuantity, "purchased", "Credit Card"));
+		//Updates database to reflect purchase and writes the activity logs.
+		db.checkout(cardHolder, "Credit Card");
 		return true;
 		} catch (Exception e) {
 			return false;
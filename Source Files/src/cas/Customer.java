@@ -100,6 +100,14 @@ public class Customer extends User {
 		return basket.getTotalPrice();
 	}
 	
+	/**
+	 * Returns the sum of the retail prices of all items in the basket in pence.
+	 * @return the sum of the retail prices of all items in the basket in pence.
+	 */
+	public long getTotalPricePence() {
+		return basket.getTotalPricePence();
+	}
+	
 	/**
 	 * Returns the BasketEntry which contains the Product with the given bar code.
 	 * @param barcode The Product's bar code by which to search the basket.
@@ -7,11 +7,12 @@ package cas;
 
 import java.awt.BorderLayout;
 import java.awt.EventQueue;
+import java.awt.event.WindowAdapter;
+import java.awt.event.WindowEvent;
 
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.border.EmptyBorder;
-import javax.swing.table.DefaultTableModel;
 import javax.swing.JTabbedPane;
 import javax.swing.JTable;
 import javax.swing.JScrollPane;
@@ -25,39 +26,68 @@ import java.awt.Font;
 import java.awt.event.ActionListener;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.awt.event.ActionEvent;
 import javax.swing.ListSelectionModel;
+import javax.swing.Timer;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 
 public class CustomerFrame extends JFrame {
+	//How long typing must pause before the search is run.
+	private static final int SEARCH_DELAY_MILLIS = 250;
 
 	private JPanel contentPane;
 	private JTable tblBrowse;
 	private JTextField txtSearch;
+	private JCheckBox chckbxUkLayout;
+	private Timer searchTimer;
 	private JTable tblBasket;
-	private DefaultTableModel dtmProduct;
-	private DefaultTableModel dtmBasket;
+	private ProductTableModel productModel;
+	private BasketTableModel basketModel;
 	
 	private Database db;
+	private AsyncDatabase asyncDb;
 	private Inventory products;
+	//Version of the snapshot which products was copied from. Read by the database thread.
+	private volatile long productsVersion = -1;
+	//Reading of the stock which has been requested but may not have started.
+	private CompletableFuture<Inventory> loading;
+	private BusyIndicator browseBusyIndicator;
+	private BusyIndicator basketBusyIndicator;
+	//The search whose results are shown.
+	private String resultsText;
+	private boolean resultsOnlyUKLayout;
+	//True if the results shown are close misspellings of the search rather than matches.
+	private boolean isFuzzyResults;
+	//Counts the batches of changes applied to products, and the count when the results were found.
+	private long stockChanges;
+	private long resultsStockChanges;
 	private Customer systemUser;
+	private InventoryListener inventoryListener;
 
 	/**
 	 * Creates the CustomerFrame, initialises its fields and events.
-	 * @param systemDatabase The Database object which is
+	 * @param systemDatabase The AsyncDatabase object which is
 	 * being used by the system/main frame.
 	 * @param systemUser The Customer which is using the system.
 	 */
-	public CustomerFrame(Database systemDatabase, Customer systemUser) {
+	public CustomerFrame(AsyncDatabase systemDatabase, Customer systemUser) {
 		if(systemUser == null)
 			throw new IllegalArgumentException("systemUser is null.");
 		if(systemDatabase == null)
 			throw new IllegalArgumentException("systemDatabase is null.");
 		
 		this.systemUser = systemUser;
-		this.db = systemDatabase;
+		this.asyncDb = systemDatabase;
+		this.db = systemDatabase.getDatabase();
 		
 		setTitle("CASH - Customer");
-		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+		//Disposed rather than exited on close, so that windowClosed can stop listening to the stock first.
+		setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
 		setBounds(100, 100, 900, 480);
 		contentPane = new JPanel();
 		contentPane.setBorder(new EmptyBorder(5, 5, 5, 5));
@@ -81,7 +111,7 @@ public class CustomerFrame extends JFrame {
 		tblBrowse.setFont(new Font("Tahoma", Font.PLAIN, 11));
 		scrlpBrowse.setViewportView(tblBrowse);
 		
-		JLabel lblSearch = new JLabel("Search by Brand:");
+		JLabel lblSearch = new JLabel("Brand or Colour:");
 		lblSearch.setBounds(10, 11, 99, 14);
 		pnlBrowse.add(lblSearch);
 		
@@ -91,27 +121,43 @@ public class CustomerFrame extends JFrame {
 		pnlBrowse.add(txtSearch);
 		txtSearch.setColumns(10);
 		
-		JCheckBox chckbxUkLayout = new JCheckBox("Only UK Layout?");
+		//Searches once typing pauses, rather than on every keystroke.
+		searchTimer = new Timer(SEARCH_DELAY_MILLIS, new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				search();
+			}
+		});
+		searchTimer.setRepeats(false);
+		txtSearch.getDocument().addDocumentListener(new DocumentListener() {
+			public void insertUpdate(DocumentEvent e) {
+				searchTimer.restart();
+			}
+			
+			public void removeUpdate(DocumentEvent e) {
+				searchTimer.restart();
+			}
+			
+			public void changedUpdate(DocumentEvent e) {
+				searchTimer.restart();
+			}
+		});
+		
+		chckbxUkLayout = new JCheckBox("Only UK Layout?");
+		chckbxUkLayout.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				searchTimer.stop();
+				search();
+			}
+		});
 		chckbxUkLayout.setBounds(656, 7, 118, 23);
 		pnlBrowse.add(chckbxUkLayout);
 		
 		JButton btnSearch = new JButton("Search");
 		btnSearch.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
-				try {
-					/* Searches the shop's inventory for Products which match
-					 * the given brand and filters them by layout. Then updates
-					 * tblBrowse to show the result of the search.
-					 */
-					String search = txtSearch.getText().trim();
-					boolean onlyUKLayout = chckbxUkLayout.isSelected();
-					
-					products = db.getProducts();
-					products.filter(search, onlyUKLayout);
-					populateTable(products, dtmProduct);
-				} catch (Exception ex) {
-					showWarning(ex.getMessage());
-				}
+				//Searches straight away rather than waiting for typing to pause.
+				searchTimer.stop();
+				search();
 			}
 		});
 		btnSearch.setBounds(780, 7, 89, 23);
@@ -131,30 +177,39 @@ public class CustomerFrame extends JFrame {
 		btnAddToBasket.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				/* Adds the Product selected by the user via the tblBrowse to
-				 * the user's basket. If the user already has as many of a given
-				 * item in their basket as the shop has in stock, then the user
+				 * the user's basket, holding a copy of it for the user. If no
+				 * copies of the product are left to hold, then the user
 				 * is notified and the operation is cancelled.
 				 */
 				int index = tblBrowse.getSelectedRow();
 				if(index != -1) {
-					Product p = products.get(index);
-					BasketEntry b = systemUser.getByBarcode(p.getBarcode());
-					if(b != null) {
-						if(p.getQuantity() > b.getQuantity())
-							systemUser.addToBasket(p);
-						else
-							showWarning("Your basket contains all copies of this product.");
-					} else
-						systemUser.addToBasket(p);
+					final Product p = productModel.getProductAt(index);
+					CompletableFuture<Boolean> reserved = asyncDb.submit(new Callable<Boolean>() {
+						public Boolean call() throws IOException {
+							return db.getReservations().reserve(systemUser.getId(), p.getBarcode(), 1);
+						}
+					});
+					track(reserved, new WarningCallback<Boolean>() {
+						public void succeeded(Boolean isReserved) {
+							if(isReserved) {
+								systemUser.addToBasket(p);
+								basketModel.refresh();
+							}
+							else
+								showWarning("No more copies of this product are available.");
+						}
+					});
 				} else 
 					showWarning("No product was selected.");
-				
-				populateTable(systemUser, dtmBasket);
 			}
 		});
 		btnAddToBasket.setBounds(739, 379, 130, 23);
 		pnlBrowse.add(btnAddToBasket);
 		
+		browseBusyIndicator = new BusyIndicator();
+		browseBusyIndicator.setBounds(150, 383, 579, 14);
+		pnlBrowse.add(browseBusyIndicator);
+		
 		JPanel pnlBasket = new JPanel();
 		tabbedPane.addTab("My Basket", null, pnlBasket, null);
 		pnlBasket.setLayout(null);
@@ -172,21 +227,25 @@ public class CustomerFrame extends JFrame {
 				/* Launches a PaymentDialog where the user can 
 				 * checkout their basket.				 * 
 				 */
-				try {
-					if(systemUser.basketSize() > 0) {
-						if(systemUser.validateBasket(db.getProducts())) {
-							new PaymentDialog(systemUser, db);
-							populateTable(systemUser, dtmBasket);
-							resetResults();
-						} else {
-							showWarning("Your basket contains more copies of a product than we have in stock.");
+				if(systemUser.basketSize() > 0) {
+					CompletableFuture<Boolean> held = asyncDb.submit(new Callable<Boolean>() {
+						public Boolean call() throws IOException {
+							return db.getReservations().reserveBasket(systemUser) != null;
 						}
-					} else {
-						showWarning("Your basket is empty.");
-					}
-			
-				} catch (IOException ex) {
-					showWarning(ex.getMessage());
+					});
+					track(held, new WarningCallback<Boolean>() {
+						public void succeeded(Boolean isHeld) {
+							if(isHeld) {
+								new PaymentDialog(systemUser, asyncDb);
+								basketModel.refresh();
+								resetResults();
+							} else {
+								showWarning("Your basket contains more copies of a product than we have in stock.");
+							}
+						}
+					});
+				} else {
+					showWarning("Your basket is empty.");
 				}
 			}
 		});
@@ -197,14 +256,7 @@ public class CustomerFrame extends JFrame {
 		btnCancel.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				// Cancels the customer's basket and logs this as an activity.
-				try {
-					logAllItems("cancelled");
-					systemUser.emptyBasket();
-					populateTable(systemUser, dtmBasket);
-					
-				} catch (IOException ex) {
-					showWarning(ex.getMessage());
-				}
+				closeBasket("cancelled");
 			}
 		});
 		btnCancel.setBounds(109, 379, 89, 23);
@@ -214,150 +266,195 @@ public class CustomerFrame extends JFrame {
 		btnSave.addActionListener(new ActionListener() {
 			public void actionPerformed(ActionEvent e) {
 				//Saves the customer's basket and logs this as an activity.
-				try {
-					logAllItems("saved");
-					systemUser.emptyBasket();
-					populateTable(systemUser, dtmBasket);
-					
-				} catch (IOException ex) {
-					showWarning(ex.getMessage());
-				}
-				
+				closeBasket("saved");
 			}
 		});
 		btnSave.setBounds(10, 379, 89, 23);
 		pnlBasket.add(btnSave);
 		
-		this.dtmProduct = new DefaultTableModel();
-		dtmProduct.setColumnIdentifiers(new Object[] {"Barcode", "Name", "Type", "Brand", "Colour",
-													  "Connectivity", "Quantity", "Retail Price", "Additional Information"});
-		tblBrowse.setModel(dtmProduct);
+		basketBusyIndicator = new BusyIndicator();
+		basketBusyIndicator.setBounds(208, 383, 562, 14);
+		pnlBasket.add(basketBusyIndicator);
+		
+		this.productModel = new ProductTableModel(false);
+		tblBrowse.setModel(productModel);
 		
-		this.dtmBasket = new DefaultTableModel();
-		dtmBasket.setColumnIdentifiers(new Object[] {"Barcode", "Name", "Type", "Brand", "Colour",
-				  "Connectivity", "Quantity in Stock", "Retail Price", "Additional Information", "Quantity in Basket"});
-		tblBasket.setModel(dtmBasket);
+		this.basketModel = new BasketTableModel(systemUser);
+		tblBasket.setModel(basketModel);
+		
+		//Keeps the shown products up to date as the stock changes.
+		this.inventoryListener = new InventoryListener() {
+			public void inventoryChanged(final List<InventoryEvent> events) {
+				EventQueue.invokeLater(new Runnable() {
+					public void run() {
+						applyChanges(events);
+					}
+				});
+			}
+		};
+		db.addInventoryListener(inventoryListener);
+		addWindowListener(new WindowAdapter() {
+			public void windowClosed(WindowEvent e) {
+				db.removeInventoryListener(inventoryListener);
+				if(loading != null)
+					loading.cancel(false);
+				System.exit(0);
+			}
+		});
 		
 		resetResults();
-		populateTable(systemUser, dtmBasket);
 		setVisible(true);
 	}
 	
 	/**
-	 * Populates the provided DefaultTableModel with the the products held in the given Inventory.
-	 * @param products An Inventory containing the products which are to populate dtm.
-	 * @param dtm The DefaultTableModel to be populated. 
+	 * Searches the shop's inventory for Products in stock whose brand or
+	 * colour starts with each word in txtSearch, filtered by layout, and
+	 * updates tblBrowse to show them. If the text only adds to the end of
+	 * the last search and the stock has not changed since, the products
+	 * shown are narrowed down rather than searching every product again.
 	 */
-	private void populateTable(Inventory products, DefaultTableModel dtm) {
-		products.sortByQuantity();
-		dtm.setRowCount(0);
-	    
-		for(int i = 0; i < products.size(); i++) {
-				Product p = products.get(i);
-				Object[] rowData;
-				
-				if(p.getQuantity() > 0) {					
-					if(p instanceof Keyboard) {
-						rowData = new Object[] {
-								p.getBarcode(),
-								"Keyboard",
-								((Keyboard)p).getType(),
-								p.getBrand(),
-								p.getColour(),
-								p.isWired() ? "wired" : "wireless",
-								p.getQuantity(),
-								"£" + p.getRetailPrice(),
-								((Keyboard)p).getLayout().toString() + " layout"
-						};
-						
-					}
-					else if(p instanceof Mouse) {
-						rowData = new Object[] {
-								p.getBarcode(),
-								"Mouse",
-								((Mouse)p).getType(),
-								p.getBrand(),
-								p.getColour(),
-								p.isWired() ? "wired" : "wireless",
-								p.getQuantity(),
-								"£" + p.getRetailPrice(),
-								((Mouse)p).getButtonCount() + " buttons"
-						};
-						
-					}
-					else {
-						continue;
-					}
-					dtm.addRow(rowData);
+	private void search() {
+		if(products == null)
+			return;
+		
+		String text = txtSearch.getText().trim();
+		boolean onlyUKLayout = chckbxUkLayout.isSelected();
+		boolean isSameOptions = productModel.getView() != null && onlyUKLayout == resultsOnlyUKLayout;
+		if(isSameOptions && text.equalsIgnoreCase(resultsText))
+			return;
+		
+		//Close misspellings of a word need not be close to a longer word, so they are not narrowed.
+		//Products which have gone out of stock since the last search must not be kept.
+		boolean isNarrowed = isSameOptions && !isFuzzyResults && resultsStockChanges == stockChanges
+				&& text.toLowerCase(Locale.ROOT).startsWith(resultsText.toLowerCase(Locale.ROOT));
+		resultsText = text;
+		resultsOnlyUKLayout = onlyUKLayout;
+		
+		if(isNarrowed) {
+			InventoryView narrowed = productModel.getView().filter(ProductQuery.search(text));
+			if(narrowed.size() > 0) {
+				productModel.setView(narrowed);
+				return;
 			}
 		}
+		showResults();
 	}
-
+	
 	/**
-	 * Populates the provided DefaultTableModel with the the products held in the basket of the given Customer.
-	 * @param basketHolder An Customer whose basket is to populate dtm.
-	 * @param dtm The DefaultTableModel to be populated. 
+	 * Shows the products in stock which match the current search in
+	 * tblBrowse, sorted by quantity. Brands and colours are looked up in
+	 * the inventory's FacetIndex, so only matching products are read. If
+	 * no product matches, products whose brand or colour is close to the
+	 * words of the search are shown instead, closest first.
 	 */
-	private void populateTable(Customer basketHolder, DefaultTableModel dtm) {
-		basketHolder.sortByQuantity();
-		dtm.setRowCount(0);
-	    
-		for(int i = 0; i < basketHolder.basketSize(); i++) {
-			Product p = basketHolder.getFromBasket(i).getProduct();
-			Object[] rowData;
-			
-			if(p.getQuantity() > 0) {
-				if(p instanceof Keyboard) {
-					
-					rowData = new Object[] {
-							p.getBarcode(),
-							"Keyboard",
-							((Keyboard)p).getType(),
-							p.getBrand(),
-							p.getColour(),
-							p.isWired() ? "wired" : "wireless",
-							p.getQuantity(),
-							"£" + p.getRetailPrice(),
-							((Keyboard)p).getLayout().toString() + " layout",
-							basketHolder.getFromBasket(i).getQuantity()
-					};
-					
-				}
-				else if(p instanceof Mouse) {
-					rowData = new Object[] {
-							p.getBarcode(),
-							"Mouse",
-							((Mouse)p).getType(),
-							p.getBrand(),
-							p.getColour(),
-							p.isWired() ? "wired" : "wireless",
-							p.getQuantity(),
-							"£" + p.getRetailPrice(),
-							((Mouse)p).getButtonCount() + " buttons",
-							basketHolder.getFromBasket(i).getQuantity()
-					};
-					
-				}
-				else {
-					continue;
-				}
-				
-				dtm.addRow(rowData);
-			}
+	private void showResults() {
+		resultsStockChanges = stockChanges;
+		InventoryView results = products.filter(withOptions(ProductQuery.search(resultsText)));
+		isFuzzyResults = results.size() == 0 && resultsText.length() > 0;
+		
+		if(isFuzzyResults) {
+			results = products.filter(withOptions(ProductQuery.fuzzy(resultsText)));
+			results.sort(ProductComparators.byRelevance(resultsText));
+		}
+		else
+			results.sort(ProductComparators.BY_QUANTITY);
+		productModel.setView(results);
+	}
+	
+	/**
+	 * Returns a query matching the products which match the given query,
+	 * are in stock and meet the layout option of the current search.
+	 */
+	private ProductQuery withOptions(ProductQuery query) {
+		query = query.and(ProductQuery.inStock());
+		if(resultsOnlyUKLayout)
+			query = query.and(ProductQuery.deviceClass(Keyboard.class).negate()
+					.or(ProductQuery.layout(KeyboardLayout.UK)));
+		return query;
+	}
+	
+	/**
+	 * Applies the given changes to the stock to the products shown. A
+	 * change in quantity only redraws its row; if products were added or
+	 * removed, the search is shown again.
+	 * @param events The changes to the stock.
+	 */
+	private void applyChanges(List<InventoryEvent> events) {
+		if(products == null)
+			return;
+		
+		stockChanges++;
+		boolean isReshaped = false;
+		for(InventoryEvent event : events) {
+			products.apply(event);
+			if(event.getType() != InventoryEvent.Type.QUANTITY_CHANGED)
+				isReshaped = true;
+		}
+		
+		//Removing products makes the shown view unusable, so it must be replaced.
+		if(isReshaped)
+			showResults();
+		else {
+			for(InventoryEvent event : events)
+				productModel.productChanged(event.getBarcode());
 		}
 	}
 
 	/**
-	 * Populates tblBrowse with the the products held in systemDatabase. 
+	 * Populates tblBrowse with the the products in stock held in systemDatabase. 
 	 */
 	private void resetResults() {
-		try {
-			products = db.getProducts();
-			populateTable(products, dtmProduct);
-		} catch(IOException ex) {
-			showWarning(ex.getMessage());
-		}
+		resultsText = "";
+		resultsOnlyUKLayout = false;
+		txtSearch.setText("");
+		chckbxUkLayout.setSelected(false);
+		searchTimer.stop();
+		
+		//A reading which has not started is no longer needed.
+		if(loading != null)
+			loading.cancel(false);
 		
+		//The stock is only copied again if it has changed since it was last read.
+		loading = asyncDb.submit(new Callable<Inventory>() {
+			public Inventory call() throws IOException {
+				InventorySnapshot snapshot = db.getSnapshot();
+				if(snapshot.version() == productsVersion)
+					return null;
+				
+				Inventory copy = snapshot.toInventory();
+				productsVersion = snapshot.version();
+				return copy;
+			}
+		});
+		track(loading, new WarningCallback<Inventory>() {
+			public void succeeded(Inventory copy) {
+				if(copy != null)
+					products = copy;
+				if(products != null)
+					showResults();
+			}
+		});
+	}
+	
+	/**
+	 * Shows the busy indicators until the given operation completes, then
+	 * gives its outcome to the given callback on the event dispatch thread.
+	 * @param future The future of the operation.
+	 * @param callback The callback to give the outcome to.
+	 */
+	private <T> void track(CompletableFuture<T> future, AsyncDatabase.Callback<T> callback) {
+		browseBusyIndicator.track(future);
+		basketBusyIndicator.track(future);
+		AsyncDatabase.whenDone(future, callback);
+	}
+	
+	/**
+	 * A callback which shows a warning if the operation fails.
+	 */
+	private abstract class WarningCallback<T> implements AsyncDatabase.Callback<T> {
+		public void failed(Throwable cause) {
+			showWarning(cause.getMessage());
+		}
 	}
 	
 	/**
@@ -370,14 +467,30 @@ public class CustomerFrame extends JFrame {
 	}
 
 	/**
-	 * Writes ActivtyLogs to the system's database for every item in the Customer's basket.
+	 * Writes ActivtyLogs to the system's database for every item in the Customer's basket,
+	 * releases the Customer's holds on the items and then empties the basket.
 	 * @param status The status of the ActivityLogs being written to the system's database.
-	 * @throws IOException Thrown if a problem occurs whilst writing to the database.
 	 */
-	private void logAllItems(String status) throws IOException {	
+	private void closeBasket(String status) {
+		final ArrayList<ActivityLog> logs = new ArrayList<ActivityLog>();
+		
 		for (int i = 0; i < systemUser.basketSize(); i++) {
 			BasketEntry b = systemUser.getFromBasket(i);
-			db.writeActivityLog(new ActivityLog(systemUser, b.getProduct(), b.getQuantity(), status));
+			logs.add(new ActivityLog(systemUser, b.getProduct(), b.getQuantity(), status));
 		}
+		
+		CompletableFuture<Void> closed = asyncDb.submit(new Callable<Void>() {
+			public Void call() throws IOException {
+				db.writeActivityLogs(logs);
+				db.getReservations().releaseAll(systemUser.getId());
+				return null;
+			}
+		});
+		track(closed, new WarningCallback<Void>() {
+			public void succeeded(Void result) {
+				systemUser.emptyBasket();
+				basketModel.refresh();
+			}
+		});
 	}
 }
@@ -1,19 +1,25 @@
 /**
- * Manages the reading and writing of files containing data about
- * user accounts, stock, and records of system activity.
+ * Manages the reading and writing of data about user accounts, stock, and
+ * records of system activity. The data is kept by a StorageEngine, which is
+ * a FlatFileStorageEngine unless another engine is given. Changes to the
+ * stock made through the Database are sent to its InventoryListeners.
  * @author Joseph Marcus Tungate
  */
 package cas;
-import java.io.*;
-import java.math.BigDecimal;
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
 
 public class Database {
-	private final String stockFilePath;
-	private final String userAccountsPath;
-	private final String activityLogPath;
-	private ArrayList<User> users;
+	//How long a product added to a basket is held for the customer.
+	private static final long HOLD_MILLIS = 15 * 60 * 1000;
 	
+	private final StorageEngine engine;
+	//Created when first used, as it holds the quantity of every product.
+	private StockReservations reservations;
+	private final InventoryChangeSupport changes;
+
 	/**
 	 * Creates a Database which reads from and writes to the files
 	 * given by the provided file paths.
@@ -21,292 +27,425 @@ public class Database {
 	 * @param userAccountsPath File path of the user accounts file.
 	 * @param activityLogPath File path of the activity log file.
 	 * @throws IOException Thrown if an IOException occurs when reading
-	 * the files located at the given file paths. 
+	 * the files located at the given file paths.
 	 */
 	public Database(String stockFilePath, String userAccountsPath,
 			String activityLogPath) throws IOException {
-		
-		if(stockFilePath == null || userAccountsPath == null ||
-				activityLogPath == null)
-			throw new IllegalArgumentException("File path(s) is null");
-		
-		this.stockFilePath = stockFilePath;
-		this.userAccountsPath = userAccountsPath;
-		this.activityLogPath = activityLogPath;
-		
-		this.users = readUsers();
+		this(new FlatFileStorageEngine(stockFilePath, userAccountsPath, activityLogPath));
 	}
-	
-	//Methods for handling the Stock file.
+
 	/**
-	 * Returns an Inventory object containing
-	 * the products read from the stock file.
-	 * @return the products reads from the stock file.
-	 * @throws IOException Thrown if there is a problem reading the stock file.
+	 * Creates a Database which reads from and writes to the files
+	 * given by the provided file paths. In cached mode the stock file is
+	 * held in memory; see FlatFileStorageEngine.
+	 * @param stockFilePath File path of the stock file.
+	 * @param userAccountsPath File path of the user accounts file.
+	 * @param activityLogPath File path of the activity log file.
+	 * @param isCached If true, the stock file is held in memory.
+	 * @throws IOException Thrown if an IOException occurs when reading
+	 * the files located at the given file paths.
 	 */
-	public Inventory getProducts() throws IOException {
-		return readProducts();
+	public Database(String stockFilePath, String userAccountsPath,
+			String activityLogPath, boolean isCached) throws IOException {
+		this(new FlatFileStorageEngine(stockFilePath, userAccountsPath, activityLogPath, isCached));
 	}
-	
+
+	/**
+	 * Creates a Database which reads from and writes to the files
+	 * given by the provided file paths, with the given policy for
+	 * forcing activity logs to disk.
+	 * @param stockFilePath File path of the stock file.
+	 * @param userAccountsPath File path of the user accounts file.
+	 * @param activityLogPath File path of the activity log file.
+	 * @param isCached If true, the stock file is held in memory.
+	 * @param logDurability When written activity logs are forced to disk.
+	 * @throws IOException Thrown if an IOException occurs when reading
+	 * the files located at the given file paths.
+	 */
+	public Database(String stockFilePath, String userAccountsPath,
+			String activityLogPath, boolean isCached,
+			DurabilityPolicy logDurability) throws IOException {
+		this(new FlatFileStorageEngine(stockFilePath, userAccountsPath, activityLogPath,
+				isCached, logDurability));
+	}
+
+	/**
+	 * Creates a Database which keeps its products in the given fixed width
+	 * store rather than the stock file. If the store is empty, it is filled
+	 * with the products in the stock file.
+	 * @param stockFilePath File path of the stock file.
+	 * @param userAccountsPath File path of the user accounts file.
+	 * @param activityLogPath File path of the activity log file.
+	 * @param store The store in which products are kept.
+	 * @throws IOException Thrown if an IOException occurs when reading
+	 * the files located at the given file paths.
+	 */
+	public Database(String stockFilePath, String userAccountsPath,
+			String activityLogPath, FixedWidthProductStore store) throws IOException {
+		this(new FlatFileStorageEngine(stockFilePath, userAccountsPath, activityLogPath, store));
+	}
+
 	/**
-	 * Reads the stock file, interprets its contents as Product objects,
-	 * and stores these Product objects in an Inventory object which it
-	 * returns.
-	 * @return An Inventory object containing Products read from the stock file. 
-	 * @throws IOException Thrown if there is a problem reading the
-	 * stock file.
+	 * Creates a Database whose data is kept by the given StorageEngine.
+	 * @param engine The StorageEngine which keeps the data.
 	 */
-	private Inventory readProducts() throws IOException{
-		try(BufferedReader br = 
-				new BufferedReader(new FileReader(this.stockFilePath))){
-			
-			Inventory products = new Inventory();
-			String currentLine;
-			
-			//Keeps processing lines from the file until no lines are left.
-			while((currentLine = br.readLine()) != null) {
-				//If a line cannot be parsed, it should be skipped and the process should continue.
+	public Database(StorageEngine engine) {
+		if(engine == null)
+			throw new IllegalArgumentException("Engine is null");
+
+		this.engine = engine;
+		this.changes = new InventoryChangeSupport();
+
+		//Ensures no changes or activity logs are lost when the application exits.
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run() {
 				try {
-					products.add(productFromString(currentLine));
-				}
-				catch(IllegalArgumentException | NullPointerException e) {
-					System.err.println("Line: " + currentLine + " could not be parsed as a product.\n"
-							+ e.getMessage());
+					close();
+				} catch(IOException e) {
+					System.err.println("Database could not be written on shutdown.\n" + e.getMessage());
 				}
 			}
-			
-			return products;
+		});
+	}
+
+	/**
+	 * Returns the StorageEngine which keeps this Database's data.
+	 * @return the StorageEngine which keeps this Database's data.
+	 */
+	public StorageEngine getEngine() {
+		return this.engine;
+	}
+
+	/**
+	 * Returns the StockReservations which hold products in customers'
+	 * baskets, loading the stock if they have not yet been used. Changes
+	 * made through this Database keep the reservations' available stock
+	 * up to date, and checkout turns the customer's holds into sales.
+	 * @return the StockReservations of this Database.
+	 * @throws IOException Thrown if the stock cannot be read.
+	 */
+	public synchronized StockReservations getReservations() throws IOException {
+		if(reservations == null)
+			reservations = new StockReservations(engine.getProducts(), HOLD_MILLIS);
+
+		return this.reservations;
+	}
+
+	//Methods for handling stock.
+	/**
+	 * Returns an Inventory object containing the products in stock. The
+	 * returned Inventory is a copy, so modifying it does not affect the
+	 * Database until it is passed to writeProducts.
+	 * @return the products in stock.
+	 * @throws IOException Thrown if there is a problem reading the stock.
+	 */
+	public Inventory getProducts() throws IOException {
+		return engine.getProducts();
+	}
+
+	/**
+	 * Returns an immutable snapshot of the products in stock, which can be
+	 * browsed or searched while other threads change the stock. If the
+	 * version of the snapshot is the same as an earlier one, the stock has
+	 * not changed since.
+	 * @return A snapshot of the products in stock.
+	 * @throws IOException Thrown if there is a problem reading the stock.
+	 */
+	public InventorySnapshot getSnapshot() throws IOException {
+		return engine.getSnapshot();
+	}
+
+	/**
+	 * Returns the product with the given bar code. The returned product is
+	 * a copy, so modifying it does not affect the Database.
+	 * @param barcode The bar code of the product.
+	 * @return The product with the given bar code, or null if there is none.
+	 * @throws IOException Thrown if there is a problem reading the stock.
+	 */
+	public Product getProduct(int barcode) throws IOException {
+		return engine.getProduct(barcode);
+	}
+
+	/**
+	 * Adds the given product to the stock, unless a product with the same
+	 * bar code already exists.
+	 * @param product The product to add.
+	 * @return true if the product was added. Returns false if its bar code is already in use.
+	 * @throws IOException Thrown if there is a problem reading or writing the stock.
+	 */
+	public boolean addProduct(Product product) throws IOException {
+		synchronized(this) {
+			if(!engine.addProduct(product))
+				return false;
+			productAdded(product);
 		}
+		changes.fire();
+		return true;
 	}
-	
+
 	/**
-	 * Writes the contents of the given Inventory object to
-	 * the stock file, overwriting its existing contents. The 
-	 * file will be written to in a way that makes it readable by
-	 * Database objects.
-	 * @throws IOException Thrown if the stock file cannot be written to.
+	 * Sets the quantity in stock of the product with the given bar code.
+	 * @param barcode The bar code of the product whose quantity is set.
+	 * @param quantity The new quantity in stock.
+	 * @throws IOException Thrown if there is a problem reading or writing the stock.
 	 */
-	public void writeProducts(Inventory products) throws IOException{
-		try(BufferedWriter br = new BufferedWriter(new FileWriter(stockFilePath))){
-			
-			for(int i = 0; i < products.size(); i++) {
-				br.write(stringFromProduct(products.get(i)));
+	public void updateQuantity(int barcode, int quantity) throws IOException {
+		synchronized(this) {
+			if(reservations == null && !changes.hasListeners()) {
+				engine.updateQuantity(barcode, quantity);
+				return;
 			}
+
+			Product product = engine.getProduct(barcode);
+			if(product == null)
+				throw new IllegalArgumentException("No product has the barcode " + barcode);
+			engine.updateQuantity(barcode, quantity);
+			quantityChanged(product, quantity);
 		}
+		changes.fire();
 	}
-	
+
 	/**
-	 * Returns a Product instance as specified by the given String.
-	 * The String must be in database format.
-	 * @param str The string from which to create a Product.
-	 * @return The Product parsed from the String.
+	 * Changes the quantity in stock of the product with the given bar code.
+	 * @param barcode The bar code of the product whose quantity is changed.
+	 * @param delta The amount to add to the quantity. Negative to remove stock.
+	 * @param reason A description of why the quantity changed, e.g. "purchased".
+	 * @throws IOException Thrown if there is a problem reading or writing the stock.
 	 */
-	private Product productFromString(String str) {
-		final int BARCODE = 0;
-		final int DEVICECLASS = 1;
-		final int DEVICETYPE = 2;
-		final int BRAND = 3;
-		final int COLOUR = 4;
-		final int CONNECTIVITY = 5;
-		final int QUANTITY = 6;
-		final int ORIGINALCOST = 7;
-		final int RETAILPRICE = 8;
-		final int ADDITIONALINFO = 9;
-		
-		try {
-			if (str == null)
-				throw new IllegalArgumentException();
-			
-			String[] attributes = str.split(", ");
-			if (attributes.length != 10)
-				throw new IllegalArgumentException("The given string, " + str + 
-						" is in an invalid format");
-			
-			Product parsedProduct;
-			
-			//First, parse all data that isn't tied to a particular device class.
-			int barcode = Integer.parseInt(attributes[BARCODE]);
-			String brand = attributes[BRAND];
-			String colour = attributes[COLOUR];
-			
-			boolean isWired;
-			if(attributes[CONNECTIVITY].equals("wired"))
-				isWired = true;
-			else if(attributes[CONNECTIVITY].equals("wireless"))
-				isWired = false;
-			else
-				throw new IllegalArgumentException(attributes[CONNECTIVITY] +
-						" cannot be parsed as a boolean");
-			
-			int quantity = Integer.parseInt(attributes[QUANTITY]);
-			BigDecimal originalCost = new BigDecimal(attributes[ORIGINALCOST]);
-			BigDecimal retailPrice = new BigDecimal(attributes[RETAILPRICE]);
-			
-			//Now parse device class specific data and create the Product.
-			if(attributes[DEVICECLASS].equals("keyboard")) {
-				KeyboardType type = KeyboardType.valueOf(
-						attributes[DEVICETYPE].toUpperCase());
-				KeyboardLayout layout = KeyboardLayout.valueOf(
-						attributes[ADDITIONALINFO].toUpperCase());
-				
-				parsedProduct = new Keyboard(barcode, brand, colour, isWired,
-						type, layout, originalCost, retailPrice, quantity);
+	public void adjustQuantity(int barcode, int delta, String reason) throws IOException {
+		synchronized(this) {
+			if(!changes.hasListeners()) {
+				engine.adjustQuantity(barcode, delta, reason);
+				if(reservations != null)
+					reservations.stockChanged(barcode, delta);
+				return;
 			}
-			else if(attributes[DEVICECLASS].equals("mouse")) {
-				MouseType type = MouseType.valueOf(
-						attributes[DEVICETYPE].toUpperCase());
-				int buttonCount = Integer.parseInt(attributes[ADDITIONALINFO]);
-				
-				parsedProduct = new Mouse(barcode, brand, colour, isWired,
-						type, buttonCount, originalCost, retailPrice, quantity);
-			}
-			else
-				throw new IllegalArgumentException("Device class cannot be parsed");
-			
-			return parsedProduct;
-		}
-		catch(NumberFormatException e) {
-			throw new IllegalArgumentException(e);
+
+			Product product = engine.getProduct(barcode);
+			if(product == null)
+				throw new IllegalArgumentException("No product has the barcode " + barcode);
+			engine.adjustQuantity(barcode, delta, reason);
+			quantityChanged(product, product.getQuantity() + delta);
 		}
+		changes.fire();
 	}
-	
+
 	/**
-	 * Returns a correctly formatted String representation of the 
-	 * given product. This String can be written to a stock file
-	 * and then read by readProducts.
-	 * @param product The product from which to create a string.
-	 * @return A properly formatted String representation
-	 * of the given product.
+	 * Checks out the given Customer's basket as a single transaction. If
+	 * any BasketEntry cannot be fulfilled, no changes are made. Once the
+	 * reservations are in use, the basket is held before it is checked out
+	 * and the holds are turned into sales afterwards.
+	 * @param customer The Customer whose basket is being checked out.
+	 * @param paymentType The payment type used for the checkout, e.g. "PayPal".
+	 * @throws IOException Thrown if the stock or activity logs cannot be
+	 * read or written.
 	 */
-	private final String stringFromProduct(Product product) {
-		String productStr;
-		
-		if(product == null)
-			throw new IllegalArgumentException("Product argument is null");
-		
-		productStr = Integer.toString(product.getBarcode()) + ", ";
-		
-		if(product instanceof Keyboard) {
-			productStr += "keyboard, " +
-				((Keyboard)product).getType().toString().toLowerCase() +
-				", ";
-		}
-		else if(product instanceof Mouse) {
-			productStr += "mouse, " +
-				((Mouse)product).getType().toString().toLowerCase() +
-				", ";
-		}
-		
-		productStr += product.getBrand() + ", " + 
-				product.getColour() + ", ";
-		
-		productStr += product.isWired() ? "wired, " : "wireless, ";
-		productStr += product.getQuantity() + ", " +
-				product.getOriginalCost() + ", " +
-				product.getRetailPrice() + ", ";
-		
-		if(product instanceof Keyboard) {
-			productStr += ((Keyboard)product).getLayout().toString();
+	public void checkout(Customer customer, String paymentType) throws IOException {
+		synchronized(this) {
+			HashMap<Integer, Integer> held = null;
+			if(reservations != null) {
+				held = reservations.reserveBasket(customer);
+				if(held == null)
+					throw new IllegalArgumentException("Not enough of a product in the basket is available");
+			}
+			//The quantities before the sale are read once, for the events sent to listeners.
+			InventorySnapshot before = changes.hasListeners() ? engine.getSnapshot() : null;
+			try {
+				engine.checkout(customer, paymentType);
+			}
+			catch(IOException | RuntimeException e) {
+				//Nothing was sold, so only what was held for this checkout is given back; earlier holds are kept.
+				if(held != null)
+					reservations.releaseAll(customer.getId(), held);
+				throw e;
+			}
+			if(reservations != null)
+				reservations.commit(customer);
+
+			if(before != null) {
+				//Entries for the same product are added up, so each product's event is from its old quantity.
+				HashMap<Integer, Product> sold = new HashMap<Integer, Product>();
+				for(int i = 0; i < customer.basketSize(); i++) {
+					BasketEntry entry = customer.getFromBasket(i);
+					int barcode = entry.getProduct().getBarcode();
+					Product product = sold.get(barcode);
+					if(product == null) {
+						product = before.getByBarcode(barcode);
+						sold.put(barcode, product);
+					}
+					product.setQuantity(product.getQuantity() - entry.getQuantity());
+				}
+				for(Product product : sold.values())
+					changes.quantityChanged(product, before.getByBarcode(product.getBarcode()).getQuantity());
+			}
 		}
-		
-		else if(product instanceof Mouse) {
-			productStr += ((Mouse)product).getButtonCount();
+		changes.fire();
+	}
+
+	/**
+	 * Replaces the products in stock with those in the given Inventory.
+	 * Listeners are told of the difference between the products the
+	 * engine held before and after the write.
+	 * @param products The products which should be in stock.
+	 * @throws IOException Thrown if the stock cannot be written to.
+	 */
+	public void writeProducts(Inventory products) throws IOException {
+		synchronized(this) {
+			if(reservations == null && !changes.hasListeners()) {
+				engine.writeProducts(products);
+				return;
+			}
+
+			Inventory previous = engine.getProducts();
+			engine.writeProducts(products);
+			Inventory stored = engine.getProducts();
+
+			//New products are given to the reservations together, so their index is copied once.
+			ArrayList<Product> added = new ArrayList<Product>();
+			for(int i = 0; i < stored.size(); i++) {
+				Product p = stored.get(i);
+				Product old = previous.getByBarcode(p.getBarcode());
+				if(old == null) {
+					added.add(p);
+					if(changes.hasListeners())
+						changes.productAdded(p);
+				}
+				else if(old.isSameApartFromQuantity(p))
+					quantityChanged(old, p.getQuantity());
+				else {
+					//Any other change is sent as the old product being replaced.
+					if(reservations != null)
+						reservations.stockChanged(p.getBarcode(), p.getQuantity() - old.getQuantity());
+					if(changes.hasListeners()) {
+						changes.productRemoved(old);
+						changes.productAdded(p);
+					}
+				}
+			}
+			if(reservations != null)
+				reservations.addProducts(added);
+			for(int i = 0; i < previous.size(); i++) {
+				Product old = previous.get(i);
+				if(stored.getByBarcode(old.getBarcode()) == null)
+					productRemoved(old);
+			}
 		}
-		
-		productStr += "\n";
-		
-		return productStr;
+		changes.fire();
 	}
 
-	//Methods for handling the UserAccounts file.
 	/**
-	 * Returns a reference to an ArrayList object containing Users
-	 * read from the UserAccounts file. Modifying the returned
-	 * ArrayList will affect the database's internal ArrayList.
-	 * @return An ArrayList object containing Users read from the
-	 * UserAccounts file.
+	 * Adds a listener which is sent every change to the stock made through
+	 * this Database from now on.
+	 * @param listener The listener to add.
 	 */
-	public ArrayList<User> getUsers() {
-		return this.users;
+	public void addInventoryListener(InventoryListener listener) {
+		changes.addListener(listener);
 	}
-	
+
 	/**
-	 * Interprets the UserAccounts file as a series of User objects and
-	 * stores these User objects in an ArrayList which becomes the value
-	 * of the users attribute.
-	 * @throws IOException Thrown if the UserAccounts file cannot be read.
+	 * Removes a listener added by addInventoryListener.
+	 * @param listener The listener to remove.
 	 */
-	private final ArrayList<User> readUsers() throws IOException {
-		ArrayList<User> users = new ArrayList<User>();
-		
-		try(BufferedReader br = 
-				new BufferedReader(new FileReader(userAccountsPath))) {
-			String currentLine;
-			
-			//Keep reading the file until no lines remain.
-			while((currentLine = br.readLine()) != null) {
-				users.add(userFromString(currentLine));
-			}
-			
-			return users;
-		}
-		
+	public void removeInventoryListener(InventoryListener listener) {
+		changes.removeListener(listener);
 	}
-	
+
 	/**
-	 * Given a correctly formatted String, parses the String to create
-	 * a User object.
-	 * @param str The String from which to create the User.
-	 * @return The User object as specified by the String.
+	 * Tells the reservations and listeners that the given product was added.
 	 */
-	private final User userFromString(String str) {
-		final int ID = 0;
-		final int USERNAME = 1;
-		final int SURNAME = 2;
-		final int HOUSENO = 3;
-		final int POSTCODE = 4;
-		final int CITY = 5;
-		final int ROLE = 6;
-		
-		User parsedUser;
-		
-		if(str == null)
-			throw new IllegalArgumentException("Given String is null");
-		
-		String[] attributes = str.split(", ");
-		if(attributes.length != 7)
-			throw new IllegalArgumentException("String is not formatted properly");
-		
-		int id = Integer.parseInt(attributes[ID]);
-		String username = attributes[USERNAME];
-		String surname = attributes[SURNAME];
-		int houseno = Integer.parseInt(attributes[HOUSENO]);
-		String postcode = attributes[POSTCODE];
-		String city = attributes[CITY];
-		
-		if(attributes[ROLE].equals("admin")){
-			parsedUser = new Admin(id, username, surname, houseno, city, postcode);
-		}
-		else if(attributes[ROLE].equals("customer")) {
-			parsedUser = new Customer(id, username, surname, houseno, city, postcode);
-		}
-		else {
-			throw new IllegalArgumentException("Invalid role");
+	private void productAdded(Product product) {
+		if(reservations != null)
+			reservations.addProduct(product);
+		if(changes.hasListeners())
+			changes.productAdded(product);
+	}
+
+	/**
+	 * Tells the reservations and listeners that the given product was removed.
+	 */
+	private void productRemoved(Product product) {
+		if(reservations != null)
+			reservations.removeProduct(product.getBarcode());
+		if(changes.hasListeners())
+			changes.productRemoved(product);
+	}
+
+	/**
+	 * Tells the reservations and listeners that the quantity of the given
+	 * product, which holds its old quantity, has changed to the given quantity.
+	 */
+	private void quantityChanged(Product product, int quantity) {
+		int oldQuantity = product.getQuantity();
+		if(reservations != null)
+			reservations.stockChanged(product.getBarcode(), quantity - oldQuantity);
+		if(changes.hasListeners()) {
+			product.setQuantity(quantity);
+			changes.quantityChanged(product, oldQuantity);
 		}
-		
-		return parsedUser;
+	}
+	//End methods for handling stock.
+
+	//Methods for handling users.
+	/**
+	 * Returns an ArrayList object containing every User.
+	 * @return An ArrayList object containing every User.
+	 * @throws IOException Thrown if the users cannot be read.
+	 */
+	public ArrayList<User> getUsers() throws IOException {
+		return engine.getUsers();
 	}
 
-	//Methods for handling the ActivityLog file
 	/**
-	 * Writes the given ActivityLog to the ActivityLog file.
-	 * @param log The ActivityLog to be written to the ActivityLog file.
-	 * @throws IOException Thrown if the ActivityLog file cannot be written to.
+	 * Returns the User with the given id.
+	 * @param id The id of the User.
+	 * @return The User with the given id, or null if there is none.
+	 * @throws IOException Thrown if the users cannot be read.
+	 */
+	public User getUser(int id) throws IOException {
+		return engine.getUser(id);
+	}
+	//End methods for handling users.
+
+	//Methods for handling activity logs.
+	/**
+	 * Writes the given ActivityLog.
+	 * @param log The ActivityLog to be written.
+	 * @throws IOException Thrown if the ActivityLog cannot be written.
 	 */
 	public void writeActivityLog(ActivityLog log) throws IOException {
-		try(BufferedWriter br =
-				new BufferedWriter(new FileWriter(activityLogPath, true))){
-			br.append(log.toString() + "\n");
+		ArrayList<ActivityLog> logs = new ArrayList<ActivityLog>();
+		logs.add(log);
+		engine.writeActivityLogs(logs);
+	}
+
+	/**
+	 * Writes the given ActivityLogs in one write.
+	 * @param logs The ActivityLogs to be written.
+	 * @throws IOException Thrown if the ActivityLogs cannot be written.
+	 */
+	public void writeActivityLogs(List<ActivityLog> logs) throws IOException {
+		engine.writeActivityLogs(logs);
+	}
+	//End methods for handling activity logs.
+
+	/**
+	 * Writes any changes which the engine has not yet written.
+	 * @throws IOException Thrown if the changes cannot be written.
+	 */
+	public void flush() throws IOException {
+		engine.flush();
+	}
+
+	/**
+	 * Writes any changes and closes the engine. The Database should not
+	 * be used after it is closed.
+	 * @throws IOException Thrown if the changes cannot be written.
+	 */
+	public void close() throws IOException {
+		synchronized(this) {
+			if(reservations != null)
+				reservations.close();
 		}
+		engine.close();
 	}
 }
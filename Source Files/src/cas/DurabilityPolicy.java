@@ -0,0 +1,14 @@
+/**
+ * DurabilityPolicy enumerates when records written to a file are forced to disk.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+public enum DurabilityPolicy {
+	//Every record is written and forced to disk before the call writing it returns.
+	EVERY_RECORD,
+	//Records are written and forced to disk by a background thread at a fixed interval.
+	INTERVAL,
+	//Records are written by a background thread and only forced to disk on shutdown.
+	ON_SHUTDOWN;
+}
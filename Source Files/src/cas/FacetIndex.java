@@ -0,0 +1,361 @@
+/**
+ * A FacetIndex holds a bitmap for each value of each categorical attribute of
+ * the products in an Inventory, such as brand, colour or keyboard layout.
+ * Bit i of a bitmap is set if the product at position i of the Inventory has
+ * that value, so queries over several attributes become bitwise ANDs and ORs,
+ * and the number of matching products is a population count.
+ * Brands and colours are indexed ignoring case, in sorted order, so the
+ * products whose brand or colour starts with a prefix can be found by
+ * visiting only the terms with that prefix. Brands and colours close to a
+ * misspelt one are found through a BKTree of each, built when first needed.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.util.BitSet;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+public class FacetIndex {
+	private int size;
+	private final TreeMap<String, BitSet> brands;
+	private final TreeMap<String, BitSet> colours;
+	private final BitSet wired;
+	private final BitSet keyboards;
+	private final BitSet mice;
+	private final EnumMap<KeyboardType, BitSet> keyboardTypes;
+	private final EnumMap<MouseType, BitSet> mouseTypes;
+	private final EnumMap<KeyboardLayout, BitSet> layouts;
+	private final HashMap<Integer, BitSet> buttonCounts;
+	//The distinct brands and colours, for finding those close to a misspelt one.
+	private BKTree brandTerms;
+	private BKTree colourTerms;
+
+	/**
+	 * Creates a FacetIndex of the products in the given Inventory.
+	 * @param products The Inventory to index.
+	 */
+	public FacetIndex(Inventory products) {
+		if(products == null)
+			throw new IllegalArgumentException("Inventory is null.");
+
+		this.brands = new TreeMap<String, BitSet>();
+		this.colours = new TreeMap<String, BitSet>();
+		this.wired = new BitSet();
+		this.keyboards = new BitSet();
+		this.mice = new BitSet();
+		this.keyboardTypes = new EnumMap<KeyboardType, BitSet>(KeyboardType.class);
+		this.mouseTypes = new EnumMap<MouseType, BitSet>(MouseType.class);
+		this.layouts = new EnumMap<KeyboardLayout, BitSet>(KeyboardLayout.class);
+		this.buttonCounts = new HashMap<Integer, BitSet>();
+
+		for(int i = 0; i < products.size(); i++)
+			add(products.get(i), i);
+	}
+
+	/**
+	 * Adds the given product to the index at the given position. Positions
+	 * must be added in order, as products are added to the end of an Inventory.
+	 * @param product The product to index.
+	 * @param index The product's position in the Inventory.
+	 */
+	void add(Product product, int index) {
+		if(index != size)
+			throw new IllegalArgumentException("Products must be indexed in order.");
+
+		bitmap(brands, key(product.getBrand())).set(index);
+		bitmap(colours, key(product.getColour())).set(index);
+		if(brandTerms != null)
+			brandTerms.add(key(product.getBrand()));
+		if(colourTerms != null)
+			colourTerms.add(key(product.getColour()));
+		if(product.isWired())
+			wired.set(index);
+
+		if(product instanceof Keyboard) {
+			Keyboard k = (Keyboard)product;
+			keyboards.set(index);
+			bitmap(keyboardTypes, k.getType()).set(index);
+			bitmap(layouts, k.getLayout()).set(index);
+		}
+		else if(product instanceof Mouse) {
+			Mouse m = (Mouse)product;
+			mice.set(index);
+			bitmap(mouseTypes, m.getType()).set(index);
+			bitmap(buttonCounts, m.getButtonCount()).set(index);
+		}
+
+		size++;
+	}
+
+	/**
+	 * Returns the number of products in the index.
+	 * @return The number of products in the index.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	//Methods returning the products with a given value. Each returns a new bitmap.
+	/**
+	 * Returns a bitmap of every product.
+	 * @return A bitmap of every product.
+	 */
+	public BitSet all() {
+		BitSet all = new BitSet(size);
+		all.set(0, size);
+		return all;
+	}
+
+	/**
+	 * Returns a bitmap of the products of the given brand, ignoring case.
+	 * @param brand The brand.
+	 * @return A bitmap of the products of the brand.
+	 */
+	public BitSet brand(String brand) {
+		return copy(brands.get(key(brand)));
+	}
+
+	/**
+	 * Returns a bitmap of the products of the given colour, ignoring case.
+	 * @param colour The colour.
+	 * @return A bitmap of the products of the colour.
+	 */
+	public BitSet colour(String colour) {
+		return copy(colours.get(key(colour)));
+	}
+
+	/**
+	 * Returns a bitmap of the products whose brand starts with the given
+	 * prefix, ignoring case.
+	 * @param prefix The start of the brand.
+	 * @return A bitmap of the products whose brand has the prefix.
+	 */
+	public BitSet brandPrefix(String prefix) {
+		return union(brands, key(prefix));
+	}
+
+	/**
+	 * Returns a bitmap of the products whose colour starts with the given
+	 * prefix, ignoring case.
+	 * @param prefix The start of the colour.
+	 * @return A bitmap of the products whose colour has the prefix.
+	 */
+	public BitSet colourPrefix(String prefix) {
+		return union(colours, key(prefix));
+	}
+
+	/**
+	 * Returns the brands within the given edit distance of the given brand,
+	 * ignoring case.
+	 * @param brand The brand, which may be misspelt.
+	 * @param maxDistance The greatest number of edits from the given brand.
+	 * @return A map from each brand, in lower case, to its distance from the given brand.
+	 */
+	public Map<String, Integer> brandsNear(String brand, int maxDistance) {
+		if(brandTerms == null)
+			brandTerms = terms(brands);
+		return brandTerms.search(key(brand), maxDistance);
+	}
+
+	/**
+	 * Returns the colours within the given edit distance of the given colour,
+	 * ignoring case.
+	 * @param colour The colour, which may be misspelt.
+	 * @param maxDistance The greatest number of edits from the given colour.
+	 * @return A map from each colour, in lower case, to its distance from the given colour.
+	 */
+	public Map<String, Integer> coloursNear(String colour, int maxDistance) {
+		if(colourTerms == null)
+			colourTerms = terms(colours);
+		return colourTerms.search(key(colour), maxDistance);
+	}
+
+	/**
+	 * Returns a bitmap of the products whose brand is within the given edit
+	 * distance of the given brand, ignoring case.
+	 * @param brand The brand, which may be misspelt.
+	 * @param maxDistance The greatest number of edits from the given brand.
+	 * @return A bitmap of the products with a close brand.
+	 */
+	public BitSet brandNear(String brand, int maxDistance) {
+		return union(brands, brandsNear(brand, maxDistance).keySet());
+	}
+
+	/**
+	 * Returns a bitmap of the products whose colour is within the given edit
+	 * distance of the given colour, ignoring case.
+	 * @param colour The colour, which may be misspelt.
+	 * @param maxDistance The greatest number of edits from the given colour.
+	 * @return A bitmap of the products with a close colour.
+	 */
+	public BitSet colourNear(String colour, int maxDistance) {
+		return union(colours, coloursNear(colour, maxDistance).keySet());
+	}
+
+	/**
+	 * Returns a bitmap of the wired or wireless products.
+	 * @param isWired If true, the wired products. Otherwise the wireless products.
+	 * @return A bitmap of the products with the given connectivity.
+	 */
+	public BitSet wired(boolean isWired) {
+		BitSet result = copy(wired);
+		if(!isWired)
+			result.flip(0, size);
+		return result;
+	}
+
+	/**
+	 * Returns a bitmap of the products of the given device class.
+	 * @param deviceClass Keyboard.class or Mouse.class.
+	 * @return A bitmap of the products of the device class, or null if
+	 * the device class is not indexed.
+	 */
+	public BitSet deviceClass(Class<? extends Product> deviceClass) {
+		if(deviceClass == Keyboard.class)
+			return copy(keyboards);
+		if(deviceClass == Mouse.class)
+			return copy(mice);
+		if(deviceClass == Product.class)
+			return all();
+		return null;
+	}
+
+	/**
+	 * Returns a bitmap of the keyboards of the given type.
+	 * @param type The KeyboardType.
+	 * @return A bitmap of the keyboards of the type.
+	 */
+	public BitSet type(KeyboardType type) {
+		return copy(keyboardTypes.get(type));
+	}
+
+	/**
+	 * Returns a bitmap of the mice of the given type.
+	 * @param type The MouseType.
+	 * @return A bitmap of the mice of the type.
+	 */
+	public BitSet type(MouseType type) {
+		return copy(mouseTypes.get(type));
+	}
+
+	/**
+	 * Returns a bitmap of the keyboards with the given layout.
+	 * @param layout The KeyboardLayout.
+	 * @return A bitmap of the keyboards with the layout.
+	 */
+	public BitSet layout(KeyboardLayout layout) {
+		return copy(layouts.get(layout));
+	}
+
+	/**
+	 * Returns a bitmap of the mice with the given number of buttons.
+	 * @param buttonCount The number of buttons.
+	 * @return A bitmap of the mice with the number of buttons.
+	 */
+	public BitSet buttonCount(int buttonCount) {
+		return copy(buttonCounts.get(buttonCount));
+	}
+	//End methods returning the products with a given value.
+
+	//Methods for counting facets.
+	/**
+	 * Returns the number of products in the given selection of each brand.
+	 * Brands are given in lower case.
+	 * @param selection A bitmap of the products to count, e.g. a search result.
+	 * @return A map from each brand to the number of selected products of that brand.
+	 */
+	public Map<String, Integer> brandCounts(BitSet selection) {
+		return counts(brands, selection);
+	}
+
+	/**
+	 * Returns the number of products in the given selection of each colour.
+	 * Colours are given in lower case.
+	 * @param selection A bitmap of the products to count, e.g. a search result.
+	 * @return A map from each colour to the number of selected products of that colour.
+	 */
+	public Map<String, Integer> colourCounts(BitSet selection) {
+		return counts(colours, selection);
+	}
+
+	/**
+	 * Counts the selected products with each value in the given map, omitting
+	 * values with no selected products.
+	 */
+	private static Map<String, Integer> counts(Map<String, BitSet> facet, BitSet selection) {
+		TreeMap<String, Integer> counts = new TreeMap<String, Integer>();
+
+		for(Map.Entry<String, BitSet> e : facet.entrySet()) {
+			BitSet matching = copy(e.getValue());
+			matching.and(selection);
+			int count = matching.cardinality();
+			if(count > 0)
+				counts.put(e.getKey(), count);
+		}
+
+		return counts;
+	}
+	//End methods for counting facets.
+
+	/**
+	 * Returns the bitmap for the given value, creating it if it does not exist.
+	 */
+	private static <K> BitSet bitmap(Map<K, BitSet> facet, K value) {
+		BitSet bitmap = facet.get(value);
+		if(bitmap == null) {
+			bitmap = new BitSet();
+			facet.put(value, bitmap);
+		}
+		return bitmap;
+	}
+
+	/**
+	 * Returns the union of the bitmaps of the values starting with the given prefix.
+	 */
+	private static BitSet union(TreeMap<String, BitSet> facet, String prefix) {
+		BitSet result = new BitSet();
+		for(BitSet bitmap : facet.subMap(prefix, true, prefix + Character.MAX_VALUE, false).values())
+			result.or(bitmap);
+		return result;
+	}
+
+	/**
+	 * Returns the union of the bitmaps of the given values.
+	 */
+	private static BitSet union(TreeMap<String, BitSet> facet, Iterable<String> values) {
+		BitSet result = new BitSet();
+		for(String value : values)
+			result.or(facet.get(value));
+		return result;
+	}
+
+	/**
+	 * Returns a BKTree of the values of the given facet.
+	 */
+	private static BKTree terms(TreeMap<String, BitSet> facet) {
+		BKTree terms = new BKTree();
+		for(String value : facet.keySet())
+			terms.add(value);
+		return terms;
+	}
+
+	/**
+	 * Returns a copy of the given bitmap, or an empty bitmap if it is null.
+	 */
+	private static BitSet copy(BitSet bitmap) {
+		return bitmap == null ? new BitSet() : (BitSet)bitmap.clone();
+	}
+
+	/**
+	 * Returns the key under which a brand or colour is indexed. Queries
+	 * which test products one at a time compare these keys too, so that
+	 * they fold case exactly as the index does.
+	 */
+	static String key(String value) {
+		return value == null ? null : value.toLowerCase(Locale.ROOT);
+	}
+}
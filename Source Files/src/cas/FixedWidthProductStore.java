@@ -0,0 +1,539 @@
+/**
+ * A FixedWidthProductStore keeps products in a file of fixed width records,
+ * one per slot, so that a single product can be read or changed without
+ * rewriting the file. Changing a quantity is one positional write of four
+ * bytes. A BarcodeBTree, kept in a second file, maps each product's bar code
+ * to its slot, so a product is found without reading the rest of the store
+ * and the store's memory use does not grow with the number of products.
+ * <p>
+ * The file starts with a header holding a magic number, the format version,
+ * the record size, the number of slots and the first free slot. Removing a
+ * product frees its slot, which is linked into a list of free slots through
+ * the record itself and reused by the next product added.
+ * <p>
+ * Quantity changes made together, such as a checkout, are first written to
+ * a pending file, so that if they are interrupted they are completed when
+ * the store is next opened.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+public class FixedWidthProductStore implements Closeable {
+	private static final int MAGIC = 0x43415346;
+	private static final short VERSION = 1;
+	private static final int HEADER_SIZE = 32;
+	private static final int NO_SLOT = -1;
+	//Number of records read at once when scanning the store.
+	private static final int SCAN_RECORDS = 1024;
+
+	//Positions of the header fields.
+	private static final int SLOT_COUNT_OFFSET = 8;
+	private static final int FREE_HEAD_OFFSET = 12;
+
+	//Positions of the fields within a record.
+	private static final int RECORD_SIZE = 128;
+	private static final int STATUS_OFFSET = 0;
+	private static final int DEVICE_CLASS_OFFSET = 1;
+	private static final int TYPE_OFFSET = 2;
+	private static final int WIRED_OFFSET = 3;
+	private static final int BARCODE_OFFSET = 4;
+	private static final int QUANTITY_OFFSET = 8;
+	private static final int EXTRA_OFFSET = 12;
+	private static final int ORIGINAL_COST_OFFSET = 16;
+	private static final int RETAIL_PRICE_OFFSET = 24;
+	private static final int NEXT_FREE_OFFSET = 32;
+	private static final int BRAND_OFFSET = 36;
+	private static final int COLOUR_OFFSET = 82;
+	//Longest brand or colour, in UTF-8 bytes, that fits in a record.
+	public static final int MAX_STRING_BYTES = 45;
+
+	private static final byte FREE = 0;
+	private static final byte LIVE = 1;
+	private static final byte KEYBOARD = 0;
+	private static final byte MOUSE = 1;
+
+	private final File storeFile;
+	private final File pendingFile;
+	private final FileChannel channel;
+	private final BarcodeBTree slots;
+	private int slotCount;
+	private int freeHead;
+
+	/**
+	 * Opens the store in the file at the given path, creating it if it does not exist.
+	 * @param storePath The file path of the store.
+	 * @throws IOException Thrown if the store cannot be opened or is not a product store.
+	 */
+	public FixedWidthProductStore(String storePath) throws IOException {
+		if(storePath == null)
+			throw new IllegalArgumentException("Store path is null");
+
+		this.storeFile = new File(storePath);
+		this.pendingFile = new File(storePath + ".pending");
+		this.channel = FileChannel.open(storeFile.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.READ, StandardOpenOption.WRITE);
+		this.slots = new BarcodeBTree(storePath + ".index");
+
+		try {
+			open();
+		}
+		catch(IOException | RuntimeException e) {
+			channel.close();
+			slots.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Reads the header, completes any interrupted quantity changes and
+	 * rebuilds the bar code index if it was not closed with the store.
+	 */
+	private void open() throws IOException {
+		boolean isNew = channel.size() == 0;
+		if(isNew) {
+			slotCount = 0;
+			freeHead = NO_SLOT;
+			writeHeader();
+		}
+
+		ByteBuffer header = read(0, HEADER_SIZE);
+		if(header.getInt() != MAGIC)
+			throw new IOException(storeFile + " is not a product store");
+		if(header.getShort() != VERSION || header.getShort() != RECORD_SIZE)
+			throw new IOException(storeFile + " is a product store of an unknown version");
+		slotCount = header.getInt(SLOT_COUNT_OFFSET);
+		freeHead = header.getInt(FREE_HEAD_OFFSET);
+
+		//A record appended after the header was last written was never added.
+		long size = position(slotCount);
+		if(channel.size() < size)
+			throw new IOException(storeFile + " is shorter than its header says");
+		if(channel.size() > size)
+			channel.truncate(size);
+
+		completePending();
+		if(isNew || !slots.wasClean())
+			rebuildIndex();
+	}
+
+	/**
+	 * Reads every record, a few at a time, to rebuild the bar code index.
+	 * If the list of free slots was left inconsistent, e.g. by a crash while
+	 * a slot was reused, it is rebuilt too.
+	 */
+	private void rebuildIndex() throws IOException {
+		slots.clear();
+		int freeCount = 0;
+
+		for(int first = 0; first < slotCount; first += SCAN_RECORDS) {
+			int count = Math.min(SCAN_RECORDS, slotCount - first);
+			ByteBuffer records = read(position(first), count * RECORD_SIZE);
+			for(int i = 0; i < count; i++) {
+				if(records.get(i * RECORD_SIZE + STATUS_OFFSET) == LIVE)
+					slots.put(records.getInt(i * RECORD_SIZE + BARCODE_OFFSET), first + i);
+				else
+					freeCount++;
+			}
+		}
+
+		//Follow the list, checking it holds exactly the free slots.
+		int listed = 0;
+		int slot = freeHead;
+		while(slot != NO_SLOT && listed <= freeCount && slot >= 0 && slot < slotCount &&
+				read(position(slot) + STATUS_OFFSET, 1).get(0) == FREE) {
+			listed++;
+			slot = readInt(position(slot) + NEXT_FREE_OFFSET);
+		}
+
+		if(slot != NO_SLOT || listed != freeCount) {
+			freeHead = NO_SLOT;
+			for(int s = slotCount - 1; s >= 0; s--) {
+				if(read(position(s) + STATUS_OFFSET, 1).get(0) == FREE) {
+					writeInt(position(s) + NEXT_FREE_OFFSET, freeHead);
+					freeHead = s;
+				}
+			}
+			writeHeader();
+		}
+
+		channel.force(false);
+		slots.flush();
+	}
+
+	//Methods for reading products.
+	/**
+	 * Returns the number of products in the store.
+	 * @return The number of products in the store.
+	 */
+	public synchronized int size() {
+		return slots.size();
+	}
+
+	/**
+	 * Returns the product with the given bar code.
+	 * @param barcode The bar code of the product.
+	 * @return The product, or null if the store does not hold the bar code.
+	 * @throws IOException Thrown if the store cannot be read.
+	 */
+	public synchronized Product get(int barcode) throws IOException {
+		int slot = slots.get(barcode);
+		if(slot < 0)
+			return null;
+
+		return decode(read(position(slot), RECORD_SIZE), 0);
+	}
+
+	/**
+	 * Reads every product in the store, in slot order, a few records at a
+	 * time.
+	 * @return An Inventory of the products in the store.
+	 * @throws IOException Thrown if the store cannot be read.
+	 */
+	public synchronized Inventory readAll() throws IOException {
+		Inventory products = new Inventory();
+
+		for(int first = 0; first < slotCount; first += SCAN_RECORDS) {
+			int count = Math.min(SCAN_RECORDS, slotCount - first);
+			ByteBuffer records = read(position(first), count * RECORD_SIZE);
+			for(int i = 0; i < count; i++) {
+				if(records.get(i * RECORD_SIZE + STATUS_OFFSET) == LIVE)
+					products.add(decode(records, i * RECORD_SIZE));
+			}
+		}
+
+		return products;
+	}
+	//End methods for reading products.
+
+	//Methods for changing products.
+	/**
+	 * Adds the given product to a free slot, or to a new slot at the end of
+	 * the store if none are free.
+	 * @param product The product to add.
+	 * @return true if the product was added. Returns false if the store
+	 * already holds a product with the same bar code.
+	 * @throws IOException Thrown if the store cannot be written to.
+	 */
+	public synchronized boolean add(Product product) throws IOException {
+		if(product == null)
+			throw new IllegalArgumentException("null is not a valid Product");
+		if(slots.get(product.getBarcode()) >= 0)
+			return false;
+
+		ByteBuffer record = encode(product);
+		int slot;
+		if(freeHead != NO_SLOT) {
+			slot = freeHead;
+			freeHead = readInt(position(slot) + NEXT_FREE_OFFSET);
+		}
+		else
+			slot = slotCount++;
+
+		//The record is written before the header refers to it.
+		write(position(slot), record);
+		writeHeader();
+		slots.put(product.getBarcode(), slot);
+		return true;
+	}
+
+	/**
+	 * Removes the product with the given bar code, adding its slot to the
+	 * list of free slots.
+	 * @param barcode The bar code of the product to remove.
+	 * @return true if the product was removed. Returns false if the store
+	 * does not hold the bar code.
+	 * @throws IOException Thrown if the store cannot be written to.
+	 */
+	public synchronized boolean remove(int barcode) throws IOException {
+		int slot = slots.get(barcode);
+		if(slot < 0)
+			return false;
+
+		writeInt(position(slot) + NEXT_FREE_OFFSET, freeHead);
+		ByteBuffer status = ByteBuffer.allocate(1).put(0, FREE);
+		write(position(slot) + STATUS_OFFSET, status);
+		freeHead = slot;
+		writeHeader();
+		slots.remove(barcode);
+		return true;
+	}
+
+	/**
+	 * Replaces the product with the same bar code as the given product,
+	 * writing the whole record again in the slot it already holds.
+	 * @param product The product to write.
+	 * @return true if the product was replaced. Returns false if the store
+	 * does not hold its bar code.
+	 * @throws IOException Thrown if the store cannot be written to.
+	 */
+	public synchronized boolean replace(Product product) throws IOException {
+		if(product == null)
+			throw new IllegalArgumentException("null is not a valid Product");
+		int slot = slots.get(product.getBarcode());
+		if(slot < 0)
+			return false;
+
+		write(position(slot), encode(product));
+		return true;
+	}
+
+	/**
+	 * Sets the quantity of the product with the given bar code with a
+	 * single write to its record.
+	 * @param barcode The bar code of the product.
+	 * @param quantity The new quantity.
+	 * @throws IOException Thrown if the store cannot be written to.
+	 */
+	public synchronized void updateQuantity(int barcode, int quantity) throws IOException {
+		writeInt(position(slotOf(barcode, quantity)) + QUANTITY_OFFSET, quantity);
+	}
+
+	/**
+	 * Sets the quantities of the products with the given bar codes. Either
+	 * every quantity is changed or, if the store cannot be written to, none
+	 * are; a change which is interrupted is completed when the store is
+	 * next opened.
+	 * @param barcodes The bar codes of the products.
+	 * @param quantities The new quantity of each product.
+	 * @throws IOException Thrown if the store cannot be written to.
+	 */
+	public synchronized void updateQuantities(int[] barcodes, int[] quantities) throws IOException {
+		if(barcodes == null || quantities == null || barcodes.length != quantities.length)
+			throw new IllegalArgumentException("Each bar code must have one quantity");
+
+		int[] changed = new int[barcodes.length];
+		for(int i = 0; i < barcodes.length; i++)
+			changed[i] = slotOf(barcodes[i], quantities[i]);
+
+		//Record the whole change before any record is changed.
+		ByteBuffer pending = ByteBuffer.allocate(4 + changed.length * 8 + 4);
+		pending.putInt(changed.length);
+		for(int i = 0; i < changed.length; i++)
+			pending.putInt(changed[i]).putInt(quantities[i]);
+		CRC32 crc = new CRC32();
+		crc.update(pending.array(), 0, pending.position());
+		pending.putInt((int)crc.getValue());
+		pending.flip();
+
+		try(FileChannel out = FileChannel.open(pendingFile.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while(pending.hasRemaining())
+				out.write(pending);
+			out.force(false);
+		}
+
+		apply(changed, quantities);
+	}
+
+	/**
+	 * Writes the given quantities to the given slots, forces them to disk
+	 * and deletes the pending file.
+	 */
+	private void apply(int[] changed, int[] quantities) throws IOException {
+		for(int i = 0; i < changed.length; i++)
+			writeInt(position(changed[i]) + QUANTITY_OFFSET, quantities[i]);
+		channel.force(false);
+		Files.deleteIfExists(pendingFile.toPath());
+	}
+
+	/**
+	 * Applies a pending quantity change left by an interrupted call to
+	 * updateQuantities. A pending file which was not completely written
+	 * was never applied, so it is discarded.
+	 */
+	private void completePending() throws IOException {
+		if(!pendingFile.exists())
+			return;
+
+		ByteBuffer pending = ByteBuffer.wrap(Files.readAllBytes(pendingFile.toPath()));
+		if(pending.limit() >= 8) {
+			int count = pending.getInt(0);
+			if(count >= 0 && pending.limit() == 4 + count * 8 + 4) {
+				CRC32 crc = new CRC32();
+				crc.update(pending.array(), 0, pending.limit() - 4);
+				if(pending.getInt(pending.limit() - 4) == (int)crc.getValue()) {
+					int[] changed = new int[count];
+					int[] quantities = new int[count];
+					pending.position(4);
+					for(int i = 0; i < count; i++) {
+						changed[i] = pending.getInt();
+						quantities[i] = pending.getInt();
+						if(changed[i] < 0 || changed[i] >= slotCount)
+							throw new IOException(pendingFile + " refers to a slot outside the store");
+					}
+					apply(changed, quantities);
+					return;
+				}
+			}
+		}
+
+		Files.delete(pendingFile.toPath());
+	}
+
+	/**
+	 * Returns the slot of the given bar code, checking the quantity which is
+	 * about to be written to it.
+	 */
+	private int slotOf(int barcode, int quantity) throws IOException {
+		int slot = slots.get(barcode);
+		if(slot < 0)
+			throw new IllegalArgumentException("No product has the barcode " + barcode);
+		if(!Product.verifyQuantity(quantity))
+			throw new IllegalArgumentException("Invalid quantity.");
+		return slot;
+	}
+	//End methods for changing products.
+
+	/**
+	 * Forces every change to the store to disk. Does nothing once the
+	 * store is closed, as closing it forces every change.
+	 * @throws IOException Thrown if the store cannot be written to.
+	 */
+	public synchronized void force() throws IOException {
+		if(channel.isOpen())
+			channel.force(false);
+	}
+
+	/**
+	 * Forces every change to disk and closes the store.
+	 * @throws IOException Thrown if the store cannot be closed.
+	 */
+	@Override
+	public synchronized void close() throws IOException {
+		if(channel.isOpen()) {
+			channel.force(false);
+			channel.close();
+		}
+		//The index is only marked as closed cleanly once the store is on disk.
+		slots.close();
+	}
+
+	/**
+	 * Returns the record for the given product.
+	 */
+	private static ByteBuffer encode(Product product) {
+		ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+		record.put(STATUS_OFFSET, LIVE);
+		record.put(WIRED_OFFSET, (byte)(product.isWired() ? 1 : 0));
+		record.putInt(BARCODE_OFFSET, product.getBarcode());
+		record.putInt(QUANTITY_OFFSET, product.getQuantity());
+		record.putLong(ORIGINAL_COST_OFFSET, product.getOriginalCostPence());
+		record.putLong(RETAIL_PRICE_OFFSET, product.getRetailPricePence());
+		record.putInt(NEXT_FREE_OFFSET, NO_SLOT);
+		putString(record, BRAND_OFFSET, product.getBrand(), "Brand");
+		putString(record, COLOUR_OFFSET, product.getColour(), "Colour");
+
+		if(product instanceof Keyboard) {
+			Keyboard k = (Keyboard)product;
+			record.put(DEVICE_CLASS_OFFSET, KEYBOARD);
+			record.put(TYPE_OFFSET, (byte)k.getType().ordinal());
+			record.putInt(EXTRA_OFFSET, k.getLayout().ordinal());
+		}
+		else if(product instanceof Mouse) {
+			Mouse m = (Mouse)product;
+			record.put(DEVICE_CLASS_OFFSET, MOUSE);
+			record.put(TYPE_OFFSET, (byte)m.getType().ordinal());
+			record.putInt(EXTRA_OFFSET, m.getButtonCount());
+		}
+		else
+			throw new IllegalArgumentException("Product " + product.getBarcode() + " has an unknown device class");
+
+		return record;
+	}
+
+	/**
+	 * Returns the product held by the record at the given position of the buffer.
+	 */
+	private Product decode(ByteBuffer records, int record) throws IOException {
+		try {
+			int barcode = records.getInt(record + BARCODE_OFFSET);
+			int quantity = records.getInt(record + QUANTITY_OFFSET);
+			long originalCost = records.getLong(record + ORIGINAL_COST_OFFSET);
+			long retailPrice = records.getLong(record + RETAIL_PRICE_OFFSET);
+			String brand = getString(records, record + BRAND_OFFSET);
+			String colour = getString(records, record + COLOUR_OFFSET);
+			boolean isWired = records.get(record + WIRED_OFFSET) != 0;
+			int type = records.get(record + TYPE_OFFSET);
+			int extra = records.getInt(record + EXTRA_OFFSET);
+
+			byte deviceClass = records.get(record + DEVICE_CLASS_OFFSET);
+			if(deviceClass == KEYBOARD)
+				return new Keyboard(barcode, brand, colour, isWired, KeyboardType.values()[type],
+						KeyboardLayout.values()[extra], originalCost, retailPrice, quantity);
+			if(deviceClass == MOUSE)
+				return new Mouse(barcode, brand, colour, isWired, MouseType.values()[type],
+						extra, originalCost, retailPrice, quantity);
+			throw new IllegalArgumentException("Device class " + deviceClass + " is unknown");
+		}
+		catch(IllegalArgumentException | IndexOutOfBoundsException e) {
+			throw new IOException(storeFile + " holds an invalid record", e);
+		}
+	}
+
+	private static void putString(ByteBuffer record, int offset, String str, String name) {
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		if(bytes.length > MAX_STRING_BYTES)
+			throw new IllegalArgumentException(name + " " + str + " is too long for a fixed width record");
+
+		record.put(offset, (byte)bytes.length);
+		record.position(offset + 1);
+		record.put(bytes);
+	}
+
+	private static String getString(ByteBuffer records, int offset) {
+		int length = records.get(offset) & 0xFF;
+		return new String(records.array(), records.arrayOffset() + offset + 1, length, StandardCharsets.UTF_8);
+	}
+
+	//Methods for positional reads and writes.
+	private static long position(int slot) {
+		return HEADER_SIZE + (long)slot * RECORD_SIZE;
+	}
+
+	private void writeHeader() throws IOException {
+		ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+		header.putInt(MAGIC);
+		header.putShort(VERSION);
+		header.putShort((short)RECORD_SIZE);
+		header.putInt(SLOT_COUNT_OFFSET, slotCount);
+		header.putInt(FREE_HEAD_OFFSET, freeHead);
+		write(0, header);
+	}
+
+	private ByteBuffer read(long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException(storeFile + " is shorter than expected");
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	private int readInt(long position) throws IOException {
+		return read(position, 4).getInt(0);
+	}
+
+	private void write(long position, ByteBuffer buffer) throws IOException {
+		buffer.rewind();
+		while(buffer.hasRemaining())
+			channel.write(buffer, position + buffer.position());
+	}
+
+	private void writeInt(long position, int value) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(4);
+		buffer.putInt(0, value);
+		write(position, buffer);
+	}
+	//End methods for positional reads and writes.
+}
@@ -0,0 +1,982 @@
+/**
+ * A StorageEngine which keeps user accounts, stock, and records of system
+ * activity in text files, one record per line. Products may instead be kept
+ * in a FixedWidthProductStore, so that a single product can be changed
+ * without rewriting the stock file.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class FlatFileStorageEngine implements StorageEngine {
+	//Delay before dirty products held in the cache are written back to the stock file.
+	private static final long FLUSH_DELAY_MILLIS = 500;
+	//Number of journalled stock movements after which the journal is folded into the stock file.
+	private static final int COMPACTION_THRESHOLD = 1000;
+	//How often activity logs are written when they are not written as they are logged.
+	private static final long LOG_INTERVAL_MILLIS = 200;
+	//Stock files at least this many bytes long are read in parallel.
+	private static final long PARALLEL_LOAD_THRESHOLD = 16 * 1024 * 1024;
+	//Lookup tables for the enums named in the stock file.
+	private static final RecordReader.EnumTable<KeyboardType> KEYBOARD_TYPES =
+			new RecordReader.EnumTable<KeyboardType>(KeyboardType.class);
+	private static final RecordReader.EnumTable<KeyboardLayout> KEYBOARD_LAYOUTS =
+			new RecordReader.EnumTable<KeyboardLayout>(KeyboardLayout.class);
+	private static final RecordReader.EnumTable<MouseType> MOUSE_TYPES =
+			new RecordReader.EnumTable<MouseType>(MouseType.class);
+	
+	private final String stockFilePath;
+	private final String userAccountsPath;
+	private final StockJournal journal;
+	private final StockSnapshot snapshot;
+	//Null unless products are kept in a fixed width store instead of the stock file.
+	private final FixedWidthProductStore store;
+	private final ActivityLogWriter activityLogWriter;
+	private ArrayList<User> users;
+	
+	//Fields used when the engine is in cached mode.
+	private final boolean isCached;
+	//Replaced, never changed, by writers holding the lock, so readers need no lock.
+	private volatile InventorySnapshot cachedProducts;
+	private final HashSet<Integer> dirtyBarcodes;
+	private volatile long stockLastModified;
+	private volatile long stockLength;
+	private boolean isFlushScheduled;
+	//Version of the last snapshot made when not in cached mode.
+	private long uncachedVersion;
+	private ScheduledExecutorService flushExecutor;
+	
+	/**
+	 * Creates a FlatFileStorageEngine which reads from and writes to the files
+	 * given by the provided file paths.
+	 * @param stockFilePath File path of the stock file.
+	 * @param userAccountsPath File path of the user accounts file.
+	 * @param activityLogPath File path of the activity log file.
+	 * @throws IOException Thrown if an IOException occurs when reading
+	 * the files located at the given file paths. 
+	 */
+	public FlatFileStorageEngine(String stockFilePath, String userAccountsPath,
+			String activityLogPath) throws IOException {
+		this(stockFilePath, userAccountsPath, activityLogPath, false);
+	}
+	
+	/**
+	 * Creates a FlatFileStorageEngine which reads from and writes to the files
+	 * given by the provided file paths. In cached mode the stock file is
+	 * read once and the loaded Inventory becomes the source of truth; changes
+	 * are written back in the background or when flush is called, and the
+	 * stock file is only read again if it is changed on disk.
+	 * @param stockFilePath File path of the stock file.
+	 * @param userAccountsPath File path of the user accounts file.
+	 * @param activityLogPath File path of the activity log file.
+	 * @param isCached If true, the stock file is held in memory.
+	 * @throws IOException Thrown if an IOException occurs when reading
+	 * the files located at the given file paths. 
+	 */
+	public FlatFileStorageEngine(String stockFilePath, String userAccountsPath,
+			String activityLogPath, boolean isCached) throws IOException {
+		this(stockFilePath, userAccountsPath, activityLogPath, isCached,
+				DurabilityPolicy.EVERY_RECORD);
+	}
+	
+	/**
+	 * Creates a FlatFileStorageEngine which reads from and writes to the files
+	 * given by the provided file paths, with the given policy for
+	 * forcing activity logs to disk.
+	 * @param stockFilePath File path of the stock file.
+	 * @param userAccountsPath File path of the user accounts file.
+	 * @param activityLogPath File path of the activity log file.
+	 * @param isCached If true, the stock file is held in memory.
+	 * @param logDurability When written activity logs are forced to disk.
+	 * @throws IOException Thrown if an IOException occurs when reading
+	 * the files located at the given file paths. 
+	 */
+	public FlatFileStorageEngine(String stockFilePath, String userAccountsPath,
+			String activityLogPath, boolean isCached,
+			DurabilityPolicy logDurability) throws IOException {
+		this(stockFilePath, userAccountsPath, activityLogPath, isCached,
+				logDurability, null);
+	}
+	
+	/**
+	 * Creates a FlatFileStorageEngine which keeps its products in the given fixed width
+	 * store rather than the stock file, so that a change to a product's
+	 * quantity is written in place. If the store is empty, it is filled with
+	 * the products in the stock file.
+	 * @param stockFilePath File path of the stock file.
+	 * @param userAccountsPath File path of the user accounts file.
+	 * @param activityLogPath File path of the activity log file.
+	 * @param store The store in which products are kept.
+	 * @throws IOException Thrown if an IOException occurs when reading
+	 * the files located at the given file paths. 
+	 */
+	public FlatFileStorageEngine(String stockFilePath, String userAccountsPath,
+			String activityLogPath, FixedWidthProductStore store) throws IOException {
+		this(stockFilePath, userAccountsPath, activityLogPath, false,
+				DurabilityPolicy.EVERY_RECORD, store);
+		
+		if(store == null)
+			throw new IllegalArgumentException("Store is null");
+		if(store.size() == 0 && new File(stockFilePath).exists()) {
+			Inventory products = readProducts();
+			for(int i = 0; i < products.size(); i++)
+				store.add(products.get(i));
+			store.force();
+		}
+	}
+	
+	private FlatFileStorageEngine(String stockFilePath, String userAccountsPath,
+			String activityLogPath, boolean isCached,
+			DurabilityPolicy logDurability, FixedWidthProductStore store) throws IOException {
+		
+		if(stockFilePath == null || userAccountsPath == null ||
+				activityLogPath == null)
+			throw new IllegalArgumentException("File path(s) is null");
+		
+		this.stockFilePath = stockFilePath;
+		this.store = store;
+		this.userAccountsPath = userAccountsPath;
+		this.journal = new StockJournal(stockFilePath + ".journal");
+		this.snapshot = new StockSnapshot(stockFilePath + ".snapshot");
+		this.activityLogWriter = new ActivityLogWriter(activityLogPath, logDurability,
+				LOG_INTERVAL_MILLIS);
+		
+		recoverStockFiles();
+		this.users = readUsers();
+		
+		this.isCached = isCached;
+		this.dirtyBarcodes = new HashSet<Integer>();
+		if(isCached) {
+			loadCache();
+			
+			this.flushExecutor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "Database flush");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+	}
+	
+	//Methods for handling the Stock file.
+	/**
+	 * Returns an Inventory object containing
+	 * the products read from the stock file. In cached mode the returned
+	 * Inventory is a copy of the current snapshot, so modifying it does not
+	 * affect the engine until it is passed to writeProducts.
+	 * @return the products reads from the stock file.
+	 * @throws IOException Thrown if there is a problem reading the stock file.
+	 */
+	public Inventory getProducts() throws IOException {
+		if(store != null)
+			return store.readAll();
+		if(!isCached)
+			return readProducts();
+		
+		return currentSnapshot().toInventory();
+	}
+	
+	/**
+	 * Returns a snapshot of the products in stock. In cached mode this is
+	 * the snapshot published by the last change, which is returned without
+	 * waiting for a checkout in progress. Otherwise the stock is read and
+	 * every snapshot has a new version.
+	 * @return A snapshot of the products in stock.
+	 * @throws IOException Thrown if there is a problem reading the stock file.
+	 */
+	public InventorySnapshot getSnapshot() throws IOException {
+		if(isCached)
+			return currentSnapshot();
+		
+		Inventory products = getProducts();
+		synchronized(this) {
+			return new InventorySnapshot(products, ++uncachedVersion);
+		}
+	}
+	
+	/**
+	 * Returns the cached snapshot, only taking the lock if the stock file
+	 * has changed on disk and may need to be reloaded.
+	 * @throws IOException Thrown if there is a problem reading the stock file.
+	 */
+	private InventorySnapshot currentSnapshot() throws IOException {
+		if(isStockFileChanged()) {
+			synchronized(this) {
+				reloadIfChanged();
+			}
+		}
+		return cachedProducts;
+	}
+	
+	/**
+	 * Returns the product with the given bar code. With a fixed width store,
+	 * only the index pages leading to the product and its record are read.
+	 * The returned product is a copy, so modifying it does not affect the engine.
+	 * @param barcode The bar code of the product.
+	 * @return The product with the given bar code, or null if there is none.
+	 * @throws IOException Thrown if there is a problem reading the stock files.
+	 */
+	public Product getProduct(int barcode) throws IOException {
+		if(store != null)
+			return store.get(barcode);
+		if(!isCached)
+			return readProducts().getByBarcode(barcode);
+		
+		return currentSnapshot().getByBarcode(barcode);
+	}
+	
+	/**
+	 * Adds the given product to the stock, unless a product with the same
+	 * bar code already exists. With a fixed width store, only the new record
+	 * and the index pages it changes are written.
+	 * @param product The product to add.
+	 * @return true if the product was added. Returns false if its bar code is already in use.
+	 * @throws IOException Thrown if there is a problem reading or writing the stock files.
+	 */
+	public synchronized boolean addProduct(Product product) throws IOException {
+		if(product == null)
+			throw new IllegalArgumentException("Product is null");
+		
+		if(store != null) {
+			if(!store.add(product))
+				return false;
+			store.force();
+			return true;
+		}
+		if(!isCached) {
+			Inventory products = readProducts();
+			if(!products.add(product))
+				return false;
+			writeStockFile(products);
+			return true;
+		}
+		
+		reloadIfChanged();
+		if(cachedProducts.getByBarcode(product.getBarcode()) != null)
+			return false;
+		cachedProducts = cachedProducts.withProduct(product);
+		dirtyBarcodes.add(product.getBarcode());
+		scheduleFlush();
+		return true;
+	}
+	
+	/**
+	 * Sets the quantity in stock of the product with the given bar code.
+	 * @param barcode The bar code of the product whose quantity is set.
+	 * @param quantity The new quantity in stock.
+	 * @throws IOException Thrown if there is a problem reading or writing the stock files.
+	 */
+	public synchronized void updateQuantity(int barcode, int quantity) throws IOException {
+		if(quantity < 0)
+			throw new IllegalArgumentException("Quantity is negative");
+		
+		if(store != null) {
+			store.updateQuantity(barcode, quantity);
+			return;
+		}
+		
+		Product product = getProduct(barcode);
+		if(product == null)
+			throw new IllegalArgumentException("No product has the barcode " + barcode);
+		if(product.getQuantity() != quantity)
+			adjustQuantity(barcode, quantity - product.getQuantity(), "updated");
+	}
+	
+	/**
+	 * Returns true if this engine holds its products in memory.
+	 * @return true if this engine is in cached mode.
+	 */
+	public boolean isCached() {
+		return this.isCached;
+	}
+	
+	/**
+	 * Writes any changes held in the cache to the stock file. Does nothing
+	 * if the engine is not in cached mode or if there are no changes.
+	 * @throws IOException Thrown if the stock file cannot be written to.
+	 */
+	public synchronized void flush() throws IOException {
+		if(store != null)
+			store.force();
+		if(!isCached || (dirtyBarcodes.isEmpty() && !isCompactionDue()))
+			return;
+		
+		writeStockFile(cachedProducts.toInventory());
+		dirtyBarcodes.clear();
+		recordStockFileState();
+	}
+	
+	/**
+	 * Writes any changes held in the cache to the stock file, writes any
+	 * pending activity logs and stops the background writers. The engine
+	 * should not be used after it is closed.
+	 * @throws IOException Thrown if the stock file or ActivityLog file cannot be written to.
+	 */
+	public void close() throws IOException {
+		flush();
+		if(store != null)
+			store.close();
+		journal.close();
+		activityLogWriter.close();
+		if(flushExecutor != null)
+			flushExecutor.shutdown();
+	}
+	
+	/**
+	 * Changes the quantity in stock of the product with the given bar code
+	 * by appending a StockMovement to the stock journal, rather than rewriting
+	 * the stock file. The journal is folded back into the stock file once it
+	 * grows past a threshold. If products are kept in a fixed width store,
+	 * the quantity is written in place instead.
+	 * @param barcode The bar code of the product whose quantity is changed.
+	 * @param delta The amount to add to the quantity. Negative to remove stock.
+	 * @param reason A description of why the quantity changed, e.g. "purchased".
+	 * @throws IOException Thrown if the stock files cannot be read or written.
+	 */
+	public synchronized void adjustQuantity(int barcode, int delta, String reason) throws IOException {
+		StockMovement movement = new StockMovement(barcode, delta, reason);
+		Product product;
+		
+		if(store != null) {
+			//The fixed width store changes the quantity in place, so it needs no journal.
+			product = store.get(barcode);
+			if(product == null)
+				throw new IllegalArgumentException("No product has the barcode " + barcode);
+			if(product.getQuantity() + delta < 0)
+				throw new IllegalArgumentException("Not enough of product " + barcode + " is in stock");
+			
+			store.updateQuantity(barcode, product.getQuantity() + delta);
+			return;
+		}
+		
+		if(isCached) {
+			reloadIfChanged();
+			product = cachedProducts.getByBarcode(barcode);
+		}
+		else
+			product = readProducts().getByBarcode(barcode);
+		
+		if(product == null)
+			throw new IllegalArgumentException("No product has the barcode " + barcode);
+		if(product.getQuantity() + delta < 0)
+			throw new IllegalArgumentException("Not enough of product " + barcode + " is in stock");
+		
+		journal.append(movement);
+		if(isCached)
+			cachedProducts = cachedProducts.withQuantity(barcode, product.getQuantity() + delta);
+		
+		if(isCompactionDue()) {
+			if(isCached)
+				scheduleFlush();
+			else
+				writeStockFile(readProducts());
+		}
+	}
+	
+	/**
+	 * Checks out the given Customer's basket as a single transaction. Every
+	 * BasketEntry is checked against the stock, then an ActivityLog is
+	 * written to disk for each and the quantities of all of them are
+	 * decreased in one batch of the stock journal. If any BasketEntry cannot
+	 * be fulfilled, no changes are made.
+	 * @param customer The Customer whose basket is being checked out.
+	 * @param paymentType The payment type used for the checkout, e.g. "PayPal".
+	 * @throws IOException Thrown if the stock files or ActivityLog file cannot
+	 * be read or written.
+	 */
+	public synchronized void checkout(Customer customer, String paymentType) throws IOException {
+		if(customer == null)
+			throw new IllegalArgumentException("customer is null");
+		
+		Inventory products = null;
+		if(store == null) {
+			if(isCached)
+				reloadIfChanged();
+			else
+				products = readProducts();
+		}
+		
+		//Check every entry before anything is changed.
+		ArrayList<Product> purchased = new ArrayList<Product>();
+		ArrayList<StockMovement> movements = new ArrayList<StockMovement>();
+		for(int i = 0; i < customer.basketSize(); i++) {
+			BasketEntry entry = customer.getFromBasket(i);
+			int barcode = entry.getProduct().getBarcode();
+			Product product;
+			if(store != null)
+				product = store.get(barcode);
+			else
+				product = isCached ? cachedProducts.getByBarcode(barcode) : products.getByBarcode(barcode);
+			
+			if(product == null)
+				throw new IllegalArgumentException("No product has the barcode " + barcode);
+			if(product.getQuantity() < entry.getQuantity())
+				throw new IllegalArgumentException("Not enough of product " + barcode + " is in stock");
+			
+			purchased.add(product);
+			movements.add(new StockMovement(barcode, -entry.getQuantity(), "purchased"));
+		}
+		
+		int[] barcodes = new int[purchased.size()];
+		int[] quantities = new int[purchased.size()];
+		for(int i = 0; i < purchased.size(); i++) {
+			barcodes[i] = purchased.get(i).getBarcode();
+			quantities[i] = purchased.get(i).getQuantity() - customer.getFromBasket(i).getQuantity();
+		}
+		
+		/* The purchases are logged before the stock is changed, so a sale
+		 * is never made without its logs. If the stock then cannot be
+		 * changed, the logs record a sale which the caller is told failed.
+		 */
+		ArrayList<ActivityLog> logs = new ArrayList<ActivityLog>();
+		for(int i = 0; i < purchased.size(); i++) {
+			Product product = purchased.get(i);
+			int quantity = customer.getFromBasket(i).getQuantity();
+			
+			product.setQuantity(product.getQuantity() - quantity);
+			logs.add(new ActivityLog(customer, product, quantity, "purchased", paymentType));
+		}
+		activityLogWriter.writeNow(logs);
+		
+		if(store != null) {
+			//The store changes every quantity in place, all at once.
+			store.updateQuantities(barcodes, quantities);
+		}
+		else {
+			//The journal batch commits the whole checkout at once.
+			journal.append(movements);
+			if(isCached)
+				cachedProducts = cachedProducts.withQuantities(barcodes, quantities);
+		}
+		
+		if(store == null && isCompactionDue()) {
+			if(isCached)
+				scheduleFlush();
+			else
+				writeStockFile(readProducts());
+		}
+	}
+	
+	/**
+	 * Returns true if the stock journal should be folded into the stock file.
+	 * @return true if the stock journal has grown past the compaction threshold.
+	 */
+	private boolean isCompactionDue() {
+		return journal.recordCount() >= COMPACTION_THRESHOLD;
+	}
+	
+	/**
+	 * Finishes or rolls back a write of the stock file which was interrupted,
+	 * e.g. by a crash, so that the stock file and journal are consistent.
+	 * @throws IOException Thrown if the stock files cannot be moved or deleted.
+	 */
+	private void recoverStockFiles() throws IOException {
+		File tempFile = new File(stockFilePath + ".tmp");
+		
+		if(tempFile.exists()) {
+			//The new stock file was never moved into place, so the old journal still applies.
+			Files.delete(tempFile.toPath());
+			journal.restoreRetired();
+		}
+		else {
+			//The new stock file includes any retired journal.
+			journal.discardRetired();
+		}
+	}
+	
+	/**
+	 * Reads the stock file into the cache and records the file's
+	 * modification time and size.
+	 * @throws IOException Thrown if there is a problem reading the stock file.
+	 */
+	private void loadCache() throws IOException {
+		long version = cachedProducts == null ? 0 : cachedProducts.version() + 1;
+		cachedProducts = new InventorySnapshot(readProducts(), version);
+		dirtyBarcodes.clear();
+		recordStockFileState();
+	}
+	
+	/**
+	 * Reloads the cache if the stock file's modification time or size
+	 * has changed since it was last read or written by this engine.
+	 * If the cache holds unwritten changes, the cache is kept and the
+	 * file will be overwritten by the next flush.
+	 * @throws IOException Thrown if there is a problem reading the stock file.
+	 */
+	private void reloadIfChanged() throws IOException {
+		if(isStockFileChanged()) {
+			if(dirtyBarcodes.isEmpty())
+				loadCache();
+			else
+				System.err.println("Stock file was changed on disk while unwritten changes were held.");
+		}
+	}
+	
+	/**
+	 * Returns true if the stock file's modification time or size differs
+	 * from when it was last read or written by this engine.
+	 */
+	private boolean isStockFileChanged() {
+		File stockFile = new File(stockFilePath);
+		return stockFile.lastModified() != stockLastModified || stockFile.length() != stockLength;
+	}
+	
+	/**
+	 * Records the current modification time and size of the stock file.
+	 */
+	private void recordStockFileState() {
+		File stockFile = new File(stockFilePath);
+		stockLastModified = stockFile.lastModified();
+		stockLength = stockFile.length();
+	}
+	
+	/**
+	 * Schedules the cache to be written to the stock file by the background
+	 * writer, unless such a write has already been scheduled.
+	 */
+	private void scheduleFlush() {
+		if(isFlushScheduled)
+			return;
+		
+		isFlushScheduled = true;
+		flushExecutor.schedule(new Runnable() {
+			public void run() {
+				synchronized(FlatFileStorageEngine.this) {
+					isFlushScheduled = false;
+					try {
+						flush();
+					} catch(IOException e) {
+						System.err.println("Stock could not be written.\n" + e.getMessage());
+					}
+				}
+			}
+		}, FLUSH_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Reads the stock file, interprets its contents as Product objects,
+	 * and stores these Product objects in an Inventory object which it
+	 * returns. Movements recorded in the stock journal are applied to the
+	 * products before they are returned. The products are loaded from the
+	 * stock snapshot if it is up to date. Otherwise the stock file is parsed
+	 * and a new snapshot is written for the next load.
+	 * @return An Inventory object containing Products read from the stock file. 
+	 * @throws IOException Thrown if there is a problem reading the
+	 * stock file.
+	 */
+	private Inventory readProducts() throws IOException{
+		File stockFile = new File(stockFilePath);
+		Inventory products = snapshot.read(stockFile);
+		
+		if(products == null) {
+			products = readStockFile();
+			try {
+				snapshot.write(products, stockFile);
+			}
+			catch(IOException e) {
+				System.err.println("Stock snapshot could not be written.\n" + e.getMessage());
+			}
+		}
+		
+		journal.replay(products);
+		return products;
+	}
+	
+	/**
+	 * Parses the products in the stock file. Large stock files are read in
+	 * parallel by a ParallelStockLoader.
+	 * @return An Inventory object containing Products read from the stock file.
+	 * @throws IOException Thrown if there is a problem reading the
+	 * stock file.
+	 */
+	private Inventory readStockFile() throws IOException {
+		if(new File(stockFilePath).length() >= PARALLEL_LOAD_THRESHOLD)
+			return new ParallelStockLoader().load(stockFilePath);
+		
+		try(RecordReader reader = 
+				new RecordReader(new FileInputStream(this.stockFilePath))){
+			
+			Inventory products = new Inventory();
+			
+			//Keeps processing lines from the file until no lines are left.
+			while(reader.next()) {
+				//If a line cannot be parsed, it should be skipped and the process should continue.
+				try {
+					products.add(productFromRecord(reader));
+				}
+				catch(IllegalArgumentException | NullPointerException e) {
+					System.err.println("Line: " + reader.line() + " could not be parsed as a product.\n"
+							+ e.getMessage());
+				}
+			}
+			
+			return products;
+		}
+	}
+	
+	/**
+	 * Writes the contents of the given Inventory object to
+	 * the stock file, overwriting its existing contents. The 
+	 * file will be written to in a way that makes it readable by
+	 * a FlatFileStorageEngine. In cached mode, only the products which differ from
+	 * the cache are updated and marked dirty, and the stock file is written
+	 * by the background writer. With a fixed width store, only the records
+	 * of those products are written.
+	 * @throws IOException Thrown if the stock file cannot be written to.
+	 */
+	public synchronized void writeProducts(Inventory products) throws IOException{
+		if(store != null) {
+			mergeIntoStore(products);
+			return;
+		}
+		if(!isCached) {
+			writeStockFile(products);
+			return;
+		}
+		
+		mergeIntoCache(products);
+		if(!dirtyBarcodes.isEmpty())
+			scheduleFlush();
+	}
+	
+	/**
+	 * Updates the fixed width store so that it holds the same products as
+	 * the given Inventory. Only added, removed, or changed products are
+	 * written; a product whose quantity alone changed has only its quantity
+	 * written, and any other change rewrites its whole record.
+	 * @param products The products which should be held by the store.
+	 * @throws IOException Thrown if the store cannot be written to.
+	 */
+	private void mergeIntoStore(Inventory products) throws IOException {
+		Inventory stored = store.readAll();
+		
+		for(int i = 0; i < products.size(); i++) {
+			Product p = products.get(i);
+			Product current = stored.getByBarcode(p.getBarcode());
+			
+			if(current == null)
+				store.add(p);
+			else if(!current.isSameApartFromQuantity(p))
+				store.replace(p);
+			else if(current.getQuantity() != p.getQuantity())
+				store.updateQuantity(p.getBarcode(), p.getQuantity());
+		}
+		
+		for(int i = 0; i < stored.size(); i++) {
+			int barcode = stored.get(i).getBarcode();
+			if(products.getByBarcode(barcode) == null)
+				store.remove(barcode);
+		}
+		store.force();
+	}
+	
+	/**
+	 * Updates the cache so that it holds the same products as the given
+	 * Inventory, marking every added, removed, or changed product as dirty.
+	 * A product whose quantity alone changed keeps its place and has its
+	 * quantity set; any other change replaces the cached product with a copy
+	 * of the given one. The changes are made to a copy, which is then
+	 * published as the next snapshot.
+	 * @param products The products which should be held by the cache.
+	 */
+	private void mergeIntoCache(Inventory products) {
+		Inventory merged = new Inventory();
+		
+		//Cached products keep their order, and those missing from the given Inventory are removed.
+		for(int i = 0; i < cachedProducts.size(); i++) {
+			Product cached = cachedProducts.get(i);
+			Product p = products.getByBarcode(cached.getBarcode());
+			
+			if(p == null)
+				dirtyBarcodes.add(cached.getBarcode());
+			else if(cached.isSameApartFromQuantity(p)) {
+				if(cached.getQuantity() != p.getQuantity()) {
+					cached.setQuantity(p.getQuantity());
+					dirtyBarcodes.add(cached.getBarcode());
+				}
+				merged.add(cached);
+			}
+			else {
+				merged.add(p.copy());
+				dirtyBarcodes.add(cached.getBarcode());
+			}
+		}
+		
+		for(int i = 0; i < products.size(); i++) {
+			Product p = products.get(i);
+			if(merged.getByBarcode(p.getBarcode()) == null && merged.add(p.copy()))
+				dirtyBarcodes.add(p.getBarcode());
+		}
+		
+		cachedProducts = new InventorySnapshot(merged, cachedProducts.version() + 1);
+	}
+	
+	/**
+	 * Writes the given Inventory to the stock file, overwriting its contents.
+	 * The Inventory must already include every movement in the stock journal,
+	 * which is discarded once the stock file has been replaced.
+	 * @param products The products to write.
+	 * @throws IOException Thrown if the stock file cannot be written to.
+	 */
+	private void writeStockFile(Inventory products) throws IOException {
+		File tempFile = new File(stockFilePath + ".tmp");
+		
+		try(BufferedWriter br = new BufferedWriter(new FileWriter(tempFile))){
+			
+			for(int i = 0; i < products.size(); i++) {
+				br.write(stringFromProduct(products.get(i)));
+			}
+		}
+		
+		//The old snapshot is deleted first, so it can never be mistaken for a copy of the new stock file.
+		snapshot.delete();
+		journal.retire();
+		Files.move(tempFile.toPath(), Paths.get(stockFilePath),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		journal.discardRetired();
+		
+		try {
+			snapshot.write(products, new File(stockFilePath));
+		}
+		catch(IOException e) {
+			System.err.println("Stock snapshot could not be written.\n" + e.getMessage());
+		}
+	}
+	
+	/**
+	 * Returns a Product instance as specified by the current line of
+	 * the given reader. The line must be in database format. Used by
+	 * ParallelStockLoader as well as readProducts.
+	 * @param reader The reader whose current line describes a Product.
+	 * @return The Product parsed from the line.
+	 */
+	static Product productFromRecord(RecordReader reader) {
+		final int BARCODE = 0;
+		final int DEVICECLASS = 1;
+		final int DEVICETYPE = 2;
+		final int BRAND = 3;
+		final int COLOUR = 4;
+		final int CONNECTIVITY = 5;
+		final int QUANTITY = 6;
+		final int ORIGINALCOST = 7;
+		final int RETAILPRICE = 8;
+		final int ADDITIONALINFO = 9;
+		
+		try {
+			if (reader.fieldCount() != 10)
+				throw new IllegalArgumentException("The given string, " + reader.line() + 
+						" is in an invalid format");
+			
+			Product parsedProduct;
+			
+			//First, parse all data that isn't tied to a particular device class.
+			int barcode = reader.parseInt(BARCODE);
+			String brand = reader.field(BRAND);
+			String colour = reader.field(COLOUR);
+			
+			boolean isWired;
+			if(reader.fieldEquals(CONNECTIVITY, "wired"))
+				isWired = true;
+			else if(reader.fieldEquals(CONNECTIVITY, "wireless"))
+				isWired = false;
+			else
+				throw new IllegalArgumentException(reader.field(CONNECTIVITY) +
+						" cannot be parsed as a boolean");
+			
+			int quantity = reader.parseInt(QUANTITY);
+			long originalCost = reader.parsePence(ORIGINALCOST);
+			long retailPrice = reader.parsePence(RETAILPRICE);
+			
+			//Now parse device class specific data and create the Product.
+			if(reader.fieldEquals(DEVICECLASS, "keyboard")) {
+				KeyboardType type = reader.parseEnum(DEVICETYPE, KEYBOARD_TYPES);
+				KeyboardLayout layout = reader.parseEnum(ADDITIONALINFO, KEYBOARD_LAYOUTS);
+				
+				parsedProduct = new Keyboard(barcode, brand, colour, isWired,
+						type, layout, originalCost, retailPrice, quantity);
+			}
+			else if(reader.fieldEquals(DEVICECLASS, "mouse")) {
+				MouseType type = reader.parseEnum(DEVICETYPE, MOUSE_TYPES);
+				int buttonCount = reader.parseInt(ADDITIONALINFO);
+				
+				parsedProduct = new Mouse(barcode, brand, colour, isWired,
+						type, buttonCount, originalCost, retailPrice, quantity);
+			}
+			else
+				throw new IllegalArgumentException("Device class cannot be parsed");
+			
+			return parsedProduct;
+		}
+		catch(NumberFormatException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+	
+	/**
+	 * Returns a correctly formatted String representation of the 
+	 * given product. This String can be written to a stock file
+	 * and then read by readProducts.
+	 * @param product The product from which to create a string.
+	 * @return A properly formatted String representation
+	 * of the given product.
+	 */
+	private final String stringFromProduct(Product product) {
+		String productStr;
+		
+		if(product == null)
+			throw new IllegalArgumentException("Product argument is null");
+		
+		productStr = Integer.toString(product.getBarcode()) + ", ";
+		
+		if(product instanceof Keyboard) {
+			productStr += "keyboard, " +
+				((Keyboard)product).getType().toString().toLowerCase() +
+				", ";
+		}
+		else if(product instanceof Mouse) {
+			productStr += "mouse, " +
+				((Mouse)product).getType().toString().toLowerCase() +
+				", ";
+		}
+		
+		productStr += product.getBrand() + ", " + 
+				product.getColour() + ", ";
+		
+		productStr += product.isWired() ? "wired, " : "wireless, ";
+		productStr += product.getQuantity() + ", " +
+				Money.format(product.getOriginalCostPence()) + ", " +
+				Money.format(product.getRetailPricePence()) + ", ";
+		
+		if(product instanceof Keyboard) {
+			productStr += ((Keyboard)product).getLayout().toString();
+		}
+		
+		else if(product instanceof Mouse) {
+			productStr += ((Mouse)product).getButtonCount();
+		}
+		
+		productStr += "\n";
+		
+		return productStr;
+	}
+
+	//Methods for handling the UserAccounts file.
+	/**
+	 * Returns a reference to an ArrayList object containing Users
+	 * read from the UserAccounts file. Modifying the returned
+	 * ArrayList will affect the database's internal ArrayList.
+	 * @return An ArrayList object containing Users read from the
+	 * UserAccounts file.
+	 */
+	public ArrayList<User> getUsers() {
+		return this.users;
+	}
+	
+	/**
+	 * Returns the User with the given id.
+	 * @param id The id of the User.
+	 * @return The User with the given id, or null if there is none.
+	 */
+	public User getUser(int id) {
+		for(User u : users) {
+			if(u.getId() == id)
+				return u;
+		}
+		
+		return null;
+	}
+	
+	/**
+	 * Interprets the UserAccounts file as a series of User objects and
+	 * stores these User objects in an ArrayList which becomes the value
+	 * of the users attribute.
+	 * @throws IOException Thrown if the UserAccounts file cannot be read.
+	 */
+	private final ArrayList<User> readUsers() throws IOException {
+		ArrayList<User> users = new ArrayList<User>();
+		
+		try(RecordReader reader = 
+				new RecordReader(new FileInputStream(userAccountsPath))) {
+			
+			//Keep reading the file until no lines remain.
+			while(reader.next()) {
+				users.add(userFromRecord(reader));
+			}
+			
+			return users;
+		}
+		
+	}
+	
+	/**
+	 * Given a correctly formatted line, parses the line to create
+	 * a User object.
+	 * @param reader The reader whose current line describes the User.
+	 * @return The User object as specified by the line.
+	 */
+	private final User userFromRecord(RecordReader reader) {
+		final int ID = 0;
+		final int USERNAME = 1;
+		final int SURNAME = 2;
+		final int HOUSENO = 3;
+		final int POSTCODE = 4;
+		final int CITY = 5;
+		final int ROLE = 6;
+		
+		User parsedUser;
+		
+		if(reader.fieldCount() != 7)
+			throw new IllegalArgumentException("String is not formatted properly");
+		
+		int id = reader.parseInt(ID);
+		String username = reader.field(USERNAME);
+		String surname = reader.field(SURNAME);
+		int houseno = reader.parseInt(HOUSENO);
+		String postcode = reader.field(POSTCODE);
+		String city = reader.field(CITY);
+		
+		if(reader.fieldEquals(ROLE, "admin")){
+			parsedUser = new Admin(id, username, surname, houseno, city, postcode);
+		}
+		else if(reader.fieldEquals(ROLE, "customer")) {
+			parsedUser = new Customer(id, username, surname, houseno, city, postcode);
+		}
+		else {
+			throw new IllegalArgumentException("Invalid role");
+		}
+		
+		return parsedUser;
+	}
+
+	//Methods for handling the ActivityLog file
+	/**
+	 * Writes the given ActivityLog to the ActivityLog file.
+	 * @param log The ActivityLog to be written to the ActivityLog file.
+	 * @throws IOException Thrown if the ActivityLog file cannot be written to.
+	 */
+	public void writeActivityLog(ActivityLog log) throws IOException {
+		ArrayList<ActivityLog> logs = new ArrayList<ActivityLog>();
+		logs.add(log);
+		activityLogWriter.write(logs);
+	}
+	
+	/**
+	 * Writes the given ActivityLogs to the ActivityLog file in one write.
+	 * @param logs The ActivityLogs to be written to the ActivityLog file.
+	 * @throws IOException Thrown if the ActivityLog file cannot be written to.
+	 */
+	public void writeActivityLogs(List<ActivityLog> logs) throws IOException {
+		activityLogWriter.write(logs);
+	}
+}
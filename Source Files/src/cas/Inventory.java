@@ -4,38 +4,53 @@
  */
 package cas;
 import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
 
 public class Inventory {
 	private ArrayList<Product> products;
+	//Maps the barcode of each product to its index in products.
+	private BarcodeIndex barcodeIndex;
+	//Changes whenever products are removed or reordered, invalidating InventoryViews.
+	private int version;
+	//Bitmaps of the products' categorical attributes. Built when first needed.
+	private FacetIndex facets;
 	
 	/**
 	 * Creates an empty inventory.
 	 */
 	public Inventory() {
 		products = new ArrayList<Product>();
+		barcodeIndex = new BarcodeIndex();
 	}
 	
 	/**
-	 * Returns the product at the given index.
-	 * @param index The position of the product within the sequence.
-	 * @return The product at the given index.
+	 * Returns a copy of this inventory. The copy holds copies of this
+	 * inventory's products, so changes to it do not affect this inventory.
+	 * @return A copy of this inventory.
 	 */
-	public Product get(int index) {
-		if(index < 0 || index >= size())
-			throw new IndexOutOfBoundsException(index + "is out of bounds.");
+	public Inventory copy() {
+		Inventory copy = new Inventory();
+		copy.products.ensureCapacity(size());
 		
-		return this.products.get(index);
+		//Barcodes are already unique, so there is no need to check each product.
+		for(int i = 0; i < size(); i++)
+			copy.products.add(get(i).copy());
+		copy.barcodeIndex = barcodeIndex.copy();
+		
+		return copy;
 	}
 	
 	/**
-	 * Replaces the product at the given index with the given product.
+	 * Returns the product at the given index.
 	 * @param index The position of the product within the sequence.
-	 * @param product The new product.
+	 * @return The product at the given index.
 	 */
-	private void set(int index, Product product) {
+	public Product get(int index) {
 		if(index < 0 || index >= size())
 			throw new IndexOutOfBoundsException(index + "is out of bounds.");
-		this.products.set(index, product);
+		
+		return this.products.get(index);
 	}
 	
 	/**
@@ -49,6 +64,9 @@ public class Inventory {
 			throw new IllegalArgumentException("null is not a valid Product");
 		if(getByBarcode(product.getBarcode()) == null) {
 			this.products.add(product);
+			this.barcodeIndex.put(product.getBarcode(), size() - 1);
+			if(this.facets != null)
+				this.facets.add(product, size() - 1);
 			isAdded = true;
 		}
 		
@@ -70,37 +88,132 @@ public class Inventory {
 	public final void remove(int index) {
 		if(index < 0 || index >= size())
 			throw new IndexOutOfBoundsException(index + "is out of bounds.");
-		this.products.remove(index);
+		Product removed = this.products.remove(index);
+		this.version++;
+		this.facets = null;
+		this.barcodeIndex.remove(removed.getBarcode());
+		
+		//Every product after the removed one has moved back one place.
+		for(int i = index; i < size(); i++)
+			this.barcodeIndex.put(get(i).getBarcode(), i);
 	}
+	
 	/**
-	 * Filters the Inventory such that it contains only products of a given
-	 * brand and keyboard layout.
-	 * @param productBrand The brand of products to keep in the Inventory.
-	 * @param onlyUKLayout If true, then any Keyboards in the filtered
-	 * Inventory will have a UK layout. This parameter does not affect other Product
+	 * Applies the change described by the given event to this Inventory,
+	 * so that a copy of the stock can be kept up to date without reading
+	 * every product again. Changes to products which are not in this
+	 * Inventory, or additions of products which already are, are ignored.
+	 * @param event The change to apply.
+	 */
+	public void apply(InventoryEvent event) {
+		int index = barcodeIndex.get(event.getBarcode());
+		
+		if(event.getType() == InventoryEvent.Type.ADDED)
+			add(event.getProduct());
+		else if(event.getType() == InventoryEvent.Type.REMOVED) {
+			if(index != -1)
+				remove(index);
+		}
+		else if(index != -1)
+			get(index).setQuantity(event.getNewQuantity());
+	}
+	/**
+	 * Returns a view of the products in the Inventory which are of a given
+	 * brand and keyboard layout. The Inventory itself is unchanged.
+	 * @param productBrand The brand of products to include in the view, ignoring
+	 * case. If empty, products of every brand are included.
+	 * @param onlyUKLayout If true, then any Keyboards in the view
+	 * will have a UK layout. This parameter does not affect other Product
 	 * subclasses.
+	 * @return A view of the matching products.
 	 */
-	
-	public void filter(String productBrand, boolean onlyUKLayout) {
-		if(productBrand == null) {
+	public InventoryView filter(String productBrand, boolean onlyUKLayout) {
+		if(productBrand == null)
 			throw new IllegalArgumentException("Product brand is invalid.");
-		} else {
-			ArrayList<Product> filteredProducts = new ArrayList<Product>();
-			
+		
+		ProductQuery query = ProductQuery.all();
+		if(productBrand.length() > 0)
+			query = query.and(ProductQuery.brand(productBrand));
+		if(onlyUKLayout)
+			query = query.and(ProductQuery.deviceClass(Keyboard.class).negate()
+					.or(ProductQuery.layout(KeyboardLayout.UK)));
+		
+		return filter(query);
+	}
+	
+	/**
+	 * Returns a view of the products in the Inventory which match the given
+	 * query, in the order they appear in the Inventory. The Inventory itself
+	 * is unchanged. Conditions on categorical attributes are answered from the
+	 * Inventory's FacetIndex, so only the remaining products are tested.
+	 * @param query The query which products must match.
+	 * @return A view of the matching products.
+	 */
+	public InventoryView filter(ProductQuery query) {
+		if(query == null)
+			throw new IllegalArgumentException("Query is null.");
+		
+		BitSet exact = query.select(facets());
+		if(exact != null)
+			return viewOf(exact, exact.cardinality());
+		
+		BitSet candidates = query.candidates(facets());
+		int[] matches = new int[candidates == null ? size() : candidates.cardinality()];
+		int count = 0;
+		
+		if(candidates == null) {
 			for(int i = 0; i < size(); i++) {
-				Product p = get(i);
-				
-				if(productBrand.length() == 0 || p.getBrand().contentEquals(productBrand)) {
-					if(onlyUKLayout && p instanceof Keyboard) {
-						if(((Keyboard)p).getLayout() == KeyboardLayout.UK)
-							filteredProducts.add(p);
-					}else {
-						filteredProducts.add(p);
-					}
-				}
+				if(query.matches(get(i)))
+					matches[count++] = i;
+			}
+		}
+		else {
+			for(int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+				if(query.matches(get(i)))
+					matches[count++] = i;
 			}
-			this.products = filteredProducts;
 		}
+		
+		return new InventoryView(this, matches, count);
+	}
+	
+	/**
+	 * Returns a view of the products whose positions are set in the given bitmap.
+	 * @param positions A bitmap of positions in the Inventory.
+	 * @param count The number of positions set in the bitmap.
+	 * @return A view of the products at those positions.
+	 */
+	private InventoryView viewOf(BitSet positions, int count) {
+		int[] indexes = new int[count];
+		int n = 0;
+		for(int i = positions.nextSetBit(0); i >= 0 && i < size(); i = positions.nextSetBit(i + 1))
+			indexes[n++] = i;
+		
+		return new InventoryView(this, indexes, n);
+	}
+	
+	/**
+	 * Returns the FacetIndex of the products in the Inventory,
+	 * building it if necessary.
+	 * @return The FacetIndex of the Inventory.
+	 */
+	public FacetIndex facets() {
+		if(this.facets == null)
+			this.facets = new FacetIndex(this);
+		
+		return this.facets;
+	}
+	
+	/**
+	 * Returns a view of every product in the Inventory.
+	 * @return A view of every product in the Inventory.
+	 */
+	public InventoryView view() {
+		int[] indexes = new int[size()];
+		for(int i = 0; i < indexes.length; i++)
+			indexes[i] = i;
+		
+		return new InventoryView(this, indexes, indexes.length);
 	}
 	
 	/**
@@ -108,38 +221,44 @@ public class Inventory {
 	 * in descending order.
 	 */
 	public void sortByQuantity() {
-		//Sort by insertion sort.
-		for(int i = 0; i < size() - 1; i++) {
-			int indexOfMax = i;
-			
-			for(int j = i + 1; j < size(); j++) {
-				if(get(indexOfMax).getQuantity() < get(j).getQuantity())
-					indexOfMax = j;
-			}
-			
-			Product temp = get(i);
-			set(i, get(indexOfMax));
-			set(indexOfMax, temp);
-		}
+		sort(ProductComparators.BY_QUANTITY);
 	}
 	
 	/**
 	 * Sorts the products in this Inventory by their barcode in descending order.
 	 */
 	public void sortByBarcode() {
-		//Sort by insertion sort.
-		for(int i = 0; i < size() - 1; i++) {
-			int indexOfMax = i;
-			
-			for(int j = i + 1; j < size(); j++) {
-				if(get(indexOfMax).getBarcode() < get(j).getBarcode())
-					indexOfMax = j;
-			}
-			
-			Product temp = get(i);
-			set(i, get(indexOfMax));
-			set(indexOfMax, temp);
-		}
+		sort(ProductComparators.BY_BARCODE);
+	}
+	
+	/**
+	 * Sorts the products in this Inventory by the given ordering. Products which
+	 * the ordering considers equal keep their relative positions.
+	 * @param ordering The ordering by which to sort, e.g. one of ProductComparators.
+	 */
+	public void sort(Comparator<? super Product> ordering) {
+		if(ordering == null)
+			throw new IllegalArgumentException("Ordering is null.");
+		
+		/* The list sort is a merge sort which finds runs that are already in
+		 * order, so re-sorting an Inventory which has barely changed since its
+		 * last sort takes close to linear time.
+		 */
+		this.products.sort(ordering);
+		this.version++;
+		this.facets = null;
+		
+		for(int i = 0; i < size(); i++)
+			this.barcodeIndex.put(get(i).getBarcode(), i);
+	}
+	
+	/**
+	 * Returns a number which changes whenever products are removed from
+	 * or reordered within the Inventory.
+	 * @return The structural version of the Inventory.
+	 */
+	int version() {
+		return this.version;
 	}
 	
 	/**
@@ -150,15 +269,8 @@ public class Inventory {
 	 * Returns null if such a Product doesn't exist.
 	 */
 	public Product getByBarcode(int barcode) {
-		Product p = null;
-		
-		for(int i = 0; i < size(); i++) {
-			if(get(i).getBarcode() == barcode) {
-				p = get(i);
-				break;
-			}
-		}
+		int index = barcodeIndex.get(barcode);
 		
-		return p;
+		return index == -1 ? null : get(index);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,183 @@
+/**
+ * InventoryChangeSupport collects the changes made to the products in stock
+ * and gives them to InventoryListeners in batches. Changes are recorded as
+ * they are made and sent when fire is called, after the change is complete.
+ * <p>
+ * While the listeners are busy with one batch, further changes wait to be
+ * sent in the next. Before a batch is sent, the changes to each product are
+ * combined, so a product whose quantity changed many times has one event
+ * holding its first and last quantities, and a product added and then
+ * removed has none. Sequence numbers are given to the combined events, so
+ * they have no gaps.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+public class InventoryChangeSupport {
+	private final CopyOnWriteArrayList<InventoryListener> listeners;
+	//Changes recorded since the last batch, without sequence numbers.
+	private ArrayList<InventoryEvent> pending;
+	//Held while a batch is combined and sent, so batches are sent in order.
+	private final Object sendLock;
+	private long sequence;
+
+	/**
+	 * Creates an InventoryChangeSupport with no listeners.
+	 */
+	public InventoryChangeSupport() {
+		this.listeners = new CopyOnWriteArrayList<InventoryListener>();
+		this.pending = new ArrayList<InventoryEvent>();
+		this.sendLock = new Object();
+	}
+
+	//Methods for handling listeners.
+	/**
+	 * Adds a listener, which is sent every batch after this call.
+	 * @param listener The listener to add.
+	 */
+	public void addListener(InventoryListener listener) {
+		if(listener == null)
+			throw new IllegalArgumentException("Listener is null");
+
+		listeners.add(listener);
+	}
+
+	/**
+	 * Removes a listener.
+	 * @param listener The listener to remove.
+	 */
+	public void removeListener(InventoryListener listener) {
+		listeners.remove(listener);
+	}
+
+	/**
+	 * Returns whether there are any listeners. If there are none, changes
+	 * need not be recorded.
+	 * @return true if there is at least one listener.
+	 */
+	public boolean hasListeners() {
+		return !listeners.isEmpty();
+	}
+	//End methods for handling listeners.
+
+	//Methods for recording changes.
+	/**
+	 * Records that the given product was added.
+	 * @param product The product which was added.
+	 */
+	public void productAdded(Product product) {
+		record(new InventoryEvent(InventoryEvent.Type.ADDED, 0, product, 0));
+	}
+
+	/**
+	 * Records that the given product was removed.
+	 * @param product The product as it was when it was removed.
+	 */
+	public void productRemoved(Product product) {
+		record(new InventoryEvent(InventoryEvent.Type.REMOVED, 0, product, product.getQuantity()));
+	}
+
+	/**
+	 * Records that the quantity of the given product changed.
+	 * @param product The product, with its new quantity.
+	 * @param oldQuantity The quantity before the change.
+	 */
+	public void quantityChanged(Product product, int oldQuantity) {
+		if(product.getQuantity() != oldQuantity)
+			record(new InventoryEvent(InventoryEvent.Type.QUANTITY_CHANGED, 0, product, oldQuantity));
+	}
+
+	/**
+	 * Adds the given change to those waiting to be sent.
+	 */
+	private synchronized void record(InventoryEvent event) {
+		pending.add(event);
+	}
+	//End methods for recording changes.
+
+	/**
+	 * Sends every change recorded since the last batch to the listeners as
+	 * one batch. If another thread is sending a batch, this waits for it,
+	 * which usually finds that the changes were sent with it.
+	 */
+	public void fire() {
+		synchronized(sendLock) {
+			ArrayList<InventoryEvent> changes;
+			synchronized(this) {
+				if(pending.isEmpty())
+					return;
+				changes = pending;
+				pending = new ArrayList<InventoryEvent>();
+			}
+
+			List<InventoryEvent> batch = Collections.unmodifiableList(combine(changes));
+			if(batch.isEmpty())
+				return;
+
+			for(InventoryListener listener : listeners) {
+				try {
+					listener.inventoryChanged(batch);
+				}
+				catch(RuntimeException e) {
+					System.err.println("A listener could not apply changes to the inventory.\n" + e.getMessage());
+				}
+			}
+		}
+	}
+
+	/**
+	 * Combines the changes to each product into the fewest events with the
+	 * same overall effect, in order of each product's first change, and
+	 * gives them sequence numbers.
+	 */
+	private ArrayList<InventoryEvent> combine(ArrayList<InventoryEvent> changes) {
+		//The first and last change to each product, and whether it was ever removed.
+		LinkedHashMap<Integer, InventoryEvent[]> byBarcode = new LinkedHashMap<Integer, InventoryEvent[]>();
+		HashMap<Integer, Boolean> isRemoved = new HashMap<Integer, Boolean>();
+		for(InventoryEvent change : changes) {
+			InventoryEvent[] firstAndLast = byBarcode.get(change.getBarcode());
+			if(firstAndLast == null)
+				byBarcode.put(change.getBarcode(), new InventoryEvent[] {change, change});
+			else
+				firstAndLast[1] = change;
+			if(change.getType() == InventoryEvent.Type.REMOVED)
+				isRemoved.put(change.getBarcode(), Boolean.TRUE);
+		}
+
+		ArrayList<InventoryEvent> batch = new ArrayList<InventoryEvent>();
+		for(InventoryEvent[] firstAndLast : byBarcode.values()) {
+			InventoryEvent first = firstAndLast[0];
+			InventoryEvent last = firstAndLast[1];
+			boolean existedBefore = first.getType() != InventoryEvent.Type.ADDED;
+			boolean existsAfter = last.getType() != InventoryEvent.Type.REMOVED;
+
+			if(existedBefore && !existsAfter)
+				batch.add(last.withSequence(++sequence));
+			else if(!existedBefore && existsAfter)
+				batch.add(new InventoryEvent(InventoryEvent.Type.ADDED, ++sequence, last.getProduct(), 0));
+			else if(existedBefore && existsAfter) {
+				if(!isRemoved.containsKey(first.getBarcode())) {
+					if(first.getOldQuantity() != last.getNewQuantity())
+						batch.add(new InventoryEvent(InventoryEvent.Type.QUANTITY_CHANGED, ++sequence,
+								last.getProduct(), first.getOldQuantity()));
+				}
+				else {
+					//The product was removed and added again, perhaps with other changes.
+					Product removed = first.getProduct();
+					removed.setQuantity(first.getOldQuantity());
+					batch.add(new InventoryEvent(InventoryEvent.Type.REMOVED, ++sequence, removed, removed.getQuantity()));
+					batch.add(new InventoryEvent(InventoryEvent.Type.ADDED, ++sequence, last.getProduct(), 0));
+				}
+			}
+		}
+
+		return batch;
+	}
+}
@@ -0,0 +1,116 @@
+/**
+ * An InventoryEvent describes a change to the products in stock: a product
+ * being added or removed, or its quantity changing. Every event has a
+ * sequence number which is greater than that of every earlier event, so a
+ * listener can tell the order in which changes happened.
+ * <p>
+ * Each event holds the product as it was after the change, or as it was
+ * when it was removed, along with the quantities before and after.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+public final class InventoryEvent {
+
+	/**
+	 * The kinds of change to the products in stock.
+	 */
+	public enum Type {
+		//A product was added to stock.
+		ADDED,
+		//A product was removed from stock.
+		REMOVED,
+		//The quantity in stock of a product changed.
+		QUANTITY_CHANGED;
+	}
+
+	private final Type type;
+	private final long sequence;
+	private final Product product;
+	private final int oldQuantity;
+
+	/**
+	 * Creates an InventoryEvent. The product is copied.
+	 * @param type The kind of change.
+	 * @param sequence The sequence number of the event.
+	 * @param product The product after the change, or when it was removed.
+	 * @param oldQuantity The quantity before the change.
+	 */
+	InventoryEvent(Type type, long sequence, Product product, int oldQuantity) {
+		if(type == null)
+			throw new IllegalArgumentException("Type is null");
+		if(product == null)
+			throw new IllegalArgumentException("null is not a valid Product");
+
+		this.type = type;
+		this.sequence = sequence;
+		this.product = product.copy();
+		this.oldQuantity = oldQuantity;
+	}
+
+	//Getters.
+	/**
+	 * Returns the kind of change.
+	 * @return The kind of change.
+	 */
+	public Type getType() {
+		return this.type;
+	}
+
+	/**
+	 * Returns the sequence number of the event.
+	 * @return The sequence number of the event.
+	 */
+	public long getSequence() {
+		return this.sequence;
+	}
+
+	/**
+	 * Returns the bar code of the product which changed.
+	 * @return The bar code of the product.
+	 */
+	public int getBarcode() {
+		return this.product.getBarcode();
+	}
+
+	/**
+	 * Returns a copy of the product as it was after the change, or as it
+	 * was when it was removed.
+	 * @return A copy of the product.
+	 */
+	public Product getProduct() {
+		return this.product.copy();
+	}
+
+	/**
+	 * Returns the quantity in stock before the change, which is 0 if the
+	 * product was added.
+	 * @return The quantity before the change.
+	 */
+	public int getOldQuantity() {
+		return type == Type.ADDED ? 0 : this.oldQuantity;
+	}
+
+	/**
+	 * Returns the quantity in stock after the change, which is 0 if the
+	 * product was removed.
+	 * @return The quantity after the change.
+	 */
+	public int getNewQuantity() {
+		return type == Type.REMOVED ? 0 : this.product.getQuantity();
+	}
+	//End getters.
+
+	/**
+	 * Returns a copy of this event with the given sequence number.
+	 */
+	InventoryEvent withSequence(long sequence) {
+		return new InventoryEvent(type, sequence, product, oldQuantity);
+	}
+
+	@Override
+	public String toString() {
+		return "#" + sequence + " " + type + " " + getBarcode() + ": "
+				+ getOldQuantity() + " -> " + getNewQuantity();
+	}
+}
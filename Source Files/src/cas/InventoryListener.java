@@ -0,0 +1,22 @@
+/**
+ * An InventoryListener is told of changes to the products in stock, so
+ * that it can apply them to its own tables, caches or indexes rather than
+ * reading every product again.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.util.List;
+
+public interface InventoryListener {
+
+	/**
+	 * Called with a batch of changes, in order of sequence number. Changes
+	 * made to the same product since the last batch are combined into one
+	 * event, or two if it was removed and added again. Batches are given to
+	 * listeners one at a time, on a thread which made one of the changes;
+	 * Swing components should apply them on the event dispatch thread.
+	 * @param events The changes, which cannot be modified.
+	 */
+	public void inventoryChanged(List<InventoryEvent> events);
+}
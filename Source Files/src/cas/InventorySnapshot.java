@@ -0,0 +1,287 @@
+/**
+ * An InventorySnapshot is an immutable copy of the products in stock at one
+ * moment, with a version number which is greater for later snapshots of the
+ * same stock. Because it never changes, any number of threads can browse,
+ * search or report on a snapshot without a lock while another thread
+ * publishes newer snapshots.
+ * <p>
+ * A change makes a new snapshot which shares everything that did not
+ * change with the old one. The products are kept in fixed size chunks of
+ * ProductColumns, so changing a quantity copies only the quantities of its
+ * chunk and the array of chunks; the bar code index is shared unless
+ * products are added or removed. Products are held as columns of
+ * primitives rather than as objects, so reports over every product, such
+ * as the value of the stock, are loops over arrays, and every method which
+ * returns a Product creates a new one.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.util.Arrays;
+
+public final class InventorySnapshot {
+	private static final ProductColumns EMPTY_CHUNK = new ProductColumns(new Inventory(), 0, 0);
+	private static final int CHUNK_SHIFT = 8;
+	private static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+	private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final long version;
+	private final ProductColumns[] chunks;
+	private final int size;
+	//Maps each bar code to its position. Never changed once the snapshot is created.
+	private final BarcodeIndex positions;
+
+	/**
+	 * Creates a snapshot of the given products with version 0.
+	 * @param products The products in stock.
+	 */
+	public InventorySnapshot(Inventory products) {
+		this(products, 0);
+	}
+
+	/**
+	 * Creates a snapshot of the given products with the given version.
+	 * The snapshot holds the attributes of the products rather than the
+	 * products, so later changes to them do not affect it.
+	 * @param products The products in stock.
+	 * @param version The version of the snapshot.
+	 */
+	public InventorySnapshot(Inventory products, long version) {
+		if(products == null)
+			throw new IllegalArgumentException("Inventory is null");
+
+		int size = products.size();
+		ProductColumns[] chunks = new ProductColumns[(size + CHUNK_SIZE - 1) >>> CHUNK_SHIFT];
+		BarcodeIndex positions = new BarcodeIndex(size);
+
+		for(int i = 0; i < chunks.length; i++)
+			chunks[i] = new ProductColumns(products, i << CHUNK_SHIFT, Math.min(size, (i + 1) << CHUNK_SHIFT));
+		for(int i = 0; i < size; i++)
+			positions.put(products.get(i).getBarcode(), i);
+
+		this.version = version;
+		this.chunks = chunks;
+		this.size = size;
+		this.positions = positions;
+	}
+
+	private InventorySnapshot(long version, ProductColumns[] chunks, int size, BarcodeIndex positions) {
+		this.version = version;
+		this.chunks = chunks;
+		this.size = size;
+		this.positions = positions;
+	}
+
+	//Methods for reading the snapshot.
+	/**
+	 * Returns the version of the snapshot.
+	 * @return The version of the snapshot.
+	 */
+	public long version() {
+		return this.version;
+	}
+
+	/**
+	 * Returns the number of products in the snapshot.
+	 * @return The number of products in the snapshot.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns a copy of the product at the given index.
+	 * @param index The position of the product within the snapshot.
+	 * @return A copy of the product at the given index.
+	 */
+	public Product get(int index) {
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException(index + "is out of bounds.");
+
+		return chunks[index >>> CHUNK_SHIFT].get(index & CHUNK_MASK);
+	}
+
+	/**
+	 * Returns the quantity in stock of the product at the given index,
+	 * without creating the product.
+	 * @param index The position of the product within the snapshot.
+	 * @return The quantity of the product at the given index.
+	 */
+	public int getQuantity(int index) {
+		if(index < 0 || index >= size)
+			throw new IndexOutOfBoundsException(index + "is out of bounds.");
+
+		return chunks[index >>> CHUNK_SHIFT].getQuantity(index & CHUNK_MASK);
+	}
+
+	/**
+	 * Returns a copy of the product with the given bar code.
+	 * @param barcode The bar code of the product.
+	 * @return A copy of the product, or null if the snapshot does not hold the bar code.
+	 */
+	public Product getByBarcode(int barcode) {
+		int index = positions.get(barcode);
+		return index == -1 ? null : get(index);
+	}
+
+	/**
+	 * Returns an Inventory holding copies of the products in the snapshot,
+	 * in the same order, which can be filtered, sorted or changed freely.
+	 * @return An Inventory of copies of the products.
+	 */
+	public Inventory toInventory() {
+		Inventory products = new Inventory();
+		for(int i = 0; i < size; i++)
+			products.add(get(i));
+
+		return products;
+	}
+	//End methods for reading the snapshot.
+
+	//Methods for reporting on every product.
+	/**
+	 * Returns the total retail price of every product in stock, i.e. each
+	 * product's retail price multiplied by its quantity.
+	 * @return The retail value of the stock in pence.
+	 * @throws ArithmeticException Thrown if the value does not fit in a long.
+	 */
+	public long retailValue() {
+		long total = 0;
+		for(ProductColumns chunk : chunks)
+			total = Math.addExact(total, chunk.retailValue());
+		return total;
+	}
+
+	/**
+	 * Returns the total original cost of every product in stock.
+	 * @return The original cost of the stock in pence.
+	 * @throws ArithmeticException Thrown if the cost does not fit in a long.
+	 */
+	public long originalCost() {
+		long total = 0;
+		for(ProductColumns chunk : chunks)
+			total = Math.addExact(total, chunk.originalCost());
+		return total;
+	}
+
+	/**
+	 * Returns the positions of the products with at most the given quantity
+	 * in stock, in order.
+	 * @param threshold The greatest quantity of a product which is running low.
+	 * @return The positions of the products which are running low.
+	 */
+	public int[] lowStock(int threshold) {
+		int[] positions = new int[size];
+		int count = 0;
+		for(int i = 0; i < chunks.length; i++)
+			count = chunks[i].lowStock(threshold, positions, count, i << CHUNK_SHIFT);
+		return Arrays.copyOf(positions, count);
+	}
+
+	/**
+	 * Returns the positions of every product, ordered by quantity in
+	 * descending order like ProductComparators.BY_QUANTITY. The quantities
+	 * are sorted as primitives, without creating any product.
+	 * @return The positions of the products, most in stock first.
+	 */
+	public int[] byQuantity() {
+		int[] quantities = new int[size];
+		for(int i = 0; i < chunks.length; i++)
+			chunks[i].copyQuantities(quantities, i << CHUNK_SHIFT);
+
+		/* Each quantity and position are sorted together as one long, with
+		 * the quantity negated in the high half so the largest comes first
+		 * and equal quantities keep their order.
+		 */
+		long[] keys = new long[size];
+		for(int i = 0; i < size; i++)
+			keys[i] = ((long)-quantities[i] << 32) | i;
+		Arrays.sort(keys);
+
+		int[] positions = new int[size];
+		for(int i = 0; i < size; i++)
+			positions[i] = (int)keys[i];
+		return positions;
+	}
+	//End methods for reporting on every product.
+
+	//Methods for making changed snapshots.
+	/**
+	 * Returns the next version of this snapshot, in which the product with
+	 * the given bar code has the given quantity.
+	 * @param barcode The bar code of the product.
+	 * @param quantity The new quantity in stock.
+	 * @return The changed snapshot.
+	 */
+	public InventorySnapshot withQuantity(int barcode, int quantity) {
+		return withQuantities(new int[] {barcode}, new int[] {quantity});
+	}
+
+	/**
+	 * Returns the next version of this snapshot, in which the products with
+	 * the given bar codes have the given quantities. Each chunk holding one
+	 * of the products is copied once.
+	 * @param barcodes The bar codes of the products.
+	 * @param quantities The new quantity of each product.
+	 * @return The changed snapshot.
+	 */
+	public InventorySnapshot withQuantities(int[] barcodes, int[] quantities) {
+		if(barcodes == null || quantities == null || barcodes.length != quantities.length)
+			throw new IllegalArgumentException("Bar codes and quantities do not match");
+
+		int[] indexes = new int[barcodes.length];
+		for(int i = 0; i < barcodes.length; i++) {
+			indexes[i] = positions.get(barcodes[i]);
+			if(indexes[i] == -1)
+				throw new IllegalArgumentException("No product has the barcode " + barcodes[i]);
+		}
+
+		//The changes are grouped by chunk, in order, so that each chunk's quantities are copied once.
+		int[] starts = new int[chunks.length + 1];
+		for(int index : indexes)
+			starts[(index >>> CHUNK_SHIFT) + 1]++;
+		for(int chunk = 0; chunk < chunks.length; chunk++)
+			starts[chunk + 1] += starts[chunk];
+
+		int[] next = Arrays.copyOf(starts, chunks.length);
+		int[] rows = new int[indexes.length];
+		int[] grouped = new int[indexes.length];
+		for(int i = 0; i < indexes.length; i++) {
+			int n = next[indexes[i] >>> CHUNK_SHIFT]++;
+			rows[n] = indexes[i] & CHUNK_MASK;
+			grouped[n] = quantities[i];
+		}
+
+		ProductColumns[] changed = Arrays.copyOf(chunks, chunks.length);
+		for(int chunk = 0; chunk < chunks.length; chunk++) {
+			if(starts[chunk] < starts[chunk + 1])
+				changed[chunk] = chunks[chunk].withQuantities(
+						Arrays.copyOfRange(rows, starts[chunk], starts[chunk + 1]),
+						Arrays.copyOfRange(grouped, starts[chunk], starts[chunk + 1]));
+		}
+
+		return new InventorySnapshot(version + 1, changed, size, positions);
+	}
+
+	/**
+	 * Returns the next version of this snapshot, with a copy of the given
+	 * product added to the end.
+	 * @param product The product to add.
+	 * @return The changed snapshot.
+	 */
+	public InventorySnapshot withProduct(Product product) {
+		if(product == null)
+			throw new IllegalArgumentException("null is not a valid Product");
+		if(positions.get(product.getBarcode()) != -1)
+			throw new IllegalArgumentException("A product with barcode " + product.getBarcode() + " already exists");
+
+		int chunk = size >>> CHUNK_SHIFT;
+		ProductColumns[] changed = Arrays.copyOf(chunks, Math.max(chunks.length, chunk + 1));
+		changed[chunk] = (chunk < chunks.length ? chunks[chunk] : EMPTY_CHUNK).withProduct(product);
+
+		BarcodeIndex changedPositions = positions.copy();
+		changedPositions.put(product.getBarcode(), size);
+		return new InventorySnapshot(version + 1, changed, size + 1, changedPositions);
+	}
+	//End methods for making changed snapshots.
+}
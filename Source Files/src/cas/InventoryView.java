@@ -0,0 +1,135 @@
+/**
+ * An InventoryView is a read-only selection of the products in an Inventory,
+ * such as the result of a search. It holds only the positions of the selected
+ * products, so creating, refining or sorting a view leaves the Inventory
+ * unchanged. A view can no longer be used once products are removed from,
+ * or reordered within, its Inventory.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Comparator;
+
+public class InventoryView {
+	private final Inventory inventory;
+	private final int inventoryVersion;
+	private int[] indexes;
+	private final int size;
+
+	/**
+	 * Creates a view of the products at the given positions in the given Inventory.
+	 * @param inventory The Inventory being viewed.
+	 * @param indexes The positions of the selected products. The array is not copied.
+	 * @param size The number of positions in indexes which are used.
+	 */
+	InventoryView(Inventory inventory, int[] indexes, int size) {
+		this.inventory = inventory;
+		this.inventoryVersion = inventory.version();
+		this.indexes = indexes;
+		this.size = size;
+	}
+
+	/**
+	 * Returns the number of products in the view.
+	 * @return The number of products in the view.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns the product at the given position in the view.
+	 * @param index The position of the product within the view.
+	 * @return The product at the given position.
+	 */
+	public Product get(int index) {
+		if(index < 0 || index >= size())
+			throw new IndexOutOfBoundsException(index + "is out of bounds.");
+
+		checkVersion();
+		return inventory.get(indexes[index]);
+	}
+
+	/**
+	 * Returns the Inventory being viewed.
+	 * @return The Inventory being viewed.
+	 */
+	public Inventory getInventory() {
+		return this.inventory;
+	}
+
+	/**
+	 * Returns a view of the products in this view which match the given query.
+	 * @param query The query which products must match.
+	 * @return A view of the matching products, in the same order as this view.
+	 */
+	public InventoryView filter(ProductQuery query) {
+		if(query == null)
+			throw new IllegalArgumentException("Query is null.");
+		checkVersion();
+
+		int[] matches = new int[size];
+		int count = 0;
+		for(int i = 0; i < size; i++) {
+			if(query.matches(inventory.get(indexes[i])))
+				matches[count++] = indexes[i];
+		}
+
+		return new InventoryView(inventory, matches, count);
+	}
+
+	/**
+	 * Sorts the products in this view by the given ordering. Only the view
+	 * is reordered; the Inventory is unchanged.
+	 * @param ordering The ordering by which to sort, e.g. one of ProductComparators.
+	 */
+	public void sort(Comparator<? super Product> ordering) {
+		if(ordering == null)
+			throw new IllegalArgumentException("Ordering is null.");
+		checkVersion();
+
+		int[] buffer = Arrays.copyOf(indexes, size);
+		indexes = Arrays.copyOf(indexes, size);
+		mergeSort(buffer, indexes, 0, size, ordering);
+	}
+
+	/**
+	 * Stable merge sort of the positions in dest between from and to, using src,
+	 * which must hold the same positions, as working space.
+	 */
+	private void mergeSort(int[] src, int[] dest, int from, int to, Comparator<? super Product> ordering) {
+		if(to - from < 2)
+			return;
+
+		int mid = (from + to) >>> 1;
+		mergeSort(dest, src, from, mid, ordering);
+		mergeSort(dest, src, mid, to, ordering);
+
+		//The halves are already in order, so no merge is needed.
+		if(ordering.compare(inventory.get(src[mid - 1]), inventory.get(src[mid])) <= 0) {
+			System.arraycopy(src, from, dest, from, to - from);
+			return;
+		}
+
+		int left = from;
+		int right = mid;
+		for(int i = from; i < to; i++) {
+			if(right >= to || (left < mid &&
+					ordering.compare(inventory.get(src[left]), inventory.get(src[right])) <= 0))
+				dest[i] = src[left++];
+			else
+				dest[i] = src[right++];
+		}
+	}
+
+	/**
+	 * Throws a ConcurrentModificationException if the Inventory's
+	 * products have been removed or reordered since this view was created.
+	 */
+	private void checkVersion() {
+		if(inventory.version() != inventoryVersion)
+			throw new ConcurrentModificationException("The inventory has changed since the view was created.");
+	}
+}
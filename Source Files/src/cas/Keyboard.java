@@ -36,6 +36,32 @@ public class Keyboard extends Product {
 		this.layout = layout;
 	}
 	
+	/**
+	 * Creates a Keyboard instance with its prices given in pence.
+	 * @param barcode The product's bar code.
+	 * @param brand The product's brand.
+	 * @param colour The product's colour.
+	 * @param isWired Whether the product is wired.
+	 * @param type The type of the keyboard.
+	 * @param layout The layout of the keyboard.
+	 * @param originalCost The price in pence at which the product was purchased.
+	 * @param retailPrice The price in pence at which the product is sold.
+	 * @param quantity The quantity of the product in stock.
+	 */
+	public Keyboard(int barcode, String brand, String colour, boolean isWired,
+			KeyboardType type, KeyboardLayout layout, long originalCost,
+			long retailPrice, int quantity) {
+		super(barcode, brand, colour, isWired, originalCost, retailPrice, quantity);
+		
+		if(!verifyType(type))
+			throw new IllegalArgumentException("Invalid type");
+		if(!verifyLayout(layout))
+			throw new IllegalArgumentException("Invalid layout");
+		
+		this.type = type;
+		this.layout = layout;
+	}
+	
 	//Getters and setters
 	/**
 	 * Returns the keyboard's type.
@@ -54,6 +80,22 @@ public class Keyboard extends Product {
 	}
 	//End getters and setters
 	
+	/**
+	 * Returns a new keyboard with the same attributes as this keyboard.
+	 * @return A copy of this keyboard.
+	 */
+	@Override
+	public Keyboard copy() {
+		return new Keyboard(getBarcode(), getBrand(), getColour(), isWired(), getType(),
+				getLayout(), getOriginalCostPence(), getRetailPricePence(), getQuantity());
+	}
+	
+	@Override
+	public boolean isSameApartFromQuantity(Product other) {
+		return super.isSameApartFromQuantity(other) && type == ((Keyboard)other).type
+				&& layout == ((Keyboard)other).layout;
+	}
+	
 	/**
 	 * Returns a String representation of the keyboard.
 	 * @param showOriginalCost if <code>true</code> then 
@@ -69,8 +111,8 @@ public class Keyboard extends Product {
 				 (isWired() ? "wired" : "wireless") + ", " +
 			     "Type: " + getType() + ", " +
 				 "Layout: " + getLayout() + ", " +
-				 (showOriginalCost ? "Original Cost: " + getOriginalCost() + ", " : "") +
-				 "Retail Price: " + getRetailPrice() + ", " +
+				 (showOriginalCost ? "Original Cost: " + Money.format(getOriginalCostPence()) + ", " : "") +
+				 "Retail Price: " + Money.format(getRetailPricePence()) + ", " +
 				 "Quantity: " + getQuantity();
 	
 	return str;	
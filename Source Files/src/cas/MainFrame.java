@@ -34,21 +34,31 @@ public class MainFrame extends JFrame {
 	private DefaultTableModel dtmUser;
 	
 	private Database db;
+	private AsyncDatabase asyncDb;
 	private ArrayList<User> systemUsers;
 	private User currentUser;
 	
-	//Launch the application. 
+	/**
+	 * Launches the application.
+	 * Usage: <code>java cas.MainFrame [stockPath userAccountsPath activityLogPath]</code>.
+	 * The file paths may also be given by the system properties cas.stock,
+	 * cas.users and cas.log. If the system property cas.jdbcUrl is set, the
+	 * data is kept in the SQL database at that URL instead, which is filled
+	 * from the files the first time it is used.
+	 * @param args The file paths of the stock, user accounts and activity log files.
+	 */
 	public static void main(String[] args) {
 		//File paths for the database.
-		String userAccountsPath = "src/cas/UserAccounts.txt";
-		String stockPath = "src/cas/Stock.txt";
-		String activityLogPath = "src/cas/ActivityLog.txt";
+		String stockPath = args.length == 3 ? args[0] : System.getProperty("cas.stock", "src/cas/Stock.txt");
+		String userAccountsPath = args.length == 3 ? args[1] : System.getProperty("cas.users", "src/cas/UserAccounts.txt");
+		String activityLogPath = args.length == 3 ? args[2] : System.getProperty("cas.log", "src/cas/ActivityLog.txt");
+		String jdbcUrl = System.getProperty("cas.jdbcUrl");
 		
 		//Runs the CAS System.
 		EventQueue.invokeLater(new Runnable() {
 			public void run() {
 				try {
-					MainFrame frame = new MainFrame(stockPath, userAccountsPath, activityLogPath);
+					MainFrame frame = new MainFrame(stockPath, userAccountsPath, activityLogPath, jdbcUrl);
 					frame.setVisible(true);
 				} catch (Exception e) {
 					e.printStackTrace();
@@ -65,6 +75,18 @@ public class MainFrame extends JFrame {
 	 * @param activityLogPath The file path of ActivityLog.txt.
 	 */
 	public MainFrame(String stockPath, String userAccountsPath, String activityLogPath) {
+		this(stockPath, userAccountsPath, activityLogPath, null);
+	}
+	
+	/**
+	 * Creates a main frame from which the CAS System is run, keeping its
+	 * data in the SQL database at the given JDBC URL if one is given.
+	 * @param stockPath The file path of stock.txt.
+	 * @param userAccountsPath The file path of UserAccounts.txt.
+	 * @param activityLogPath The file path of ActivityLog.txt.
+	 * @param jdbcUrl The JDBC URL of the SQL database, or null to use the files.
+	 */
+	public MainFrame(String stockPath, String userAccountsPath, String activityLogPath, String jdbcUrl) {
 		setTitle("CASH - Login");
 		
 		setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
@@ -108,7 +130,13 @@ public class MainFrame extends JFrame {
 		
 		//Try accessing the database. Terminate execution if it fails.
 		try{
-			db = new Database(stockPath, userAccountsPath, activityLogPath);
+			db = jdbcUrl == null ? new Database(stockPath, userAccountsPath, activityLogPath, true)
+					: new Database(openSqlEngine(jdbcUrl, stockPath, userAccountsPath, activityLogPath));
+			
+			asyncDb = new AsyncDatabase(db);
+			
+			//Read the list of Users from the database and display them in the table.
+			this.systemUsers = db.getUsers();
 		}
 		catch(IOException e) {
 			JOptionPane.showMessageDialog(this, "There was an error accessing the database. Execution will now terminate.",
@@ -116,9 +144,6 @@ public class MainFrame extends JFrame {
 			System.exit(-1);
 		}
 		
-		//Read the list of Users from the database and display them in the table.
-		this.systemUsers = db.getUsers();
-		
 		for(User u : systemUsers) {
 			Object[] rowData = new Object[] {u.getUsername()};
 			dtmUser.addRow(rowData);			
@@ -126,6 +151,22 @@ public class MainFrame extends JFrame {
 		
 	}
 	
+	/**
+	 * Opens the SQL database at the given JDBC URL, filling it from the
+	 * files at the given paths if it is empty.
+	 */
+	private static SqlStorageEngine openSqlEngine(String jdbcUrl, String stockPath,
+			String userAccountsPath, String activityLogPath) throws IOException {
+		SqlStorageEngine engine = new SqlStorageEngine(jdbcUrl);
+		
+		if(engine.isEmpty()) {
+			try(FlatFileStorageEngine files = new FlatFileStorageEngine(stockPath, userAccountsPath, activityLogPath)) {
+				engine.importFrom(files);
+			}
+		}
+		return engine;
+	}
+	
 	/**
 	 * Launches the appropriate frame depending on the currently selected user in jtUsernames.
 	 */
@@ -137,11 +178,11 @@ public class MainFrame extends JFrame {
 			
 			try {	
 				if(this.currentUser instanceof Admin) {
-					new AdminFrame(db);
+					new AdminFrame(asyncDb);
 					this.setVisible(false);
 				}
 				else if(this.currentUser instanceof Customer) {
-					new CustomerFrame(db, (Customer)this.currentUser);
+					new CustomerFrame(asyncDb, (Customer)this.currentUser);
 					this.setVisible(false);
 				}
 				
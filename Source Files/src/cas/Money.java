@@ -0,0 +1,170 @@
+/**
+ * Money holds methods for working with amounts of money stored as a long
+ * number of pence. Arithmetic on pence allocates no objects, so prices are
+ * only converted to BigDecimal when they are displayed.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+
+public final class Money {
+	//Number of decimal places in an amount of pounds.
+	public static final int SCALE = 2;
+	private static final int PENCE_PER_POUND = 100;
+
+	private Money() {
+	}
+
+	/**
+	 * Returns the number of pence in the given decimal amount of pounds,
+	 * e.g. "39.99" or "30.0". Amounts with more than two decimal places are
+	 * rounded half up, as BigDecimal.setScale(2, RoundingMode.HALF_UP) would.
+	 * @param str The amount of pounds.
+	 * @return The amount in pence.
+	 * @throws NumberFormatException Thrown if str is not a decimal number.
+	 */
+	public static long parse(CharSequence str) {
+		return parse(str, 0, str == null ? 0 : str.length());
+	}
+
+	/**
+	 * Returns the number of pence in the decimal amount of pounds held between
+	 * the given positions of str, without creating a substring.
+	 * @param str The characters holding the amount.
+	 * @param start The position of the amount's first character.
+	 * @param end The position after the amount's last character.
+	 * @return The amount in pence.
+	 * @throws NumberFormatException Thrown if the characters are not a decimal number.
+	 */
+	public static long parse(CharSequence str, int start, int end) {
+		if(str == null || start >= end)
+			throw new NumberFormatException("Amount is empty");
+
+		int i = start;
+		boolean isNegative = false;
+		if(str.charAt(i) == '-' || str.charAt(i) == '+') {
+			isNegative = str.charAt(i) == '-';
+			i++;
+		}
+
+		long pence = 0;
+		int digits = 0;
+		int decimalPlaces = -1;
+		boolean roundUp = false;
+
+		try {
+			for(; i < end; i++) {
+				char c = str.charAt(i);
+
+				if(c == '.' && decimalPlaces < 0) {
+					decimalPlaces = 0;
+				}
+				else if(c >= '0' && c <= '9') {
+					digits++;
+					if(decimalPlaces < SCALE) {
+						pence = Math.addExact(Math.multiplyExact(pence, 10), c - '0');
+						if(decimalPlaces >= 0)
+							decimalPlaces++;
+					}
+					else if(decimalPlaces == SCALE) {
+						//Only the first dropped digit decides rounding half up.
+						roundUp = c >= '5';
+						decimalPlaces++;
+					}
+				}
+				else {
+					throw new NumberFormatException("Amount " + str.subSequence(start, end) + " is not a number");
+				}
+			}
+
+			if(digits == 0)
+				throw new NumberFormatException("Amount " + str.subSequence(start, end) + " is not a number");
+
+			for(int places = Math.max(decimalPlaces, 0); places < SCALE; places++)
+				pence = Math.multiplyExact(pence, 10);
+			if(roundUp)
+				pence = Math.addExact(pence, 1);
+		}
+		catch(ArithmeticException e) {
+			throw new NumberFormatException("Amount " + str.subSequence(start, end) + " is too large");
+		}
+
+		return isNegative ? -pence : pence;
+	}
+
+	/**
+	 * Returns the number of pence in the given amount of pounds, rounded half up.
+	 * @param pounds The amount of pounds.
+	 * @return The amount in pence.
+	 */
+	public static long fromBigDecimal(BigDecimal pounds) {
+		return fromBigDecimal(pounds, RoundingMode.HALF_UP);
+	}
+
+	/**
+	 * Returns the number of pence in the given amount of pounds, rounded
+	 * by the given rounding mode.
+	 * @param pounds The amount of pounds.
+	 * @param rounding How to round amounts with more than two decimal places.
+	 * @return The amount in pence.
+	 */
+	public static long fromBigDecimal(BigDecimal pounds, RoundingMode rounding) {
+		if(pounds == null)
+			throw new IllegalArgumentException("Amount is null");
+
+		return pounds.setScale(SCALE, rounding).unscaledValue().longValueExact();
+	}
+
+	/**
+	 * Returns the given number of pence as an amount of pounds.
+	 * @param pence The amount in pence.
+	 * @return The amount of pounds, to two decimal places.
+	 */
+	public static BigDecimal toBigDecimal(long pence) {
+		return BigDecimal.valueOf(pence, SCALE);
+	}
+
+	/**
+	 * Returns the given number of pence as a String of pounds to two decimal
+	 * places, e.g. 3999 as "39.99", the same as BigDecimal.toString would.
+	 * @param pence The amount in pence.
+	 * @return The amount of pounds as a String.
+	 */
+	public static String format(long pence) {
+		StringBuilder str = new StringBuilder(12);
+		appendTo(str, pence);
+		return str.toString();
+	}
+
+	/**
+	 * Appends the given number of pence to str as pounds to two decimal places.
+	 * @param str The StringBuilder to append to.
+	 * @param pence The amount in pence.
+	 * @return str.
+	 */
+	public static StringBuilder appendTo(StringBuilder str, long pence) {
+		if(pence < 0) {
+			str.append('-');
+			pence = -pence;
+		}
+
+		long fraction = pence % PENCE_PER_POUND;
+		str.append(pence / PENCE_PER_POUND).append('.');
+		if(fraction < 10)
+			str.append('0');
+		return str.append(fraction);
+	}
+
+	/**
+	 * Returns the price of the given quantity of an item costing the given amount.
+	 * @param pence The price of one item in pence.
+	 * @param quantity The number of items.
+	 * @return The price of all the items in pence.
+	 * @throws ArithmeticException Thrown if the result does not fit in a long.
+	 */
+	public static long multiply(long pence, int quantity) {
+		return Math.multiplyExact(pence, (long)quantity);
+	}
+}
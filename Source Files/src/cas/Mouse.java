@@ -37,6 +37,33 @@ public class Mouse extends Product {
 		this.buttonCount = buttonCount;
 	}
 	
+	/**
+	 * Creates a Mouse instance with its prices given in pence.
+	 * @param barcode The product's bar code.
+	 * @param brand The product's brand.
+	 * @param colour The product's colour.
+	 * @param isWired Whether the product is wired.
+	 * @param type The type of the mouse.
+	 * @param buttonCount The number of buttons on the mouse.
+	 * @param originalCost The price in pence at which the product was purchased.
+	 * @param retailPrice The price in pence at which the product is sold.
+	 * @param quantity The quantity of the product in stock.
+	 */
+	public Mouse(int barcode, String brand, String colour, boolean isWired,
+			MouseType type, int buttonCount, long originalCost,
+			long retailPrice, int quantity) {
+		super(barcode, brand, colour, isWired, originalCost, retailPrice, quantity);
+		
+		if(!verifyButtonCount(buttonCount))
+			throw new IllegalArgumentException("Invalid button count");
+		
+		if(!verifyType(type))
+			throw new IllegalArgumentException("Invalid MouseType");
+		
+		this.type = type;
+		this.buttonCount = buttonCount;
+	}
+	
 	
 	//Getters and setters.
 	/**
@@ -56,6 +83,22 @@ public class Mouse extends Product {
 	}
 	//End getters and setters.
 	
+	/**
+	 * Returns a new mouse with the same attributes as this mouse.
+	 * @return A copy of this mouse.
+	 */
+	@Override
+	public Mouse copy() {
+		return new Mouse(getBarcode(), getBrand(), getColour(), isWired(), getType(),
+				getButtonCount(), getOriginalCostPence(), getRetailPricePence(), getQuantity());
+	}
+	
+	@Override
+	public boolean isSameApartFromQuantity(Product other) {
+		return super.isSameApartFromQuantity(other) && type == ((Mouse)other).type
+				&& buttonCount == ((Mouse)other).buttonCount;
+	}
+	
 	/**
 	 * Returns a String representing the mouse.
 	 * @param showOriginalCost If <code>true</code> then the original cost
@@ -69,10 +112,10 @@ public class Mouse extends Product {
 				 "Colour: " + getColour() + ", " + 
 			     "Connection: " + 
 				 (isWired() ? "wired" : "wireless") + ", " +
-				 (showOriginalCost ? "Original Cost: " + getOriginalCost() + ", " : "") +
+				 (showOriginalCost ? "Original Cost: " + Money.format(getOriginalCostPence()) + ", " : "") +
 				 "Type: " + getType() + ", " +
 				 "Button Count: " + getButtonCount() + ", " +
-				 "Retail Price: " + getRetailPrice() + ", " +
+				 "Retail Price: " + Money.format(getRetailPricePence()) + ", " +
 				 "Quantity: " + getQuantity();
 	
 		return str;
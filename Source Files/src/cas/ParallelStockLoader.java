@@ -0,0 +1,204 @@
+/**
+ * A ParallelStockLoader reads a large stock file by memory mapping it,
+ * splitting it into chunks which end at line breaks, and parsing the chunks
+ * in parallel on a ForkJoinPool. The parsed chunks are then added to an
+ * Inventory in file order, so the result is the same as reading the file
+ * line by line: lines which cannot be parsed are reported and skipped, and
+ * a product whose bar code has already been read is ignored.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+public class ParallelStockLoader {
+	//Files are not split into chunks smaller than this.
+	private static final long MIN_CHUNK_SIZE = 1024 * 1024;
+	//Number of chunks per thread, so that threads finishing early can take more work.
+	private static final int CHUNKS_PER_THREAD = 4;
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * Creates a ParallelStockLoader which parses on the common ForkJoinPool.
+	 */
+	public ParallelStockLoader() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Creates a ParallelStockLoader which parses on the given pool.
+	 * @param pool The pool on which chunks are parsed.
+	 */
+	public ParallelStockLoader(ForkJoinPool pool) {
+		if(pool == null)
+			throw new IllegalArgumentException("Pool is null");
+
+		this.pool = pool;
+	}
+
+	/**
+	 * Reads the products in the stock file at the given path.
+	 * @param stockFilePath The path of the stock file.
+	 * @return An Inventory of the products in the file, in file order.
+	 * @throws IOException Thrown if the stock file cannot be read.
+	 */
+	public Inventory load(String stockFilePath) throws IOException {
+		try(FileChannel channel = FileChannel.open(Paths.get(stockFilePath), StandardOpenOption.READ)) {
+			long[] bounds = chunkBounds(channel);
+
+			ArrayList<Chunk> chunks;
+			try {
+				chunks = pool.invoke(new ParseTask(channel, bounds, 0, bounds.length - 1));
+			}
+			catch(UncheckedIOException e) {
+				throw e.getCause();
+			}
+
+			//Merge the chunks in file order, reporting lines as readProducts would.
+			Inventory products = new Inventory();
+			for(Chunk chunk : chunks) {
+				for(String error : chunk.errors)
+					System.err.println(error);
+				for(Product p : chunk.products)
+					products.add(p);
+			}
+
+			return products;
+		}
+	}
+
+	/**
+	 * Returns the positions at which the file is split, starting with 0 and
+	 * ending with the file's size. Every position other than these falls just
+	 * after a line break.
+	 */
+	private long[] chunkBounds(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long chunkCount = Math.max(1, Math.min(
+				(long)pool.getParallelism() * CHUNKS_PER_THREAD, size / MIN_CHUNK_SIZE));
+
+		long[] bounds = new long[(int)chunkCount + 1];
+		int count = 1;
+		ByteBuffer window = ByteBuffer.allocate(4096);
+
+		for(long i = 1; i < chunkCount; i++) {
+			long position = Math.max(size * i / chunkCount, bounds[count - 1]);
+			long lineStart = nextLineStart(channel, position, window);
+			if(lineStart < size && lineStart > bounds[count - 1])
+				bounds[count++] = lineStart;
+		}
+		bounds[count++] = size;
+
+		long[] result = new long[count];
+		System.arraycopy(bounds, 0, result, 0, count);
+		return result;
+	}
+
+	/**
+	 * Returns the position just after the first line break at or after the
+	 * given position, or the file's size if there is none.
+	 */
+	private static long nextLineStart(FileChannel channel, long position, ByteBuffer window) throws IOException {
+		while(true) {
+			window.clear();
+			int read = channel.read(window, position);
+			if(read < 0)
+				return channel.size();
+
+			for(int i = 0; i < read; i++) {
+				if(window.get(i) == '\n')
+					return position + i + 1;
+			}
+			position += read;
+		}
+	}
+
+	/**
+	 * The products parsed from one chunk of the file, and the errors
+	 * reported for the lines which could not be parsed.
+	 */
+	private static class Chunk {
+		private final ArrayList<Product> products = new ArrayList<Product>();
+		private final ArrayList<String> errors = new ArrayList<String>();
+	}
+
+	/**
+	 * Parses the chunks between two indexes of the chunk bounds, splitting
+	 * the work in half until a single chunk remains.
+	 */
+	private static class ParseTask extends RecursiveTask<ArrayList<Chunk>> {
+		private static final long serialVersionUID = 1L;
+
+		private final FileChannel channel;
+		private final long[] bounds;
+		private final int from;
+		private final int to;
+
+		private ParseTask(FileChannel channel, long[] bounds, int from, int to) {
+			this.channel = channel;
+			this.bounds = bounds;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected ArrayList<Chunk> compute() {
+			if(to - from > 1) {
+				int mid = (from + to) >>> 1;
+				ParseTask left = new ParseTask(channel, bounds, from, mid);
+				ParseTask right = new ParseTask(channel, bounds, mid, to);
+				left.fork();
+
+				ArrayList<Chunk> chunks = right.compute();
+				chunks.addAll(0, left.join());
+				return chunks;
+			}
+
+			ArrayList<Chunk> chunks = new ArrayList<Chunk>();
+			try {
+				chunks.add(parse(bounds[from], bounds[to]));
+			}
+			catch(IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			return chunks;
+		}
+
+		/**
+		 * Parses the lines of the file between the given positions.
+		 */
+		private Chunk parse(long start, long end) throws IOException {
+			Chunk chunk = new Chunk();
+			if(start == end)
+				return chunk;
+
+			MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+			List<Product> products = chunk.products;
+			try(RecordReader reader = new RecordReader(mapped)) {
+				while(reader.next()) {
+					//If a line cannot be parsed, it should be skipped and the process should continue.
+					try {
+						products.add(FlatFileStorageEngine.productFromRecord(reader));
+					}
+					catch(IllegalArgumentException | NullPointerException e) {
+						chunk.errors.add("Line: " + reader.line() + " could not be parsed as a product.\n"
+								+ e.getMessage());
+					}
+				}
+			}
+
+			return chunk;
+		}
+	}
+}
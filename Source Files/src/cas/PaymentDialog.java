@@ -22,6 +22,8 @@ import javax.swing.JTextField;
 import java.awt.Dialog.ModalityType;
 import java.awt.event.ActionListener;
 import java.math.BigDecimal;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 import java.awt.event.ActionEvent;
 import javax.swing.border.EtchedBorder;
 
@@ -33,20 +35,23 @@ public class PaymentDialog extends JDialog {
 	private JTextField txtSecurityCode;
 	
 	private Customer systemUser;
-	private Database db;
+	private AsyncDatabase asyncDb;
+	private BusyIndicator busyIndicator;
+	private JButton btnSubmit;
+	private JButton btnCancel;
 
 	/**
 	 * Creates a PaymentDialog.
 	 * @param systemUser The Customer whose basket is to be processed.
 	 * @param systemDatabase The database object being used by the system.
 	 */
-	public PaymentDialog(Customer systemUser, Database systemDatabase) {
+	public PaymentDialog(Customer systemUser, AsyncDatabase systemDatabase) {
 		if(systemUser == null)
 			throw new IllegalArgumentException("systemUser is null.");
 		if(systemDatabase == null)
 			throw new IllegalArgumentException("systemDatabase is null.");
 		this.systemUser = systemUser;
-		this.db = systemDatabase;
+		this.asyncDb = systemDatabase;
 		
 		setTitle("CASH - Payment");
 		setModalityType(ModalityType.APPLICATION_MODAL);
@@ -182,42 +187,62 @@ public class PaymentDialog extends JDialog {
 			JPanel buttonPane = new JPanel();
 			buttonPane.setLayout(new FlowLayout(FlowLayout.RIGHT));
 			getContentPane().add(buttonPane, BorderLayout.SOUTH);
+			
+			busyIndicator = new BusyIndicator();
+			buttonPane.add(busyIndicator);
 			{
-				JButton btnSubmit = new JButton("Submit");
+				btnSubmit = new JButton("Submit");
 				btnSubmit.addActionListener(new ActionListener() {
 					public void actionPerformed(ActionEvent e) {
 						try {
-							/* Creates and executes a PaymentMethod for each BasketEntry in systemUser's basket,
-							 * removing each BasketEntry from the basket once it has been processed.
+							/* Creates and executes a PaymentMethod for systemUser's whole basket,
+							 * emptying the basket once it has been processed.
 							 * Then display's the total price and payment method as a dialog and disposes of
 							 * this PaymentDialog.
 							 */
-							BigDecimal totalPrice = systemUser.getTotalPrice();
-							boolean usingPaypal = rdbtnPaypal.isSelected();
-							int basketSize = systemUser.basketSize();
-							
-							for(int i = 0; i < basketSize; i++) {
-								BasketEntry item = systemUser.getFromBasket(0);
-								PaymentMethod payment;
-								
-								if(usingPaypal)
-									payment = new PaypalPayment(db, systemUser, item.getProduct(),
-																item.getQuantity(), txtEmail.getText());
-								else {
-									payment = new CreditCardPayment(db, systemUser, item.getProduct(),
-																	item.getQuantity(), txtCardNumber.getText(),
-																	txtSecurityCode.getText());
-								}
-								payment.processPayment();
-								systemUser.removeAllFromBasket(0);
-							}
+							final BigDecimal totalPrice = systemUser.getTotalPrice();
+							final boolean usingPaypal = rdbtnPaypal.isSelected();
+							final PaymentMethod payment;
 							
 							if(usingPaypal)
-								showDialog("£" + totalPrice.toString() + " paid using PayPal");
-							else
-								showDialog("£" + totalPrice.toString() + " paid using Credit Card");
+								payment = new PaypalPayment(asyncDb.getDatabase(), systemUser, txtEmail.getText());
+							else {
+								payment = new CreditCardPayment(asyncDb.getDatabase(), systemUser, txtCardNumber.getText(),
+																txtSecurityCode.getText());
+							}
 							
-							dispose();
+							//The payment is processed in the background, so it cannot be submitted twice.
+							setProcessing(true);
+							CompletableFuture<Boolean> paid = asyncDb.submit(new Callable<Boolean>() {
+								public Boolean call() {
+									return payment.processPayment();
+								}
+							});
+							busyIndicator.track(paid);
+							AsyncDatabase.whenDone(paid, new AsyncDatabase.Callback<Boolean>() {
+								public void succeeded(Boolean isPaid) {
+									setProcessing(false);
+									
+									//Nothing has been purchased if the payment fails, so the basket is kept.
+									if(!isPaid) {
+										showWarning("the payment could not be completed. Your basket has not been purchased.");
+										return;
+									}
+									systemUser.emptyBasket();
+									
+									if(usingPaypal)
+										showDialog("£" + totalPrice.toString() + " paid using PayPal");
+									else
+										showDialog("£" + totalPrice.toString() + " paid using Credit Card");
+									
+									dispose();
+								}
+								
+								public void failed(Throwable cause) {
+									setProcessing(false);
+									showWarning(cause.getMessage());
+								}
+							});
 							
 						} catch (Exception ex) {
 							showWarning(ex.getMessage());
@@ -228,7 +253,7 @@ public class PaymentDialog extends JDialog {
 				getRootPane().setDefaultButton(btnSubmit);
 			}
 			{
-				JButton btnCancel = new JButton("Cancel");
+				btnCancel = new JButton("Cancel");
 				btnCancel.addActionListener(new ActionListener() {
 					public void actionPerformed(ActionEvent e) {
 						dispose();
@@ -242,6 +267,18 @@ public class PaymentDialog extends JDialog {
 		setVisible(true);
 	}
 	
+	/**
+	 * Disables the buttons and the window's close button while a payment is
+	 * being processed, so the dialog stays open until the customer has been
+	 * told whether they have paid.
+	 * @param isProcessing true while a payment is being processed.
+	 */
+	private void setProcessing(boolean isProcessing) {
+		btnSubmit.setEnabled(!isProcessing);
+		btnCancel.setEnabled(!isProcessing);
+		setDefaultCloseOperation(isProcessing ? JDialog.DO_NOTHING_ON_CLOSE : JDialog.DISPOSE_ON_CLOSE);
+	}
+	
 	/**
 	 * A general use method for displaying a warning about the user's actions.
 	 * @param message The message which describes the problem.
@@ -1,63 +1,48 @@
 /**
  * Stores immutable information about, and methods for, executing a PayPal payment
- * for a given Product and User.
+ * for the basket of a given Customer.
  * @author Joseph Marcus Tungate
  */
 package cas;
 
-import java.io.IOException;
-
 public class PaypalPayment implements PaymentMethod{
 	private Database db;
 	private Customer accountHolder;
-	private Product item;
-	private int itemQuantity;
 	private String accountEmail;
 	
 	
 	/**
 	 * Creates a PaypalPayment instance from the given parameters.
 	 * @param systemDatabase The Database object involved in this transaction.
-	 * @param accountHolder The Customer who holds the PayPal account involved in this transaction.
-	 * @param item The Product being purchased by the accountHolder.
-	 * @param itemQuantity The quantity of item being purchased by the accountHolder.
+	 * @param accountHolder The Customer who holds the PayPal account involved in this
+	 * transaction and whose basket is being purchased.
 	 * @param accountEmail The email address of accountHolder's PayPal account.
 	 */
-	public PaypalPayment(Database systemDatabase, Customer accountHolder, Product item, int itemQuantity, String accountEmail) {
+	public PaypalPayment(Database systemDatabase, Customer accountHolder, String accountEmail) {
 		if(systemDatabase == null)
 			throw new IllegalArgumentException("systemDatabase is null.");		
 		if(accountHolder == null)
 			throw new IllegalArgumentException("accountHolder is null.");
-		if(item == null)
-			throw new IllegalArgumentException("item is null.");
-		if(itemQuantity < 0 || itemQuantity > item.getQuantity())
-			throw new IllegalArgumentException("Invalid item quantity.");
 		if(!validateEmail(accountEmail)) {
 			throw new IllegalArgumentException("Invalid account email.");
 		}
 		
 		this.db = systemDatabase;
 		this.accountHolder = accountHolder;
-		this.item = item;
-		this.itemQuantity = itemQuantity;
 		this.accountEmail = accountEmail;
 	}
 	
 	/**
 	 * Attempts to carry out the transaction described by this object.
+	 * The whole basket is purchased, or nothing is if the transaction fails.
 	 * Returns true if the transaction was successful, false otherwise.
 	 * @returns true if the transaction was successful. Returns false otherwise.
 	 */
 	@Override
 	public boolean processPayment(){
 		try {
-		//Updates database to reflect purchase.
-		Inventory products = db.getProducts();
-		Product product = products.getByBarcode(this.item.getBarcode());
-		product.setQuantity(product.getQuantity() - this.itemQuantity);
-		db.writeProducts(products);
-		//Write activity log.
-		db.writeActivityLog(new ActivityLog(accountHolder, product, itemQuantity, "purchased", "PayPal"));
+		//Updates database to reflect purchase and writes the activity logs.
+		db.checkout(accountHolder, "PayPal");
 		return true;
 		} catch (Exception e) {
 			return false;
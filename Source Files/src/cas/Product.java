@@ -5,15 +5,19 @@
 
 package cas;
 import java.math.BigDecimal;
-import java.math.RoundingMode;
 
 public abstract class Product {
+	//The brands and colours of every product. Products hold only their ids.
+	public static final SymbolTable BRANDS = new SymbolTable();
+	public static final SymbolTable COLOURS = new SymbolTable();
+	
 	private final int barcode;
-	private final String brand;
-	private final String colour;
+	private final int brand;
+	private final int colour;
 	private final boolean isWired;
-	private final BigDecimal originalCost;
-	private final BigDecimal retailPrice;
+	//Prices are held in pence. See Money.
+	private final long originalCost;
+	private final long retailPrice;
 	private int quantity;
 	
 	/**
@@ -28,7 +32,27 @@ public abstract class Product {
 	 */
 	public Product(int barcode, String brand, String colour, boolean isWired,
 			BigDecimal originalCost, BigDecimal retailPrice, int quantity){
-		
+		//Prices are rounded to two decimal places. Invalid prices become -1,
+		//which the other constructor rejects.
+		this(barcode, brand, colour, isWired,
+				verifyPrice(originalCost) ? Money.fromBigDecimal(originalCost) : -1,
+				verifyPrice(retailPrice) ? Money.fromBigDecimal(retailPrice) : -1,
+				quantity);
+	}
+	
+	/**
+	 * Creates a Product instance with all its attributes specified and
+	 * its prices given in pence.
+	 * @param barcode The product's bar code.
+	 * @param brand The product's brand.
+	 * @param colour The product's colour.
+	 * @param isWired Whether the product is wired.
+	 * @param originalCost The price in pence at which the product was purchased.
+	 * @param retailPrice The price in pence at which the product is sold.
+	 * @param quantity The quantity of the product in stock.
+	 */
+	public Product(int barcode, String brand, String colour, boolean isWired,
+			long originalCost, long retailPrice, int quantity){
 		
 		//Verify the arguments.
 		if(!verifyBarcode(barcode))
@@ -44,13 +68,9 @@ public abstract class Product {
 		if(!verifyQuantity(quantity))
 			throw new IllegalArgumentException("Invalid quantity.");
 		
-		//Ensures the prices are to two decimal places.
-		originalCost = originalCost.setScale(2, RoundingMode.HALF_UP);
-		retailPrice = retailPrice.setScale(2, RoundingMode.HALF_UP);
-		
 		this.barcode = barcode;
-		this.brand = brand;
-		this.colour = colour;
+		this.brand = BRANDS.intern(brand);
+		this.colour = COLOURS.intern(colour);
 		this.isWired = isWired;
 		this.originalCost = originalCost;
 		this.retailPrice = retailPrice;
@@ -71,6 +91,15 @@ public abstract class Product {
 	 * @return The brand of the product.
 	 */
 	public String getBrand() {
+		return BRANDS.get(this.brand);
+	}
+	
+	/**
+	 * Returns the id of the product's brand in BRANDS. Products have the
+	 * same brand exactly when their brand ids are equal.
+	 * @return The id of the brand of the product.
+	 */
+	public int getBrandId() {
 		return this.brand;
 	}
 	
@@ -79,6 +108,15 @@ public abstract class Product {
 	 * @return The colour of the product.
 	 */
 	public String getColour() {
+		return COLOURS.get(this.colour);
+	}
+	
+	/**
+	 * Returns the id of the product's colour in COLOURS. Products have the
+	 * same colour exactly when their colour ids are equal.
+	 * @return The id of the colour of the product.
+	 */
+	public int getColourId() {
 		return this.colour;
 	}
 	
@@ -95,6 +133,14 @@ public abstract class Product {
 	 * @return the product's original price.
 	 */
 	public BigDecimal getOriginalCost() {
+		return Money.toBigDecimal(this.originalCost);
+	}
+	
+	/**
+	 * Returns the price in pence at which the product was bought.
+	 * @return the product's original price in pence.
+	 */
+	public long getOriginalCostPence() {
 		return this.originalCost;
 	}
 	
@@ -103,6 +149,14 @@ public abstract class Product {
 	 * @return the product's retail price.
 	 */
 	public BigDecimal getRetailPrice() {
+		return Money.toBigDecimal(this.retailPrice);
+	}
+	
+	/**
+	 * Returns the price in pence at which the product is sold.
+	 * @return the product's retail price in pence.
+	 */
+	public long getRetailPricePence() {
 		return this.retailPrice;
 	}
 	
@@ -126,6 +180,26 @@ public abstract class Product {
 	}
 	//End getters and setters.
 	
+	/**
+	 * Returns a new product with the same attributes as this product.
+	 * @return A copy of this product.
+	 */
+	public abstract Product copy();
+	
+	/**
+	 * Returns <code>true</code> if the given product has the same attributes
+	 * as this product apart from its quantity, i.e. if a change from one to
+	 * the other only changes the quantity in stock.
+	 * @param other The product to compare with this product.
+	 * @return <code>true</code> if the products differ in nothing but their quantity.
+	 */
+	public boolean isSameApartFromQuantity(Product other) {
+		return other != null && getClass() == other.getClass()
+				&& barcode == other.barcode && brand == other.brand && colour == other.colour
+				&& isWired == other.isWired && originalCost == other.originalCost
+				&& retailPrice == other.retailPrice;
+	}
+	
 	/**
 	 * Returns a String representation of the product.
 	 * @param showOriginalCost if <code>true</code> then 
@@ -138,8 +212,8 @@ public abstract class Product {
 					 "Colour: " + getColour() + ", " + 
 				     "Connection: " + 
 					 (isWired() ? "wired" : "wireless") + ", " +
-					 (showOriginalCost ? "Original Cost: " + getOriginalCost() + ", " : "") +
-					 "Retail Price: " + getRetailPrice() + ", " +
+					 (showOriginalCost ? "Original Cost: " + Money.format(getOriginalCostPence()) + ", " : "") +
+					 "Retail Price: " + Money.format(getRetailPricePence()) + ", " +
 					 "Quantity: " + getQuantity();
 		
 		return str;
@@ -202,6 +276,17 @@ public abstract class Product {
 		return price != null && price.compareTo(BigDecimal.valueOf(0)) >= 0;
 	}
 	
+	/**
+	 * Returns <code>true</code> if the provided number of pence is a valid price.
+	 * A valid price is greater than or equal to 0.
+	 * @param price The price in pence to be verified.
+	 * @return <code>true</code> if the price is valid.
+	 * <code>false</code> otherwise.
+	 */
+	public static boolean verifyPrice(long price) {
+		return price >= 0;
+	}
+	
 	/**
 	 * Returns <code>true</code> if the provided int is a valid quantity.
 	 * A valid quantity is an int greater than or equal to 0.
@@ -0,0 +1,275 @@
+/**
+ * A ProductColumns holds a sequence of products as parallel arrays of
+ * primitives, one array per attribute, rather than as Product objects. Bar
+ * codes, quantities, prices in pence, the ids of brands and colours in
+ * Product.BRANDS and Product.COLOURS, and each device's type and layout or
+ * button count sit next to those of the neighbouring products, so a scan of
+ * one attribute, such as totalling the value of the stock or finding the
+ * products which are running low, reads memory in order and never follows a
+ * reference. A Product is only created when one is asked for with get.
+ * <p>
+ * A ProductColumns is immutable. Changed copies share every array which
+ * did not change, so changing quantities copies only the quantities.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.util.Arrays;
+
+public final class ProductColumns {
+	//The kinds of product, held in kinds.
+	private static final byte KEYBOARD = 0;
+	private static final byte MOUSE = 1;
+	//The constants of each enum, so that get does not copy them each time.
+	private static final KeyboardType[] KEYBOARD_TYPES = KeyboardType.values();
+	private static final KeyboardLayout[] KEYBOARD_LAYOUTS = KeyboardLayout.values();
+	private static final MouseType[] MOUSE_TYPES = MouseType.values();
+
+	private final int size;
+	private final int[] barcodes;
+	private final int[] quantities;
+	private final long[] originalCosts;
+	private final long[] retailPrices;
+	private final int[] brands;
+	private final int[] colours;
+	private final boolean[] isWired;
+	private final byte[] kinds;
+	//The ordinal of each product's KeyboardType or MouseType.
+	private final byte[] types;
+	//The ordinal of each Keyboard's layout, or each Mouse's button count.
+	private final int[] details;
+
+	/**
+	 * Creates a ProductColumns holding the products of the given Inventory
+	 * between the given positions, in the same order.
+	 * @param products The Inventory holding the products.
+	 * @param from The position of the first product to hold.
+	 * @param to The position after the last product to hold.
+	 */
+	public ProductColumns(Inventory products, int from, int to) {
+		if(products == null)
+			throw new IllegalArgumentException("Inventory is null");
+		if(from < 0 || to > products.size() || from > to)
+			throw new IndexOutOfBoundsException(from + " to " + to + " is out of bounds.");
+
+		this.size = to - from;
+		this.barcodes = new int[size];
+		this.quantities = new int[size];
+		this.originalCosts = new long[size];
+		this.retailPrices = new long[size];
+		this.brands = new int[size];
+		this.colours = new int[size];
+		this.isWired = new boolean[size];
+		this.kinds = new byte[size];
+		this.types = new byte[size];
+		this.details = new int[size];
+
+		for(int i = 0; i < size; i++)
+			set(i, products.get(from + i));
+	}
+
+	private ProductColumns(ProductColumns columns, int size, int[] quantities) {
+		this.size = size;
+		this.barcodes = columns.barcodes;
+		this.quantities = quantities;
+		this.originalCosts = columns.originalCosts;
+		this.retailPrices = columns.retailPrices;
+		this.brands = columns.brands;
+		this.colours = columns.colours;
+		this.isWired = columns.isWired;
+		this.kinds = columns.kinds;
+		this.types = columns.types;
+		this.details = columns.details;
+	}
+
+	private ProductColumns(ProductColumns columns, int capacity) {
+		this.size = columns.size;
+		this.barcodes = Arrays.copyOf(columns.barcodes, capacity);
+		this.quantities = Arrays.copyOf(columns.quantities, capacity);
+		this.originalCosts = Arrays.copyOf(columns.originalCosts, capacity);
+		this.retailPrices = Arrays.copyOf(columns.retailPrices, capacity);
+		this.brands = Arrays.copyOf(columns.brands, capacity);
+		this.colours = Arrays.copyOf(columns.colours, capacity);
+		this.isWired = Arrays.copyOf(columns.isWired, capacity);
+		this.kinds = Arrays.copyOf(columns.kinds, capacity);
+		this.types = Arrays.copyOf(columns.types, capacity);
+		this.details = Arrays.copyOf(columns.details, capacity);
+	}
+
+	/**
+	 * Writes the attributes of the given product to the given row. Only
+	 * used while the columns are being created.
+	 */
+	private void set(int row, Product p) {
+		barcodes[row] = p.getBarcode();
+		quantities[row] = p.getQuantity();
+		originalCosts[row] = p.getOriginalCostPence();
+		retailPrices[row] = p.getRetailPricePence();
+		brands[row] = p.getBrandId();
+		colours[row] = p.getColourId();
+		isWired[row] = p.isWired();
+
+		if(p instanceof Keyboard) {
+			Keyboard k = (Keyboard)p;
+			kinds[row] = KEYBOARD;
+			types[row] = (byte)k.getType().ordinal();
+			details[row] = k.getLayout().ordinal();
+		}
+		else if(p instanceof Mouse) {
+			Mouse m = (Mouse)p;
+			kinds[row] = MOUSE;
+			types[row] = (byte)m.getType().ordinal();
+			details[row] = m.getButtonCount();
+		}
+		else
+			throw new IllegalArgumentException(p.getClass().getSimpleName() + " cannot be held in columns.");
+	}
+
+	//Methods for reading the columns.
+	/**
+	 * Returns the number of products held.
+	 * @return The number of products held.
+	 */
+	public int size() {
+		return this.size;
+	}
+
+	/**
+	 * Returns a new Product with the attributes of the product in the given
+	 * row. Changes to it do not affect the columns.
+	 * @param row The position of the product.
+	 * @return A new Product made from the row.
+	 */
+	public Product get(int row) {
+		checkRow(row);
+
+		String brand = Product.BRANDS.get(brands[row]);
+		String colour = Product.COLOURS.get(colours[row]);
+		if(kinds[row] == KEYBOARD)
+			return new Keyboard(barcodes[row], brand, colour, isWired[row],
+					KEYBOARD_TYPES[types[row]], KEYBOARD_LAYOUTS[details[row]],
+					originalCosts[row], retailPrices[row], quantities[row]);
+
+		return new Mouse(barcodes[row], brand, colour, isWired[row],
+				MOUSE_TYPES[types[row]], details[row],
+				originalCosts[row], retailPrices[row], quantities[row]);
+	}
+
+	/**
+	 * Returns the bar code of the product in the given row.
+	 * @param row The position of the product.
+	 * @return The bar code of the product.
+	 */
+	public int getBarcode(int row) {
+		checkRow(row);
+		return barcodes[row];
+	}
+
+	/**
+	 * Returns the quantity in stock of the product in the given row.
+	 * @param row The position of the product.
+	 * @return The quantity of the product.
+	 */
+	public int getQuantity(int row) {
+		checkRow(row);
+		return quantities[row];
+	}
+
+	private void checkRow(int row) {
+		if(row < 0 || row >= size)
+			throw new IndexOutOfBoundsException(row + "is out of bounds.");
+	}
+	//End methods for reading the columns.
+
+	//Methods for scanning every product.
+	/**
+	 * Returns the total retail price in pence of every product in stock,
+	 * i.e. each product's retail price multiplied by its quantity.
+	 * @return The retail value of the stock in pence.
+	 * @throws ArithmeticException Thrown if the value does not fit in a long.
+	 */
+	public long retailValue() {
+		long total = 0;
+		for(int i = 0; i < size; i++)
+			total = Math.addExact(total, Math.multiplyExact(retailPrices[i], (long)quantities[i]));
+		return total;
+	}
+
+	/**
+	 * Returns the total original cost in pence of every product in stock.
+	 * @return The original cost of the stock in pence.
+	 * @throws ArithmeticException Thrown if the cost does not fit in a long.
+	 */
+	public long originalCost() {
+		long total = 0;
+		for(int i = 0; i < size; i++)
+			total = Math.addExact(total, Math.multiplyExact(originalCosts[i], (long)quantities[i]));
+		return total;
+	}
+
+	/**
+	 * Writes the rows of the products whose quantity is at most the given
+	 * threshold into the given array, after the given number of rows
+	 * already in it, each offset by the given amount.
+	 * @param threshold The greatest quantity of a product which is running low.
+	 * @param rows The array to write the rows into. It must have room for every row.
+	 * @param count The number of rows already in the array.
+	 * @param offset The amount added to each row written.
+	 * @return The number of rows in the array afterwards.
+	 */
+	int lowStock(int threshold, int[] rows, int count, int offset) {
+		for(int i = 0; i < size; i++) {
+			if(quantities[i] <= threshold)
+				rows[count++] = offset + i;
+		}
+		return count;
+	}
+
+	/**
+	 * Writes the quantity of each product into the given array, starting
+	 * at the given position.
+	 * @param into The array to write the quantities into.
+	 * @param offset The position of the first product's quantity.
+	 */
+	void copyQuantities(int[] into, int offset) {
+		System.arraycopy(quantities, 0, into, offset, size);
+	}
+	//End methods for scanning every product.
+
+	//Methods for making changed columns.
+	/**
+	 * Returns columns in which the products in the given rows have the given
+	 * quantities. Only the quantities are copied; every other column is shared.
+	 * @param rows The positions of the products.
+	 * @param newQuantities The new quantity of each product.
+	 * @return The changed columns.
+	 */
+	public ProductColumns withQuantities(int[] rows, int[] newQuantities) {
+		if(rows == null || newQuantities == null || rows.length != newQuantities.length)
+			throw new IllegalArgumentException("Rows and quantities do not match");
+
+		int[] changed = Arrays.copyOf(quantities, quantities.length);
+		for(int i = 0; i < rows.length; i++) {
+			checkRow(rows[i]);
+			if(!Product.verifyQuantity(newQuantities[i]))
+				throw new IllegalArgumentException("Invalid quantity");
+			changed[rows[i]] = newQuantities[i];
+		}
+		return new ProductColumns(this, size, changed);
+	}
+
+	/**
+	 * Returns columns holding these products followed by the given product.
+	 * @param product The product to add.
+	 * @return The changed columns.
+	 */
+	public ProductColumns withProduct(Product product) {
+		if(product == null)
+			throw new IllegalArgumentException("null is not a valid Product");
+
+		ProductColumns grown = new ProductColumns(this, size + 1);
+		grown.set(size, product);
+		return new ProductColumns(grown, size + 1, grown.quantities);
+	}
+	//End methods for making changed columns.
+}
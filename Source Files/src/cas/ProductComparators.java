@@ -0,0 +1,122 @@
+/**
+ * ProductComparators holds the orderings by which Products can be sorted.
+ * Orderings can be combined, e.g. <code>BY_BRAND.thenComparing(BY_PRICE)</code>
+ * or <code>ProductComparators.of(BY_BRAND, BY_PRICE)</code>.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+
+public final class ProductComparators {
+	/**
+	 * Orders products by quantity in stock in descending order.
+	 */
+	public static final Comparator<Product> BY_QUANTITY = new Comparator<Product>() {
+		public int compare(Product a, Product b) {
+			return Integer.compare(b.getQuantity(), a.getQuantity());
+		}
+	};
+
+	/**
+	 * Orders products by bar code in descending order.
+	 */
+	public static final Comparator<Product> BY_BARCODE = new Comparator<Product>() {
+		public int compare(Product a, Product b) {
+			return Integer.compare(b.getBarcode(), a.getBarcode());
+		}
+	};
+
+	/**
+	 * Orders products by retail price in ascending order.
+	 */
+	public static final Comparator<Product> BY_PRICE = new Comparator<Product>() {
+		public int compare(Product a, Product b) {
+			return Long.compare(a.getRetailPricePence(), b.getRetailPricePence());
+		}
+	};
+
+	/**
+	 * Orders products alphabetically by brand, ignoring case.
+	 */
+	public static final Comparator<Product> BY_BRAND = new Comparator<Product>() {
+		public int compare(Product a, Product b) {
+			return a.getBrand().compareToIgnoreCase(b.getBrand());
+		}
+	};
+
+	private ProductComparators() {
+	}
+
+	/**
+	 * Returns an ordering which puts the products closest to the given search
+	 * text first, then those with the most in stock. A product's distance is
+	 * the total, over the words of the text, of the edit distance from each
+	 * word to the product's brand or colour, whichever is closer, ignoring
+	 * case. Distances are remembered for each brand and colour id, so sorting
+	 * computes each only once; the ordering should not be shared between threads.
+	 * @param text The search text, e.g. as given to ProductQuery.fuzzy.
+	 * @return An ordering by closeness to the text, then by quantity.
+	 */
+	public static Comparator<Product> byRelevance(String text) {
+		if(text == null)
+			throw new IllegalArgumentException("Text is null.");
+
+		String trimmed = text.trim().toLowerCase(Locale.ROOT);
+		String[] words = trimmed.length() == 0 ? new String[0] : trimmed.split("\\s+");
+		HashMap<Integer, int[]> brandDistances = new HashMap<Integer, int[]>();
+		HashMap<Integer, int[]> colourDistances = new HashMap<Integer, int[]>();
+
+		Comparator<Product> byDistance = new Comparator<Product>() {
+			public int compare(Product a, Product b) {
+				return Integer.compare(distance(a), distance(b));
+			}
+
+			private int distance(Product p) {
+				int[] brand = distancesTo(Product.BRANDS, p.getBrandId(), brandDistances);
+				int[] colour = distancesTo(Product.COLOURS, p.getColourId(), colourDistances);
+				int total = 0;
+				for(int i = 0; i < words.length; i++)
+					total += Math.min(brand[i], colour[i]);
+				return total;
+			}
+
+			/**
+			 * Returns the distance from each word to the term with the given id
+			 * in the given table, remembering it in the given map.
+			 */
+			private int[] distancesTo(SymbolTable table, int id, HashMap<Integer, int[]> distances) {
+				int[] d = distances.get(id);
+				if(d == null) {
+					d = new int[words.length];
+					String key = table.get(id).toLowerCase(Locale.ROOT);
+					for(int i = 0; i < words.length; i++)
+						d[i] = BKTree.distance(words[i], key);
+					distances.put(id, d);
+				}
+				return d;
+			}
+		};
+		return byDistance.thenComparing(BY_QUANTITY);
+	}
+
+	/**
+	 * Returns an ordering which sorts by each of the given orderings in turn,
+	 * using later orderings only to break ties in earlier ones.
+	 * @param orderings The orderings to combine, most significant first.
+	 * @return The combined ordering.
+	 */
+	@SafeVarargs
+	public static Comparator<Product> of(Comparator<Product>... orderings) {
+		if(orderings == null || orderings.length == 0)
+			throw new IllegalArgumentException("No orderings were given.");
+
+		Comparator<Product> combined = orderings[0];
+		for(int i = 1; i < orderings.length; i++)
+			combined = combined.thenComparing(orderings[i]);
+
+		return combined;
+	}
+}
@@ -0,0 +1,449 @@
+/**
+ * A ProductQuery is a condition which a Product either matches or does not.
+ * Queries are created by the static methods of this interface and can be
+ * combined with and, or and negate, e.g.
+ * <code>ProductQuery.brand("Logitech").and(ProductQuery.inStock())</code>.
+ * Queries on categorical attributes can also be answered from a FacetIndex,
+ * which avoids testing every product in an Inventory.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.BitSet;
+import java.util.Locale;
+
+public interface ProductQuery {
+	/**
+	 * Returns true if the given Product matches this query.
+	 * @param product The Product to test.
+	 * @return true if the Product matches this query. Returns false otherwise.
+	 */
+	public boolean matches(Product product);
+
+	/**
+	 * Returns a bitmap of exactly the products in the given index which match
+	 * this query, or null if this query cannot be answered from the index.
+	 * @param index The FacetIndex of the Inventory being searched.
+	 * @return A new bitmap of the matching products, or null.
+	 */
+	public default BitSet select(FacetIndex index) {
+		return null;
+	}
+
+	/**
+	 * Returns a bitmap of the products in the given index which may match this
+	 * query, i.e. every matching product and possibly some others, or null if
+	 * every product may match.
+	 * @param index The FacetIndex of the Inventory being searched.
+	 * @return A new bitmap of the candidate products, or null.
+	 */
+	public default BitSet candidates(FacetIndex index) {
+		return select(index);
+	}
+
+	/**
+	 * Returns a query which matches Products matching both this query and the other.
+	 * @param other The other query.
+	 * @return A query matching Products which match both queries.
+	 */
+	public default ProductQuery and(ProductQuery other) {
+		if(other == null)
+			throw new IllegalArgumentException("Query is null.");
+
+		ProductQuery self = this;
+		return new ProductQuery() {
+			public boolean matches(Product product) {
+				return self.matches(product) && other.matches(product);
+			}
+
+			public BitSet select(FacetIndex index) {
+				BitSet a = self.select(index);
+				BitSet b = a == null ? null : other.select(index);
+				if(b == null)
+					return null;
+				a.and(b);
+				return a;
+			}
+
+			public BitSet candidates(FacetIndex index) {
+				BitSet a = self.candidates(index);
+				BitSet b = other.candidates(index);
+				if(a == null)
+					return b;
+				if(b != null)
+					a.and(b);
+				return a;
+			}
+		};
+	}
+
+	/**
+	 * Returns a query which matches Products matching either this query or the other.
+	 * @param other The other query.
+	 * @return A query matching Products which match either query.
+	 */
+	public default ProductQuery or(ProductQuery other) {
+		if(other == null)
+			throw new IllegalArgumentException("Query is null.");
+
+		ProductQuery self = this;
+		return new ProductQuery() {
+			public boolean matches(Product product) {
+				return self.matches(product) || other.matches(product);
+			}
+
+			public BitSet select(FacetIndex index) {
+				BitSet a = self.select(index);
+				BitSet b = a == null ? null : other.select(index);
+				if(b == null)
+					return null;
+				a.or(b);
+				return a;
+			}
+
+			public BitSet candidates(FacetIndex index) {
+				BitSet a = self.candidates(index);
+				BitSet b = a == null ? null : other.candidates(index);
+				if(b == null)
+					return null;
+				a.or(b);
+				return a;
+			}
+		};
+	}
+
+	/**
+	 * Returns a query which matches Products that do not match this query.
+	 * @return A query matching Products which do not match this query.
+	 */
+	public default ProductQuery negate() {
+		ProductQuery self = this;
+		return new ProductQuery() {
+			public boolean matches(Product product) {
+				return !self.matches(product);
+			}
+
+			public BitSet select(FacetIndex index) {
+				BitSet a = self.select(index);
+				if(a != null)
+					a.flip(0, index.size());
+				return a;
+			}
+		};
+	}
+
+	//Methods for creating queries.
+	/**
+	 * Returns a query which matches every Product.
+	 * @return A query which matches every Product.
+	 */
+	public static ProductQuery all() {
+		return new ProductQuery() {
+			public boolean matches(Product product) {
+				return true;
+			}
+
+			public BitSet select(FacetIndex index) {
+				return index.all();
+			}
+		};
+	}
+
+	/**
+	 * Returns a query which matches Products of the given brand, ignoring case.
+	 * @param brand The brand to match.
+	 * @return A query matching Products of the given brand.
+	 */
+	public static ProductQuery brand(String brand) {
+		if(brand == null)
+			throw new IllegalArgumentException("Brand is null.");
+
+		String key = FacetIndex.key(brand);
+		return new ProductQuery() {
+			public boolean matches(Product product) {
+				return FacetIndex.key(product.getBrand()).equals(key);
+			}
+
+			public BitSet select(FacetIndex index) {
+				return index.brand(brand);
+			}
+		};
+	}
+
+	/**
+	 * Returns a query which matches Products of the given colour, ignoring case.
+	 * @param colour The colour to match.
+	 * @return A query matching Products of the given colour.
+	 */
+	public static ProductQuery colour(String colour) {
+		if(colour == null)
+			throw new IllegalArgumentException("Colour is null.");
+
+		String key = FacetIndex.key(colour);
+		return new ProductQuery() {
+			public boolean matches(Product product) {
+				return FacetIndex.key(product.getColour()).equals(key);
+			}
+
+			public BitSet select(FacetIndex index) {
+				return index.colour(colour);
+			}
+		};
+	}
+
+	/**
+	 * Returns a query which matches Products whose brand starts with the
+	 * given prefix, ignoring case.
+	 * @param prefix The start of the brand to match.
+	 * @return A query matching Products whose brand has the prefix.
+	 */
+	public static ProductQuery brandPrefix(String prefix) {
+		if(prefix == null)
+			throw new IllegalArgumentException("Prefix is null.");
+
+		String key = FacetIndex.key(prefix);
+		return new ProductQuery() {
+			public boolean matches(Product product) {
+				return FacetIndex.key(product.getBrand()).startsWith(key);
+			}
+
+			public BitSet select(FacetIndex index) {
+				return index.brandPrefix(prefix);
+			}
+		};
+	}
+
+	/**
+	 * Returns a query which matches Products whose colour starts with the
+	 * given prefix, ignoring case.
+	 * @param prefix The start of the colour to match.
+	 * @return A query matching Products whose colour has the prefix.
+	 */
+	public static ProductQuery colourPrefix(String prefix) {
+		if(prefix == null)
+			throw new IllegalArgumentException("Prefix is null.");
+
+		String key = FacetIndex.key(prefix);
+		return new ProductQuery() {
+			public boolean matches(Product product) {
+				return FacetIndex.key(product.getColour()).startsWith(key);
+			}
+
+			public BitSet select(FacetIndex index) {
+				return index.colourPrefix(prefix);
+			}
+		};
+	}
+
+	/**
+	 * Returns a query which matches Products whose brand or colour starts
+	 * with each word of the given text, ignoring case, e.g. "log bl" matches
+	 * black Logitech products. Text with no words matches every Product.
+	 * Adding to the end of the text only ever narrows the matches.
+	 * @param text The words to match, separated by spaces.
+	 * @return A query matching Products with every word.
+	 */
+	public static ProductQuery search(String text) {
+		if(text == null)
+			throw new IllegalArgumentException("Text is null.");
+
+		ProductQuery query = all();
+		for(String word : text.trim().split("\\s+")) {
+			if(word.length() > 0)
+				query = query.and(brandPrefix(word).or(colourPrefix(word)));
+		}
+		return query;
+	}
+
+	/**
+	 * Returns a query which matches Products whose brand or colour is close
+	 * to each word of the given text, ignoring case, so that misspelt words
+	 * such as "Logitec" still match. A word matches a brand or colour within
+	 * maxEdits(word) edits of it. Text with no words matches every Product.
+	 * @param text The words to match, separated by spaces.
+	 * @return A query matching Products with a brand or colour close to every word.
+	 */
+	public static ProductQuery fuzzy(String text) {
+		if(text == null)
+			throw new IllegalArgumentException("Text is null.");
+
+		ProductQuery query = all();
+		for(String word : text.trim().toLowerCase(Locale.ROOT).split("\\s+")) {
+			if(word.length() == 0)
+				continue;
+
+			int maxDistance = maxEdits(word);
+			query = query.and(new ProductQuery() {
+				public boolean matches(Product product) {
+					return BKTree.distance(word, FacetIndex.key(product.getBrand()), maxDistance) <= maxDistance
+							|| BKTree.distance(word, FacetIndex.key(product.getColour()), maxDistance) <= maxDistance;
+				}
+
+				public BitSet select(FacetIndex index) {
+					BitSet result = index.brandNear(word, maxDistance);
+					result.or(index.colourNear(word, maxDistance));
+					return result;
+				}
+			});
+		}
+		return query;
+	}
+
+	/**
+	 * Returns the number of edits allowed between the given word and a brand
+	 * or colour which fuzzy matches it. Short words allow fewer edits, as
+	 * otherwise they would match almost anything.
+	 * @param word The word being searched for.
+	 * @return 0 for words of up to 2 characters, 1 for up to 5 and 2 for longer words.
+	 */
+	public static int maxEdits(String word) {
+		if(word.length() <= 2)
+			return 0;
+		return word.length() <= 5 ? 1 : 2;
+	}
+
+	/**
+	 * Returns a query which matches Products of the given device class,
+	 * e.g. <code>Keyboard.class</code>.
+	 * @param deviceClass The Product subclass to match.
+	 * @return A query matching Products of the given device class.
+	 */
+	public static ProductQuery deviceClass(Class<? extends Product> deviceClass) {
+		if(deviceClass == null)
+			throw new IllegalArgumentException("Device class is null.");
+
+		return new ProductQuery() {
+			public boolean matches(Product product) {
+				return deviceClass.isInstance(product);
+			}
+
+			public BitSet select(FacetIndex index) {
+				return index.deviceClass(deviceClass);
+			}
+		};
+	}
+
+	/**
+	 * Returns a query which matches Keyboards of the given type.
+	 * @param type The KeyboardType to match.
+	 * @return A query matching Keyboards of the given type.
+	 */
+	public static ProductQuery type(KeyboardType type) {
+		return new ProductQuery() {
+			public boolean matches(Product product) {
+				return product instanceof Keyboard && ((Keyboard)product).getType() == type;
+			}
+
+			public BitSet select(FacetIndex index) {
+				return index.type(type);
+			}
+		};
+	}
+
+	/**
+	 * Returns a query which matches Mice of the given type.
+	 * @param type The MouseType to match.
+	 * @return A query matching Mice of the given type.
+	 */
+	public static ProductQuery type(MouseType type) {
+		return new ProductQuery() {
+			public boolean matches(Product product) {
+				return product instanceof Mouse && ((Mouse)product).getType() == type;
+			}
+
+			public BitSet select(FacetIndex index) {
+				return index.type(type);
+			}
+		};
+	}
+
+	/**
+	 * Returns a query which matches Products that are wired, or Products that
+	 * are wireless.
+	 * @param isWired If true, wired Products are matched. Otherwise wireless
+	 * Products are matched.
+	 * @return A query matching Products by connectivity.
+	 */
+	public static ProductQuery wired(boolean isWired) {
+		return new ProductQuery() {
+			public boolean matches(Product product) {
+				return product.isWired() == isWired;
+			}
+
+			public BitSet select(FacetIndex index) {
+				return index.wired(isWired);
+			}
+		};
+	}
+
+	/**
+	 * Returns a query which matches Keyboards of the given layout.
+	 * @param layout The KeyboardLayout to match.
+	 * @return A query matching Keyboards of the given layout.
+	 */
+	public static ProductQuery layout(KeyboardLayout layout) {
+		return new ProductQuery() {
+			public boolean matches(Product product) {
+				return product instanceof Keyboard && ((Keyboard)product).getLayout() == layout;
+			}
+
+			public BitSet select(FacetIndex index) {
+				return index.layout(layout);
+			}
+		};
+	}
+
+	/**
+	 * Returns a query which matches Mice with the given number of buttons.
+	 * @param buttonCount The number of buttons to match.
+	 * @return A query matching Mice with the given number of buttons.
+	 */
+	public static ProductQuery buttonCount(int buttonCount) {
+		return new ProductQuery() {
+			public boolean matches(Product product) {
+				return product instanceof Mouse && ((Mouse)product).getButtonCount() == buttonCount;
+			}
+
+			public BitSet select(FacetIndex index) {
+				return index.buttonCount(buttonCount);
+			}
+		};
+	}
+
+	/**
+	 * Returns a query which matches Products whose retail price is within the
+	 * given range, inclusive.
+	 * @param min The lowest retail price to match.
+	 * @param max The highest retail price to match.
+	 * @return A query matching Products within the price range.
+	 */
+	public static ProductQuery priceRange(BigDecimal min, BigDecimal max) {
+		if(min == null || max == null)
+			throw new IllegalArgumentException("Price is null.");
+
+		//Prices are whole pence, so rounding the bounds inwards keeps the same matches.
+		long minPence = Money.fromBigDecimal(min, RoundingMode.CEILING);
+		long maxPence = Money.fromBigDecimal(max, RoundingMode.FLOOR);
+		return new ProductQuery() {
+			public boolean matches(Product product) {
+				long price = product.getRetailPricePence();
+				return price >= minPence && price <= maxPence;
+			}
+		};
+	}
+
+	/**
+	 * Returns a query which matches Products with at least one in stock.
+	 * @return A query matching Products which are in stock.
+	 */
+	public static ProductQuery inStock() {
+		return new ProductQuery() {
+			public boolean matches(Product product) {
+				return product.getQuantity() > 0;
+			}
+		};
+	}
+	//End methods for creating queries.
+}
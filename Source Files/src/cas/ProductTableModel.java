@@ -0,0 +1,173 @@
+/**
+ * A ProductTableModel shows the products of an InventoryView in a JTable.
+ * Cells are read from the products when the table asks for them, so only
+ * the rows on screen are ever turned into text, and the rows are the
+ * view's own positions, so sorting reorders them without copying any
+ * product. A change to one product updates only its row.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.util.Comparator;
+
+import javax.swing.table.AbstractTableModel;
+
+public class ProductTableModel extends AbstractTableModel {
+	private static final long serialVersionUID = 1L;
+
+	//The columns which can be shown.
+	static final int BARCODE = 0;
+	static final int NAME = 1;
+	static final int TYPE = 2;
+	static final int BRAND = 3;
+	static final int COLOUR = 4;
+	static final int CONNECTIVITY = 5;
+	static final int QUANTITY = 6;
+	static final int ORIGINAL_COST = 7;
+	static final int RETAIL_PRICE = 8;
+	static final int ADDITIONAL_INFORMATION = 9;
+
+	private static final String[] COLUMN_NAMES = {"Barcode", "Name", "Type", "Brand", "Colour",
+			"Connectivity", "Quantity", "Original Cost", "Retail Price", "Additional Information"};
+	private static final int[] CUSTOMER_COLUMNS = {BARCODE, NAME, TYPE, BRAND, COLOUR,
+			CONNECTIVITY, QUANTITY, RETAIL_PRICE, ADDITIONAL_INFORMATION};
+	private static final int[] ADMIN_COLUMNS = {BARCODE, NAME, TYPE, BRAND, COLOUR,
+			CONNECTIVITY, QUANTITY, ORIGINAL_COST, RETAIL_PRICE, ADDITIONAL_INFORMATION};
+
+	private final int[] columns;
+	private InventoryView view;
+	//Maps the bar code of each product in the view to its row. Built when first needed.
+	private BarcodeIndex rows;
+
+	/**
+	 * Creates a ProductTableModel with no rows.
+	 * @param showOriginalCost If true, the original cost of each product is shown.
+	 */
+	public ProductTableModel(boolean showOriginalCost) {
+		this.columns = showOriginalCost ? ADMIN_COLUMNS : CUSTOMER_COLUMNS;
+	}
+
+	/**
+	 * Shows the products of the given view, in its order.
+	 * @param view The products to show, or null to show none.
+	 */
+	public void setView(InventoryView view) {
+		this.view = view;
+		this.rows = null;
+		fireTableDataChanged();
+	}
+
+	/**
+	 * Returns the view being shown.
+	 * @return The view being shown, or null if there is none.
+	 */
+	public InventoryView getView() {
+		return this.view;
+	}
+
+	/**
+	 * Returns the product shown in the given row.
+	 * @param row The row of the product.
+	 * @return The product shown in the row.
+	 */
+	public Product getProductAt(int row) {
+		return view.get(row);
+	}
+
+	/**
+	 * Sorts the rows by the given ordering. Only the view's positions are
+	 * reordered.
+	 * @param ordering The ordering by which to sort, e.g. one of ProductComparators.
+	 */
+	public void sort(Comparator<? super Product> ordering) {
+		if(view == null)
+			return;
+
+		view.sort(ordering);
+		this.rows = null;
+		fireTableDataChanged();
+	}
+
+	/**
+	 * Tells the table that the product with the given bar code has changed,
+	 * so that its row is drawn again.
+	 * @param barcode The bar code of the product which changed.
+	 */
+	public void productChanged(int barcode) {
+		int row = rowOf(barcode);
+		if(row != -1)
+			fireTableRowsUpdated(row, row);
+	}
+
+	/**
+	 * Returns the row showing the product with the given bar code.
+	 * @param barcode The bar code of the product.
+	 * @return The row of the product, or -1 if it is not shown.
+	 */
+	public int rowOf(int barcode) {
+		if(view == null)
+			return -1;
+
+		if(rows == null) {
+			rows = new BarcodeIndex(view.size());
+			for(int i = 0; i < view.size(); i++)
+				rows.put(view.get(i).getBarcode(), i);
+		}
+		return rows.get(barcode);
+	}
+
+	@Override
+	public int getRowCount() {
+		return view == null ? 0 : view.size();
+	}
+
+	@Override
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return COLUMN_NAMES[columns[column]];
+	}
+
+	@Override
+	public Object getValueAt(int row, int column) {
+		return valueOf(view.get(row), columns[column]);
+	}
+
+	/**
+	 * Returns the text shown for the given product in the given column,
+	 * which is one of the column constants.
+	 */
+	static Object valueOf(Product p, int column) {
+		switch(column) {
+		case BARCODE:
+			return p.getBarcode();
+		case NAME:
+			return p instanceof Keyboard ? "Keyboard" : p instanceof Mouse ? "Mouse" : "";
+		case TYPE:
+			if(p instanceof Keyboard)
+				return ((Keyboard)p).getType();
+			return p instanceof Mouse ? ((Mouse)p).getType() : "";
+		case BRAND:
+			return p.getBrand();
+		case COLOUR:
+			return p.getColour();
+		case CONNECTIVITY:
+			return p.isWired() ? "wired" : "wireless";
+		case QUANTITY:
+			return p.getQuantity();
+		case ORIGINAL_COST:
+			return "£" + p.getOriginalCost();
+		case RETAIL_PRICE:
+			return "£" + p.getRetailPrice();
+		case ADDITIONAL_INFORMATION:
+			if(p instanceof Keyboard)
+				return ((Keyboard)p).getLayout().toString() + " layout";
+			return p instanceof Mouse ? ((Mouse)p).getButtonCount() + " buttons" : "";
+		default:
+			throw new IndexOutOfBoundsException(column + "is out of bounds.");
+		}
+	}
+}
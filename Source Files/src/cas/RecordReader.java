@@ -0,0 +1,431 @@
+/**
+ * A RecordReader reads the lines of a database file, such as the stock file,
+ * and splits each line into the fields separated by ", ". Lines are read as
+ * bytes into a reusable buffer and fields are parsed in place, so reading a
+ * line creates no Strings except for text fields, which are shared between
+ * lines with the same value. The reader is also a CharSequence holding the
+ * current line, so a field can be passed to methods such as Money.parse.
+ * Lines can be read from a stream or from a ByteBuffer, such as part of a
+ * memory mapped file.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+public class RecordReader implements CharSequence, Closeable {
+	private static final int BUFFER_SIZE = 64 * 1024;
+	private static final int STRING_CACHE_SIZE = 512;
+
+	//Lines are read from either in or source.
+	private final InputStream in;
+	private final ByteBuffer source;
+	private byte[] buffer;
+	private int position;
+	private int limit;
+	private boolean isEndOfInput;
+
+	//The current line, as positions in buffer.
+	private int lineStart;
+	private int lineEnd;
+	private int fieldCount;
+	private int[] fieldStarts;
+	private int[] fieldEnds;
+
+	//Recently read text fields, so that repeated values share one String.
+	private final byte[][] cachedBytes;
+	private final String[] cachedStrings;
+
+	/**
+	 * Creates a RecordReader which reads lines from the given stream.
+	 * @param in The stream to read from. It is closed when the reader is closed.
+	 */
+	public RecordReader(InputStream in) {
+		if(in == null)
+			throw new IllegalArgumentException("Input stream is null");
+
+		this.in = in;
+		this.source = null;
+		this.buffer = new byte[BUFFER_SIZE];
+		this.fieldStarts = new int[16];
+		this.fieldEnds = new int[16];
+		this.cachedBytes = new byte[STRING_CACHE_SIZE][];
+		this.cachedStrings = new String[STRING_CACHE_SIZE];
+	}
+
+	/**
+	 * Creates a RecordReader which reads lines from the remaining bytes of
+	 * the given buffer.
+	 * @param source The buffer to read from. Its position is advanced as it is read.
+	 */
+	public RecordReader(ByteBuffer source) {
+		if(source == null)
+			throw new IllegalArgumentException("Source buffer is null");
+
+		this.in = null;
+		this.source = source;
+		this.buffer = new byte[Math.max(16, Math.min(BUFFER_SIZE, source.remaining()))];
+		this.fieldStarts = new int[16];
+		this.fieldEnds = new int[16];
+		this.cachedBytes = new byte[STRING_CACHE_SIZE][];
+		this.cachedStrings = new String[STRING_CACHE_SIZE];
+	}
+
+	/**
+	 * Moves to the next line and splits it into fields. A line ends with
+	 * "\n" or "\r\n".
+	 * @return true if a line was read. Returns false if no lines remain.
+	 * @throws IOException Thrown if the stream cannot be read.
+	 */
+	public boolean next() throws IOException {
+		int newline;
+		//The number of bytes after position already searched for a newline.
+		int scanned = 0;
+
+		//Read more of the stream until the buffer holds a whole line.
+		while((newline = indexOf((byte)'\n', position + scanned, limit)) < 0) {
+			if(isEndOfInput) {
+				if(position == limit)
+					return false;
+				newline = limit;
+				break;
+			}
+			scanned = limit - position;
+			fill();
+		}
+
+		lineStart = position;
+		lineEnd = newline;
+		if(lineEnd > lineStart && buffer[lineEnd - 1] == '\r')
+			lineEnd--;
+		position = Math.min(newline + 1, limit);
+
+		split();
+		return true;
+	}
+
+	/**
+	 * Moves the unread part of the buffer to its start, growing the buffer if
+	 * it is full, and reads as much of the input as fits after it.
+	 */
+	private void fill() throws IOException {
+		int remaining = limit - position;
+		if(remaining == buffer.length)
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+
+		System.arraycopy(buffer, position, buffer, 0, remaining);
+		position = 0;
+		limit = remaining;
+
+		int read;
+		if(source != null) {
+			read = Math.min(source.remaining(), buffer.length - limit);
+			source.get(buffer, limit, read);
+			if(read == 0)
+				read = -1;
+		}
+		else
+			read = in.read(buffer, limit, buffer.length - limit);
+
+		if(read < 0)
+			isEndOfInput = true;
+		else
+			limit += read;
+	}
+
+	/**
+	 * Records the positions of the fields of the current line.
+	 */
+	private void split() {
+		fieldCount = 0;
+		int start = lineStart;
+
+		for(int i = lineStart; i < lineEnd - 1; i++) {
+			if(buffer[i] == ',' && buffer[i + 1] == ' ') {
+				addField(start, i);
+				start = i + 2;
+				i++;
+			}
+		}
+		addField(start, lineEnd);
+	}
+
+	private void addField(int start, int end) {
+		if(fieldCount == fieldStarts.length) {
+			fieldStarts = Arrays.copyOf(fieldStarts, fieldCount * 2);
+			fieldEnds = Arrays.copyOf(fieldEnds, fieldCount * 2);
+		}
+		fieldStarts[fieldCount] = start;
+		fieldEnds[fieldCount] = end;
+		fieldCount++;
+	}
+
+	private int indexOf(byte b, int from, int to) {
+		for(int i = from; i < to; i++) {
+			if(buffer[i] == b)
+				return i;
+		}
+		return -1;
+	}
+
+	//Methods for reading the fields of the current line.
+	/**
+	 * Returns the number of fields in the current line.
+	 * @return The number of fields in the current line.
+	 */
+	public int fieldCount() {
+		return this.fieldCount;
+	}
+
+	/**
+	 * Returns the position within the current line at which the given field starts.
+	 * @param field The index of the field.
+	 * @return The position of the field's first character.
+	 */
+	public int fieldStart(int field) {
+		checkField(field);
+		return fieldStarts[field] - lineStart;
+	}
+
+	/**
+	 * Returns the position within the current line at which the given field ends.
+	 * @param field The index of the field.
+	 * @return The position after the field's last character.
+	 */
+	public int fieldEnd(int field) {
+		checkField(field);
+		return fieldEnds[field] - lineStart;
+	}
+
+	/**
+	 * Returns true if the given field is exactly the given text.
+	 * @param field The index of the field.
+	 * @param text The text to compare with. Only ASCII text can match.
+	 * @return true if the field is the text. Returns false otherwise.
+	 */
+	public boolean fieldEquals(int field, String text) {
+		checkField(field);
+		int start = fieldStarts[field];
+		if(fieldEnds[field] - start != text.length())
+			return false;
+
+		for(int i = 0; i < text.length(); i++) {
+			if(buffer[start + i] != text.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Parses the given field as a decimal int, as Integer.parseInt would.
+	 * @param field The index of the field.
+	 * @return The int held by the field.
+	 * @throws NumberFormatException Thrown if the field is not an int.
+	 */
+	public int parseInt(int field) {
+		checkField(field);
+		int i = fieldStarts[field];
+		int end = fieldEnds[field];
+
+		boolean isNegative = false;
+		if(i < end && (buffer[i] == '-' || buffer[i] == '+')) {
+			isNegative = buffer[i] == '-';
+			i++;
+		}
+		if(i == end)
+			throw numberFormatException(field);
+
+		//Accumulate negatively so that Integer.MIN_VALUE can be parsed.
+		int limit = isNegative ? Integer.MIN_VALUE : -Integer.MAX_VALUE;
+		int result = 0;
+		for(; i < end; i++) {
+			int digit = buffer[i] - '0';
+			if(digit < 0 || digit > 9)
+				throw numberFormatException(field);
+			if(result < (limit + digit) / 10)
+				throw numberFormatException(field);
+			result = result * 10 - digit;
+		}
+
+		return isNegative ? result : -result;
+	}
+
+	/**
+	 * Parses the given field as an amount of pounds, as Money.parse would.
+	 * @param field The index of the field.
+	 * @return The amount in pence.
+	 * @throws NumberFormatException Thrown if the field is not a decimal number.
+	 */
+	public long parsePence(int field) {
+		return Money.parse(this, fieldStart(field), fieldEnd(field));
+	}
+
+	/**
+	 * Returns the constant of the given table named by the given field.
+	 * @param field The index of the field.
+	 * @param table The constants which the field may name.
+	 * @return The named constant.
+	 * @throws IllegalArgumentException Thrown if the field names no constant.
+	 */
+	public <E extends Enum<E>> E parseEnum(int field, EnumTable<E> table) {
+		checkField(field);
+		E value = table.lookup(buffer, fieldStarts[field], fieldEnds[field]);
+		if(value == null)
+			throw new IllegalArgumentException(field(field) + " is not a " + table.getName());
+		return value;
+	}
+
+	/**
+	 * Returns the given field as a String. Fields with the same value as a
+	 * recently read field return the same String.
+	 * @param field The index of the field.
+	 * @return The field's text.
+	 */
+	public String field(int field) {
+		checkField(field);
+		int start = fieldStarts[field];
+		int length = fieldEnds[field] - start;
+
+		int hash = 0;
+		for(int i = start; i < start + length; i++)
+			hash = 31 * hash + buffer[i];
+		int slot = (hash ^ (hash >>> 16)) & (STRING_CACHE_SIZE - 1);
+
+		byte[] cached = cachedBytes[slot];
+		if(cached != null && Arrays.equals(cached, 0, cached.length, buffer, start, start + length))
+			return cachedStrings[slot];
+
+		String str = new String(buffer, start, length, StandardCharsets.UTF_8);
+		cachedBytes[slot] = Arrays.copyOfRange(buffer, start, start + length);
+		cachedStrings[slot] = str;
+		return str;
+	}
+
+	/**
+	 * Returns the whole of the current line as a String, e.g. to report that it
+	 * could not be parsed.
+	 * @return The current line.
+	 */
+	public String line() {
+		return new String(buffer, lineStart, lineEnd - lineStart, StandardCharsets.UTF_8);
+	}
+
+	private void checkField(int field) {
+		if(field < 0 || field >= fieldCount)
+			throw new IllegalArgumentException("The line " + line() + " has no field " + field);
+	}
+
+	private NumberFormatException numberFormatException(int field) {
+		return new NumberFormatException("For input string: \"" + field(field) + "\"");
+	}
+	//End methods for reading the fields of the current line.
+
+	//CharSequence methods. These treat the current line as single byte characters.
+	@Override
+	public int length() {
+		return lineEnd - lineStart;
+	}
+
+	@Override
+	public char charAt(int index) {
+		if(index < 0 || index >= length())
+			throw new IndexOutOfBoundsException(index + " is out of bounds.");
+		return (char)(buffer[lineStart + index] & 0xFF);
+	}
+
+	@Override
+	public CharSequence subSequence(int start, int end) {
+		if(start < 0 || end > length() || start > end)
+			throw new IndexOutOfBoundsException(start + ", " + end + " is out of bounds.");
+		return new String(buffer, lineStart + start, end - start, StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String toString() {
+		return line();
+	}
+	//End CharSequence methods.
+
+	/**
+	 * Closes the underlying stream, if lines are read from a stream.
+	 * @throws IOException Thrown if the stream cannot be closed.
+	 */
+	@Override
+	public void close() throws IOException {
+		if(in != null)
+			in.close();
+	}
+
+	/**
+	 * An EnumTable looks up the constants of an enum by name, ignoring case,
+	 * without creating a String for the name. Tables should be created once
+	 * and reused.
+	 */
+	public static final class EnumTable<E extends Enum<E>> {
+		private final String name;
+		//The constants and their upper case names, indexed by name length.
+		private final byte[][][] names;
+		private final Object[][] values;
+
+		/**
+		 * Creates a table of the constants of the given enum.
+		 * @param enumClass The enum whose constants are looked up.
+		 */
+		public EnumTable(Class<E> enumClass) {
+			E[] constants = enumClass.getEnumConstants();
+			int maxLength = 0;
+			for(E e : constants)
+				maxLength = Math.max(maxLength, e.name().length());
+
+			this.name = enumClass.getSimpleName();
+			this.names = new byte[maxLength + 1][0][];
+			this.values = new Object[maxLength + 1][0];
+			for(E e : constants) {
+				int length = e.name().length();
+				int n = names[length].length;
+				names[length] = Arrays.copyOf(names[length], n + 1);
+				values[length] = Arrays.copyOf(values[length], n + 1);
+				names[length][n] = e.name().getBytes(StandardCharsets.US_ASCII);
+				values[length][n] = e;
+			}
+		}
+
+		/**
+		 * Returns the simple name of the enum.
+		 * @return The name of the enum.
+		 */
+		public String getName() {
+			return this.name;
+		}
+
+		/**
+		 * Returns the constant named by the given bytes, ignoring case, or null.
+		 */
+		@SuppressWarnings("unchecked")
+		private E lookup(byte[] bytes, int start, int end) {
+			int length = end - start;
+			if(length >= names.length)
+				return null;
+
+			byte[][] candidates = names[length];
+			for(int c = 0; c < candidates.length; c++) {
+				byte[] candidate = candidates[c];
+				int i = 0;
+				while(i < length && candidate[i] == toUpperCase(bytes[start + i]))
+					i++;
+				if(i == length)
+					return (E)values[length][c];
+			}
+			return null;
+		}
+
+		private static byte toUpperCase(byte b) {
+			return b >= 'a' && b <= 'z' ? (byte)(b - ('a' - 'A')) : b;
+		}
+	}
+}
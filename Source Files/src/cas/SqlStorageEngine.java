@@ -0,0 +1,642 @@
+/**
+ * A StorageEngine which keeps products, user accounts and activity logs in
+ * an embedded SQL database, such as H2 or SQLite in file mode, through JDBC.
+ * The database is named by a JDBC URL, e.g. <code>jdbc:h2:file:./cas</code>
+ * or <code>jdbc:sqlite:cas.db</code>, and its driver must be on the class path.
+ * <p>
+ * Products are keyed by bar code and users by id, and activity logs are
+ * indexed by date, user and bar code, so reading or changing one product is
+ * a single indexed query or update rather than a scan or rewrite of a file.
+ * Every change is committed as it is made, so flush has nothing to write.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+
+public class SqlStorageEngine implements StorageEngine {
+	private static final String[] SCHEMA = {
+		"CREATE TABLE IF NOT EXISTS products (barcode INTEGER PRIMARY KEY, device VARCHAR(8) NOT NULL, " +
+				"type VARCHAR(16) NOT NULL, brand VARCHAR(255) NOT NULL, colour VARCHAR(255) NOT NULL, " +
+				"wired INTEGER NOT NULL, quantity INTEGER NOT NULL, original_cost BIGINT NOT NULL, " +
+				"retail_price BIGINT NOT NULL, layout VARCHAR(8), button_count INTEGER)",
+		"CREATE TABLE IF NOT EXISTS users (id INTEGER PRIMARY KEY, username VARCHAR(255) NOT NULL, " +
+				"surname VARCHAR(255) NOT NULL, house_number INTEGER NOT NULL, postcode VARCHAR(16) NOT NULL, " +
+				"city VARCHAR(255) NOT NULL, role VARCHAR(8) NOT NULL)",
+		"CREATE TABLE IF NOT EXISTS activity_logs (user_id INTEGER NOT NULL, postcode VARCHAR(16) NOT NULL, " +
+				"barcode INTEGER NOT NULL, retail_price BIGINT NOT NULL, quantity INTEGER NOT NULL, " +
+				"status VARCHAR(255) NOT NULL, payment_type VARCHAR(255), log_date TIMESTAMP NOT NULL)",
+		"CREATE INDEX IF NOT EXISTS activity_logs_date ON activity_logs (log_date)",
+		"CREATE INDEX IF NOT EXISTS activity_logs_user ON activity_logs (user_id)",
+		"CREATE INDEX IF NOT EXISTS activity_logs_barcode ON activity_logs (barcode)"
+	};
+
+	private static final String PRODUCT_COLUMNS = "barcode, device, type, brand, colour, wired, " +
+			"quantity, original_cost, retail_price, layout, button_count";
+	private static final String SELECT_PRODUCTS = "SELECT " + PRODUCT_COLUMNS + " FROM products ORDER BY barcode";
+	private static final String SELECT_PRODUCT = "SELECT " + PRODUCT_COLUMNS + " FROM products WHERE barcode = ?";
+	private static final String INSERT_PRODUCT = "INSERT INTO products (" + PRODUCT_COLUMNS +
+			") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+	//Sets every column, in the same order as an insert, so setProduct can fill it in.
+	private static final String UPDATE_PRODUCT = "UPDATE products SET barcode = ?, device = ?, type = ?, " +
+			"brand = ?, colour = ?, wired = ?, quantity = ?, original_cost = ?, retail_price = ?, " +
+			"layout = ?, button_count = ? WHERE barcode = ?";
+	private static final String SET_QUANTITY = "UPDATE products SET quantity = ? WHERE barcode = ?";
+	private static final String ADD_QUANTITY = "UPDATE products SET quantity = quantity + ? " +
+			"WHERE barcode = ? AND quantity + ? >= 0";
+	private static final String DELETE_PRODUCT = "DELETE FROM products WHERE barcode = ?";
+	private static final String COUNT_PRODUCTS = "SELECT COUNT(*) FROM products";
+
+	private static final String USER_COLUMNS = "id, username, surname, house_number, postcode, city, role";
+	private static final String SELECT_USERS = "SELECT " + USER_COLUMNS + " FROM users ORDER BY id";
+	private static final String SELECT_USER = "SELECT " + USER_COLUMNS + " FROM users WHERE id = ?";
+	private static final String INSERT_USER = "INSERT INTO users (" + USER_COLUMNS + ") VALUES (?, ?, ?, ?, ?, ?, ?)";
+	private static final String COUNT_USERS = "SELECT COUNT(*) FROM users";
+
+	private static final String LOG_COLUMNS = "user_id, postcode, barcode, retail_price, quantity, " +
+			"status, payment_type, log_date";
+	private static final String INSERT_LOG = "INSERT INTO activity_logs (" + LOG_COLUMNS +
+			") VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+	private static final String SELECT_LOGS = "SELECT " + LOG_COLUMNS + " FROM activity_logs " +
+			"WHERE log_date >= ? AND log_date < ? ORDER BY log_date";
+
+	private final Connection connection;
+	//Statements are prepared once and reused, keyed by their SQL.
+	private final HashMap<String, PreparedStatement> statements;
+	//Version of the last snapshot.
+	private long snapshotVersion;
+
+	/**
+	 * Creates a SqlStorageEngine which keeps its data in the database at the
+	 * given JDBC URL, creating the tables and indexes if they do not exist.
+	 * @param jdbcUrl The JDBC URL of the database.
+	 * @throws IOException Thrown if the database cannot be opened.
+	 */
+	public SqlStorageEngine(String jdbcUrl) throws IOException {
+		if(jdbcUrl == null)
+			throw new IllegalArgumentException("JDBC URL is null");
+
+		this.statements = new HashMap<String, PreparedStatement>();
+		try {
+			this.connection = DriverManager.getConnection(jdbcUrl);
+		}
+		catch(SQLException e) {
+			throw new IOException("Could not open " + jdbcUrl + ": " + e.getMessage(), e);
+		}
+
+		try(Statement schema = connection.createStatement()) {
+			connection.setAutoCommit(false);
+			for(String sql : SCHEMA)
+				schema.executeUpdate(sql);
+			connection.commit();
+		}
+		catch(SQLException e) {
+			IOException failure = failed("create the tables", e);
+			close();
+			throw failure;
+		}
+	}
+
+	/**
+	 * Returns true if the database holds no products and no users, e.g.
+	 * when it has just been created.
+	 * @return true if the database holds no products and no users.
+	 * @throws IOException Thrown if the database cannot be read.
+	 */
+	public synchronized boolean isEmpty() throws IOException {
+		try {
+			boolean isEmpty = count(COUNT_PRODUCTS) == 0 && count(COUNT_USERS) == 0;
+			connection.commit();
+			return isEmpty;
+		}
+		catch(SQLException e) {
+			throw failed("count the products and users", e);
+		}
+	}
+
+	/**
+	 * Copies every product and User kept by the given engine into this
+	 * database in one transaction, e.g. to move from the flat files.
+	 * Activity logs are not copied.
+	 * @param source The engine whose data is copied.
+	 * @throws IOException Thrown if either engine cannot be read, or if this
+	 * database already holds one of the products or users.
+	 */
+	public synchronized void importFrom(StorageEngine source) throws IOException {
+		Inventory products = source.getProducts();
+		ArrayList<User> users = source.getUsers();
+
+		try {
+			PreparedStatement insertProduct = statement(INSERT_PRODUCT);
+			for(int i = 0; i < products.size(); i++) {
+				setProduct(insertProduct, products.get(i));
+				insertProduct.addBatch();
+			}
+			insertProduct.executeBatch();
+
+			PreparedStatement insertUser = statement(INSERT_USER);
+			for(User u : users) {
+				insertUser.setInt(1, u.getId());
+				insertUser.setString(2, u.getUsername());
+				insertUser.setString(3, u.getSurname());
+				insertUser.setInt(4, u.getHouseNumber());
+				insertUser.setString(5, u.getPostcode());
+				insertUser.setString(6, u.getCity());
+				insertUser.setString(7, u instanceof Admin ? "admin" : "customer");
+				insertUser.addBatch();
+			}
+			insertUser.executeBatch();
+			connection.commit();
+		}
+		catch(SQLException e) {
+			throw failed("import the products and users", e);
+		}
+		catch(RuntimeException e) {
+			abortQuietly(e);
+			throw e;
+		}
+	}
+
+	//Methods for handling products.
+	@Override
+	public synchronized Inventory getProducts() throws IOException {
+		try(ResultSet rows = statement(SELECT_PRODUCTS).executeQuery()) {
+			Inventory products = new Inventory();
+			while(rows.next())
+				products.add(productFromRow(rows));
+			connection.commit();
+			return products;
+		}
+		catch(SQLException e) {
+			throw failed("read the products", e);
+		}
+	}
+
+	/**
+	 * Reads every product into a new snapshot. As the database may be
+	 * changed by other connections, every snapshot has a new version.
+	 * @return A snapshot of every product in stock.
+	 * @throws IOException Thrown if the database cannot be read.
+	 */
+	@Override
+	public synchronized InventorySnapshot getSnapshot() throws IOException {
+		return new InventorySnapshot(getProducts(), ++snapshotVersion);
+	}
+
+	@Override
+	public synchronized Product getProduct(int barcode) throws IOException {
+		try {
+			Product product = selectProduct(barcode);
+			connection.commit();
+			return product;
+		}
+		catch(SQLException e) {
+			throw failed("read product " + barcode, e);
+		}
+	}
+
+	@Override
+	public synchronized boolean addProduct(Product product) throws IOException {
+		if(product == null)
+			throw new IllegalArgumentException("Product is null");
+
+		try {
+			if(selectProduct(product.getBarcode()) != null) {
+				connection.commit();
+				return false;
+			}
+
+			PreparedStatement insert = statement(INSERT_PRODUCT);
+			setProduct(insert, product);
+			insert.executeUpdate();
+			connection.commit();
+			return true;
+		}
+		catch(SQLException e) {
+			throw failed("add product " + product.getBarcode(), e);
+		}
+	}
+
+	@Override
+	public synchronized void updateQuantity(int barcode, int quantity) throws IOException {
+		if(quantity < 0)
+			throw new IllegalArgumentException("Quantity is negative");
+
+		try {
+			PreparedStatement update = statement(SET_QUANTITY);
+			update.setInt(1, quantity);
+			update.setInt(2, barcode);
+			if(update.executeUpdate() == 0) {
+				connection.rollback();
+				throw new IllegalArgumentException("No product has the barcode " + barcode);
+			}
+			connection.commit();
+		}
+		catch(SQLException e) {
+			throw failed("update product " + barcode, e);
+		}
+	}
+
+	/**
+	 * Changes the quantity in stock of the product with the given bar code
+	 * with a single update, which only succeeds if enough is in stock. The
+	 * reason is not kept.
+	 * @param barcode The bar code of the product whose quantity is changed.
+	 * @param delta The amount to add to the quantity. Negative to remove stock.
+	 * @param reason A description of why the quantity changed, e.g. "purchased".
+	 * @throws IOException Thrown if the database cannot be read or written.
+	 */
+	@Override
+	public synchronized void adjustQuantity(int barcode, int delta, String reason) throws IOException {
+		try {
+			if(!addQuantity(barcode, delta)) {
+				connection.rollback();
+				throw rejected(barcode);
+			}
+			connection.commit();
+		}
+		catch(SQLException e) {
+			throw failed("update product " + barcode, e);
+		}
+	}
+
+	@Override
+	public synchronized void checkout(Customer customer, String paymentType) throws IOException {
+		if(customer == null)
+			throw new IllegalArgumentException("customer is null");
+
+		try {
+			ArrayList<ActivityLog> logs = new ArrayList<ActivityLog>();
+			for(int i = 0; i < customer.basketSize(); i++) {
+				BasketEntry entry = customer.getFromBasket(i);
+				int barcode = entry.getProduct().getBarcode();
+
+				//Each update only succeeds if enough is in stock, so nothing is changed if one fails.
+				if(!addQuantity(barcode, -entry.getQuantity())) {
+					connection.rollback();
+					throw rejected(barcode);
+				}
+				logs.add(new ActivityLog(customer, selectProduct(barcode), entry.getQuantity(),
+						"purchased", paymentType));
+			}
+
+			insertLogs(logs);
+			connection.commit();
+		}
+		catch(SQLException e) {
+			throw failed("check out the basket", e);
+		}
+		catch(RuntimeException e) {
+			abortQuietly(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Replaces the products in the database with those in the given
+	 * Inventory in one transaction. Only added, removed, or changed products
+	 * are written; a product whose quantity alone changed has only its
+	 * quantity updated, and any other change updates every column.
+	 * @param products The products which should be in stock.
+	 * @throws IOException Thrown if the database cannot be read or written.
+	 */
+	@Override
+	public synchronized void writeProducts(Inventory products) throws IOException {
+		Inventory stored = getProducts();
+
+		try {
+			PreparedStatement insert = statement(INSERT_PRODUCT);
+			PreparedStatement replace = statement(UPDATE_PRODUCT);
+			PreparedStatement update = statement(SET_QUANTITY);
+			PreparedStatement delete = statement(DELETE_PRODUCT);
+
+			for(int i = 0; i < products.size(); i++) {
+				Product p = products.get(i);
+				Product current = stored.getByBarcode(p.getBarcode());
+
+				if(current == null) {
+					setProduct(insert, p);
+					insert.addBatch();
+				}
+				else if(!current.isSameApartFromQuantity(p)) {
+					setProduct(replace, p);
+					replace.setInt(12, p.getBarcode());
+					replace.addBatch();
+				}
+				else if(current.getQuantity() != p.getQuantity()) {
+					update.setInt(1, p.getQuantity());
+					update.setInt(2, p.getBarcode());
+					update.addBatch();
+				}
+			}
+
+			for(int i = 0; i < stored.size(); i++) {
+				int barcode = stored.get(i).getBarcode();
+				if(products.getByBarcode(barcode) == null) {
+					delete.setInt(1, barcode);
+					delete.addBatch();
+				}
+			}
+
+			insert.executeBatch();
+			replace.executeBatch();
+			update.executeBatch();
+			delete.executeBatch();
+			connection.commit();
+		}
+		catch(SQLException e) {
+			throw failed("write the products", e);
+		}
+		catch(RuntimeException e) {
+			abortQuietly(e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the product in the given row.
+	 */
+	private static Product productFromRow(ResultSet row) throws SQLException {
+		int barcode = row.getInt(1);
+		String device = row.getString(2);
+		String type = row.getString(3);
+		String brand = row.getString(4);
+		String colour = row.getString(5);
+		boolean isWired = row.getInt(6) != 0;
+		int quantity = row.getInt(7);
+		long originalCost = row.getLong(8);
+		long retailPrice = row.getLong(9);
+
+		if(device.equals("keyboard"))
+			return new Keyboard(barcode, brand, colour, isWired, KeyboardType.valueOf(type),
+					KeyboardLayout.valueOf(row.getString(10)), originalCost, retailPrice, quantity);
+		if(device.equals("mouse"))
+			return new Mouse(barcode, brand, colour, isWired, MouseType.valueOf(type),
+					row.getInt(11), originalCost, retailPrice, quantity);
+		throw new SQLException("Product " + barcode + " has an unknown device " + device);
+	}
+
+	/**
+	 * Sets the parameters of an insert into the products table, or the first
+	 * parameters of an update of every column, to the given product.
+	 */
+	private static void setProduct(PreparedStatement insert, Product product) throws SQLException {
+		insert.setInt(1, product.getBarcode());
+		insert.setString(4, product.getBrand());
+		insert.setString(5, product.getColour());
+		insert.setInt(6, product.isWired() ? 1 : 0);
+		insert.setInt(7, product.getQuantity());
+		insert.setLong(8, product.getOriginalCostPence());
+		insert.setLong(9, product.getRetailPricePence());
+
+		if(product instanceof Keyboard) {
+			Keyboard k = (Keyboard)product;
+			insert.setString(2, "keyboard");
+			insert.setString(3, k.getType().name());
+			insert.setString(10, k.getLayout().name());
+			insert.setNull(11, java.sql.Types.INTEGER);
+		}
+		else if(product instanceof Mouse) {
+			Mouse m = (Mouse)product;
+			insert.setString(2, "mouse");
+			insert.setString(3, m.getType().name());
+			insert.setNull(10, java.sql.Types.VARCHAR);
+			insert.setInt(11, m.getButtonCount());
+		}
+		else
+			throw new IllegalArgumentException("Product " + product.getBarcode() + " has an unknown device class");
+	}
+
+	/**
+	 * Returns the product with the given bar code, or null if there is none.
+	 */
+	private Product selectProduct(int barcode) throws SQLException {
+		PreparedStatement select = statement(SELECT_PRODUCT);
+		select.setInt(1, barcode);
+		try(ResultSet rows = select.executeQuery()) {
+			return rows.next() ? productFromRow(rows) : null;
+		}
+	}
+
+	/**
+	 * Adds delta to the quantity of the product with the given bar code,
+	 * unless that would leave less than none in stock.
+	 * @return true if the quantity was changed.
+	 */
+	private boolean addQuantity(int barcode, int delta) throws SQLException {
+		PreparedStatement update = statement(ADD_QUANTITY);
+		update.setInt(1, delta);
+		update.setInt(2, barcode);
+		update.setInt(3, delta);
+		return update.executeUpdate() != 0;
+	}
+
+	/**
+	 * Returns the exception explaining why the quantity of the product with
+	 * the given bar code could not be changed.
+	 */
+	private IllegalArgumentException rejected(int barcode) throws SQLException {
+		if(selectProduct(barcode) == null)
+			return new IllegalArgumentException("No product has the barcode " + barcode);
+		return new IllegalArgumentException("Not enough of product " + barcode + " is in stock");
+	}
+	//End methods for handling products.
+
+	//Methods for handling users.
+	@Override
+	public synchronized ArrayList<User> getUsers() throws IOException {
+		try(ResultSet rows = statement(SELECT_USERS).executeQuery()) {
+			ArrayList<User> users = new ArrayList<User>();
+			while(rows.next())
+				users.add(userFromRow(rows));
+			connection.commit();
+			return users;
+		}
+		catch(SQLException e) {
+			throw failed("read the users", e);
+		}
+	}
+
+	@Override
+	public synchronized User getUser(int id) throws IOException {
+		try {
+			PreparedStatement select = statement(SELECT_USER);
+			select.setInt(1, id);
+			User user;
+			try(ResultSet rows = select.executeQuery()) {
+				user = rows.next() ? userFromRow(rows) : null;
+			}
+			connection.commit();
+			return user;
+		}
+		catch(SQLException e) {
+			throw failed("read user " + id, e);
+		}
+	}
+
+	/**
+	 * Returns the User in the given row.
+	 */
+	private static User userFromRow(ResultSet row) throws SQLException {
+		int id = row.getInt(1);
+		String username = row.getString(2);
+		String surname = row.getString(3);
+		int houseNumber = row.getInt(4);
+		String postcode = row.getString(5);
+		String city = row.getString(6);
+		String role = row.getString(7);
+
+		if(role.equals("admin"))
+			return new Admin(id, username, surname, houseNumber, city, postcode);
+		if(role.equals("customer"))
+			return new Customer(id, username, surname, houseNumber, city, postcode);
+		throw new SQLException("User " + id + " has an invalid role " + role);
+	}
+	//End methods for handling users.
+
+	//Methods for handling activity logs.
+	@Override
+	public synchronized void writeActivityLogs(List<ActivityLog> logs) throws IOException {
+		try {
+			insertLogs(logs);
+			connection.commit();
+		}
+		catch(SQLException e) {
+			throw failed("write the activity logs", e);
+		}
+	}
+
+	/**
+	 * Returns the ActivityLogs of the activities which occurred from the
+	 * first given date up to but not including the second, oldest first.
+	 * @param from The earliest date of the returned ActivityLogs.
+	 * @param to The date after the latest date of the returned ActivityLogs.
+	 * @return The ActivityLogs of the activities between the given dates.
+	 * @throws IOException Thrown if the database cannot be read.
+	 */
+	public synchronized ArrayList<ActivityLog> getActivityLogs(Date from, Date to) throws IOException {
+		if(from == null || to == null)
+			throw new IllegalArgumentException("Date is null");
+
+		try {
+			PreparedStatement select = statement(SELECT_LOGS);
+			select.setTimestamp(1, new Timestamp(from.getTime()));
+			select.setTimestamp(2, new Timestamp(to.getTime()));
+
+			ArrayList<ActivityLog> logs = new ArrayList<ActivityLog>();
+			try(ResultSet rows = select.executeQuery()) {
+				while(rows.next()) {
+					logs.add(new ActivityLog(rows.getInt(1), rows.getString(2), rows.getInt(3),
+							rows.getLong(4), rows.getInt(5), rows.getString(6), rows.getString(7),
+							new Date(rows.getTimestamp(8).getTime())));
+				}
+			}
+			connection.commit();
+			return logs;
+		}
+		catch(SQLException e) {
+			throw failed("read the activity logs", e);
+		}
+	}
+
+	/**
+	 * Adds the given ActivityLogs to the current transaction.
+	 */
+	private void insertLogs(List<ActivityLog> logs) throws SQLException {
+		PreparedStatement insert = statement(INSERT_LOG);
+		for(ActivityLog log : logs) {
+			insert.setInt(1, log.getUserId());
+			insert.setString(2, log.getPostcode());
+			insert.setInt(3, log.getBarcode());
+			insert.setLong(4, log.getRetailPricePence());
+			insert.setInt(5, log.getQuantity());
+			insert.setString(6, log.getStatus());
+			insert.setString(7, log.getPaymentType());
+			insert.setTimestamp(8, new Timestamp(log.getDate().getTime()));
+			insert.addBatch();
+		}
+		insert.executeBatch();
+	}
+	//End methods for handling activity logs.
+
+	/**
+	 * Does nothing, as every change is committed when it is made.
+	 */
+	@Override
+	public void flush() {
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		try {
+			if(connection.isClosed())
+				return;
+
+			for(PreparedStatement statement : statements.values())
+				statement.close();
+			statements.clear();
+			connection.close();
+		}
+		catch(SQLException e) {
+			throw new IOException("Could not close the database: " + e.getMessage(), e);
+		}
+	}
+
+	/**
+	 * Returns the prepared statement for the given SQL, preparing it if this is its first use.
+	 */
+	private PreparedStatement statement(String sql) throws SQLException {
+		PreparedStatement statement = statements.get(sql);
+		if(statement == null) {
+			statement = connection.prepareStatement(sql);
+			statements.put(sql, statement);
+		}
+		return statement;
+	}
+
+	/**
+	 * Returns the single number counted by the given query.
+	 */
+	private int count(String sql) throws SQLException {
+		try(ResultSet rows = statement(sql).executeQuery()) {
+			rows.next();
+			return rows.getInt(1);
+		}
+	}
+
+	/**
+	 * Rolls back the current transaction and returns an IOException
+	 * explaining that the given action failed.
+	 */
+	private IOException failed(String action, SQLException e) {
+		abortQuietly(e);
+		return new IOException("Could not " + action + ": " + e.getMessage(), e);
+	}
+
+	/**
+	 * Rolls back the current transaction and discards any statements
+	 * batched but not yet executed. If that fails too, the failure is
+	 * added to the given exception.
+	 */
+	private void abortQuietly(Exception cause) {
+		try {
+			for(PreparedStatement statement : statements.values())
+				statement.clearBatch();
+			connection.rollback();
+		}
+		catch(SQLException e) {
+			cause.addSuppressed(e);
+		}
+	}
+}
@@ -0,0 +1,289 @@
+/**
+ * A StockJournal is an append-only file of StockMovements which have been
+ * made since the stock file was last written. Replaying the journal over the
+ * products read from the stock file gives the current quantities in stock.
+ * Movements are appended in batches, each of which ends with a commit line,
+ * so a batch which was only partly written is ignored when replayed.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+public class StockJournal {
+	private static final String COMMIT = "commit";
+	private static final byte[] COMMIT_BYTES = COMMIT.getBytes(StandardCharsets.UTF_8);
+
+	private final File journalFile;
+	private final File retiredFile;
+	private FileOutputStream out;
+	private int recordCount;
+
+	/**
+	 * Creates a StockJournal which reads from and appends to the file
+	 * at the given path. The file is created if it does not exist.
+	 * @param journalPath The file path of the journal.
+	 */
+	public StockJournal(String journalPath) {
+		if(journalPath == null)
+			throw new IllegalArgumentException("Journal path is null");
+
+		this.journalFile = new File(journalPath);
+		this.retiredFile = new File(journalPath + ".old");
+	}
+
+	/**
+	 * Appends a single StockMovement to the journal as its own batch.
+	 * @param movement The StockMovement to append.
+	 * @throws IOException Thrown if the journal cannot be written to.
+	 */
+	public void append(StockMovement movement) throws IOException {
+		ArrayList<StockMovement> batch = new ArrayList<StockMovement>();
+		batch.add(movement);
+		append(batch);
+	}
+
+	/**
+	 * Appends the given StockMovements to the journal as one batch. The batch
+	 * is written in a single write and forced to disk before this returns,
+	 * so either all of it is replayed or none of it is.
+	 * @param movements The StockMovements to append.
+	 * @throws IOException Thrown if the journal cannot be written to.
+	 */
+	public synchronized void append(List<StockMovement> movements) throws IOException {
+		if(movements == null)
+			throw new IllegalArgumentException("Movements is null");
+		if(movements.isEmpty())
+			return;
+
+		StringBuilder batch = new StringBuilder();
+		for(StockMovement m : movements)
+			batch.append(m.toString()).append('\n');
+		batch.append(COMMIT).append('\n');
+
+		if(out == null)
+			open();
+		out.write(batch.toString().getBytes(StandardCharsets.UTF_8));
+		//The batch is only committed once the commit line is on the disk.
+		out.getChannel().force(false);
+
+		recordCount += movements.size();
+	}
+
+	/**
+	 * Opens the journal for appending. Any batch left without a commit line,
+	 * e.g. by a crash, is removed first so that it is not committed by the
+	 * next batch to be appended. If the last commit line has no line break
+	 * after it, one is written so the next batch starts on its own line.
+	 * @throws IOException Thrown if the journal cannot be opened.
+	 */
+	private void open() throws IOException {
+		out = new FileOutputStream(journalFile, true);
+		FileChannel channel = out.getChannel();
+		
+		//Offsets are counted in bytes, so lines ending "\r\n" are measured correctly.
+		long committedLength = 0;
+		boolean isLineEnded = true;
+		ByteBuffer buffer = ByteBuffer.allocate(64 * 1024);
+		byte[] line = new byte[COMMIT_BYTES.length + 1];
+		int lineLength = 0;
+		long position = 0;
+		
+		try(FileChannel in = FileChannel.open(journalFile.toPath())) {
+			while(in.read(buffer) != -1) {
+				buffer.flip();
+				while(buffer.hasRemaining()) {
+					byte b = buffer.get();
+					position++;
+					if(b == '\n') {
+						if(isCommit(line, lineLength))
+							committedLength = position;
+						lineLength = 0;
+					}
+					else if(lineLength < line.length)
+						line[lineLength++] = b;
+					else
+						lineLength = line.length + 1;
+				}
+				buffer.clear();
+			}
+		}
+		
+		//The last commit line may have been written without its line break.
+		if(position > committedLength && isCommit(line, lineLength)) {
+			committedLength = position;
+			isLineEnded = false;
+		}
+		
+		if(channel.size() > committedLength)
+			channel.truncate(committedLength);
+		if(!isLineEnded) {
+			out.write('\n');
+			channel.force(false);
+		}
+	}
+	
+	/**
+	 * Returns whether the given bytes of a line, without its "\n", are a
+	 * commit line, which may end with "\r".
+	 */
+	private static boolean isCommit(byte[] line, int length) {
+		if(length > 0 && length <= line.length && line[length - 1] == '\r')
+			length--;
+		if(length != COMMIT_BYTES.length)
+			return false;
+		
+		for(int i = 0; i < length; i++) {
+			if(line[i] != COMMIT_BYTES[i])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * Applies every committed StockMovement in the journal to the given Inventory.
+	 * A batch holding a line which cannot be parsed is skipped as a whole and
+	 * reported. Movements for unknown products, or which would make a quantity
+	 * negative, are skipped and reported.
+	 * @param products The Inventory to which the movements are applied.
+	 * @return The number of movements read from the journal.
+	 * @throws IOException Thrown if the journal cannot be read.
+	 */
+	public synchronized int replay(Inventory products) throws IOException {
+		int count = 0;
+		recordCount = 0;
+		if(!journalFile.exists())
+			return count;
+		
+		ArrayList<StockMovement> batch = new ArrayList<StockMovement>();
+		boolean isBatchValid = true;
+
+		try(RecordReader reader = new RecordReader(new FileInputStream(journalFile))) {
+			while(reader.next()) {
+				if(reader.fieldCount() == 1 && reader.fieldEquals(0, COMMIT)) {
+					if(isBatchValid) {
+						for(StockMovement m : batch)
+							apply(m, products);
+						count += batch.size();
+					}
+					else
+						System.err.println("A batch of stock movements was skipped as it could not be parsed.");
+					batch.clear();
+					isBatchValid = true;
+					continue;
+				}
+
+				//If a line cannot be parsed, the rest of its batch is read but none of it is applied.
+				try {
+					batch.add(movementFromRecord(reader));
+				}
+				catch(IllegalArgumentException e) {
+					System.err.println("Line: " + reader.line() + " could not be parsed as a stock movement.\n"
+							+ e.getMessage());
+					isBatchValid = false;
+				}
+			}
+		}
+
+		recordCount = count;
+		return count;
+	}
+
+	/**
+	 * Applies a single StockMovement to the given Inventory.
+	 * @param movement The movement to apply.
+	 * @param products The Inventory to which the movement is applied.
+	 */
+	private void apply(StockMovement movement, Inventory products) {
+		Product p = products.getByBarcode(movement.getBarcode());
+
+		if(p == null)
+			System.err.println("Stock movement: " + movement + " refers to an unknown product.");
+		else if(p.getQuantity() + movement.getDelta() < 0)
+			System.err.println("Stock movement: " + movement + " would make the quantity negative.");
+		else
+			p.setQuantity(p.getQuantity() + movement.getDelta());
+	}
+
+	/**
+	 * Returns the StockMovement described by the current line of the given reader.
+	 * @param reader The reader whose current line describes a StockMovement.
+	 * @return The StockMovement parsed from the line.
+	 */
+	private StockMovement movementFromRecord(RecordReader reader) {
+		if(reader.fieldCount() != 3)
+			throw new IllegalArgumentException("The given string, " + reader.line() +
+					" is in an invalid format");
+
+		try {
+			return new StockMovement(reader.parseInt(0),
+					reader.parseInt(1), reader.field(2));
+		}
+		catch(NumberFormatException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	/**
+	 * Returns the number of movements in the journal which have not yet
+	 * been folded into the stock file.
+	 * @return The number of movements in the journal.
+	 */
+	public synchronized int recordCount() {
+		return this.recordCount;
+	}
+
+	/**
+	 * Moves the journal aside before the stock file is replaced. If the
+	 * replacement does not complete, restoreRetired puts it back.
+	 * @throws IOException Thrown if the journal cannot be moved.
+	 */
+	public synchronized void retire() throws IOException {
+		close();
+		if(journalFile.exists())
+			Files.move(journalFile.toPath(), retiredFile.toPath(),
+					StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Deletes the retired journal once the stock file which includes its
+	 * movements has been written.
+	 * @throws IOException Thrown if the retired journal cannot be deleted.
+	 */
+	public synchronized void discardRetired() throws IOException {
+		Files.deleteIfExists(retiredFile.toPath());
+		recordCount = 0;
+	}
+
+	/**
+	 * Moves a retired journal back into place. Used when the stock file
+	 * which would have included its movements was never written.
+	 * @throws IOException Thrown if the retired journal cannot be moved.
+	 */
+	public synchronized void restoreRetired() throws IOException {
+		if(!retiredFile.exists())
+			return;
+		if(journalFile.exists())
+			throw new IOException("Both " + journalFile + " and " + retiredFile + " exist");
+
+		Files.move(retiredFile.toPath(), journalFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Closes the journal file. It is reopened by the next append.
+	 * @throws IOException Thrown if the journal cannot be closed.
+	 */
+	public synchronized void close() throws IOException {
+		if(out != null) {
+			out.close();
+			out = null;
+		}
+	}
+}
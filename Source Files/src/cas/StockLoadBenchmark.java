@@ -0,0 +1,141 @@
+/**
+ * StockLoadBenchmark measures how long a stock file takes to load, reading it
+ * line by line and with a ParallelStockLoader on pools of increasing size.
+ * Usage: <code>java cas.StockLoadBenchmark stockFile [productCount]</code>.
+ * If productCount is given, a stock file of that many products is written
+ * to stockFile first. Bar codes have six digits, so files of more than 900000
+ * products repeat bar codes, which are parsed but then ignored.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.io.BufferedWriter;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+public class StockLoadBenchmark {
+	private static final int WARMUP_RUNS = 2;
+	private static final int TIMED_RUNS = 5;
+
+	public static void main(String[] args) throws IOException {
+		if(args.length < 1) {
+			System.err.println("Usage: java cas.StockLoadBenchmark stockFile [productCount]");
+			return;
+		}
+
+		String stockFilePath = args[0];
+		if(args.length > 1)
+			writeStockFile(stockFilePath, Integer.parseInt(args[1]));
+
+		int cores = Runtime.getRuntime().availableProcessors();
+		System.out.println("Available processors: " + cores);
+
+		long sequential = median(new Load() {
+			public int run() throws IOException {
+				return readSequentially(stockFilePath);
+			}
+		});
+		System.out.println("Line by line: " + sequential + " ms");
+
+		long single = 0;
+		for(int threads = 1; threads <= cores; threads = nextThreadCount(threads, cores)) {
+			ForkJoinPool pool = new ForkJoinPool(threads);
+			ParallelStockLoader loader = new ParallelStockLoader(pool);
+
+			long time = median(new Load() {
+				public int run() throws IOException {
+					return loader.load(stockFilePath).size();
+				}
+			});
+			pool.shutdown();
+
+			if(threads == 1)
+				single = time;
+			System.out.printf("Parallel, %d threads: %d ms (%.2fx)%n",
+					threads, time, time == 0 ? 0.0 : (double)single / time);
+		}
+	}
+
+	/**
+	 * A load of the stock file, returning the number of products read.
+	 */
+	private interface Load {
+		public int run() throws IOException;
+	}
+
+	/**
+	 * Returns the median time in milliseconds of the timed runs of the given load.
+	 */
+	private static long median(Load load) throws IOException {
+		for(int i = 0; i < WARMUP_RUNS; i++)
+			load.run();
+
+		long[] times = new long[TIMED_RUNS];
+		for(int i = 0; i < TIMED_RUNS; i++) {
+			long start = System.nanoTime();
+			load.run();
+			times[i] = (System.nanoTime() - start) / 1000000;
+		}
+
+		Arrays.sort(times);
+		return times[TIMED_RUNS / 2];
+	}
+
+	/**
+	 * Doubles the thread count, making sure the number of cores is tried last.
+	 */
+	private static int nextThreadCount(int threads, int cores) {
+		return threads < cores && threads * 2 > cores ? cores : threads * 2;
+	}
+
+	/**
+	 * Reads the stock file line by line, as the FlatFileStorageEngine does for small files.
+	 */
+	private static int readSequentially(String stockFilePath) throws IOException {
+		Inventory products = new Inventory();
+		try(RecordReader reader = new RecordReader(new FileInputStream(stockFilePath))) {
+			while(reader.next())
+				products.add(FlatFileStorageEngine.productFromRecord(reader));
+		}
+		return products.size();
+	}
+
+	/**
+	 * Writes a stock file of the given number of randomly generated products.
+	 */
+	private static void writeStockFile(String stockFilePath, int productCount) throws IOException {
+		String[] brands = {"Logitech", "Razer", "Corsair", "Advent", "Apple", "Anker"};
+		String[] colours = {"black", "white", "grey", "blue", "red"};
+		Random random = new Random(1);
+
+		try(BufferedWriter bw = new BufferedWriter(new FileWriter(stockFilePath))) {
+			for(int i = 0; i < productCount; i++) {
+				int barcode = 100000 + i % 900000;
+				String brand = brands[random.nextInt(brands.length)];
+				String colour = colours[random.nextInt(colours.length)];
+				String connectivity = random.nextBoolean() ? "wired" : "wireless";
+				int quantity = random.nextInt(100);
+				long originalCost = 100 + random.nextInt(10000);
+				long retailPrice = originalCost + random.nextInt(5000);
+
+				if(random.nextBoolean()) {
+					KeyboardType type = KeyboardType.values()[random.nextInt(KeyboardType.values().length)];
+					KeyboardLayout layout = KeyboardLayout.values()[random.nextInt(KeyboardLayout.values().length)];
+					bw.write(barcode + ", keyboard, " + type.toString().toLowerCase() + ", " + brand + ", " +
+							colour + ", " + connectivity + ", " + quantity + ", " + Money.format(originalCost) +
+							", " + Money.format(retailPrice) + ", " + layout + "\n");
+				}
+				else {
+					MouseType type = MouseType.values()[random.nextInt(MouseType.values().length)];
+					bw.write(barcode + ", mouse, " + type.toString().toLowerCase() + ", " + brand + ", " +
+							colour + ", " + connectivity + ", " + quantity + ", " + Money.format(originalCost) +
+							", " + Money.format(retailPrice) + ", " + (2 + random.nextInt(8)) + "\n");
+				}
+			}
+		}
+	}
+}
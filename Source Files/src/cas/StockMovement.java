@@ -0,0 +1,66 @@
+/**
+ * A StockMovement records a change in the quantity of a product in stock,
+ * such as a sale or a delivery.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+public class StockMovement {
+	private final int barcode;
+	private final int delta;
+	private final String reason;
+
+	/**
+	 * Creates a StockMovement with all its attributes specified.
+	 * @param barcode The bar code of the product whose quantity changed.
+	 * @param delta The amount by which the quantity changed. Negative
+	 * if stock was removed.
+	 * @param reason A description of why the quantity changed, e.g. "purchased".
+	 */
+	public StockMovement(int barcode, int delta, String reason) {
+		if(!Product.verifyBarcode(barcode))
+			throw new IllegalArgumentException("Invalid barcode.");
+		if(reason == null || reason.length() == 0 || reason.contains(","))
+			throw new IllegalArgumentException("Invalid reason.");
+
+		this.barcode = barcode;
+		this.delta = delta;
+		this.reason = reason;
+	}
+
+	//Getters and setters.
+	/**
+	 * Returns the bar code of the product whose quantity changed.
+	 * @return The bar code of the product.
+	 */
+	public int getBarcode() {
+		return this.barcode;
+	}
+
+	/**
+	 * Returns the amount by which the quantity changed.
+	 * @return The change in quantity.
+	 */
+	public int getDelta() {
+		return this.delta;
+	}
+
+	/**
+	 * Returns the reason the quantity changed.
+	 * @return The reason the quantity changed.
+	 */
+	public String getReason() {
+		return this.reason;
+	}
+	//End getters and setters.
+
+	/**
+	 * Returns a String representation of the StockMovement
+	 * which can be written to a stock journal.
+	 * @return A String representation of the StockMovement.
+	 */
+	@Override
+	public String toString() {
+		return barcode + ", " + delta + ", " + reason;
+	}
+}
@@ -0,0 +1,344 @@
+/**
+ * StockReservations places holds on stock as customers add products to
+ * their baskets, so that a customer finds out a product has sold out when
+ * they add it rather than at checkout. The quantity available to sell of
+ * each product, which is its stock less every hold on it, is kept in a
+ * ConcurrentInventory, so reading it takes constant time and placing a
+ * hold can never take more than is available.
+ * <p>
+ * A customer has at most one hold per product, which grows as they add
+ * more of it. Holds expire on a TimingWheel once they have not been
+ * changed for the hold time, returning their stock. At checkout, holds
+ * are turned into sales, so the sold stock is not returned.
+ * <p>
+ * The StorageEngine remains the record of what is in stock; the holds are
+ * only kept in memory and are lost when the application exits.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class StockReservations implements Closeable {
+	private static final long TICK_MILLIS = 1000;
+	private static final int WHEEL_SLOTS = 512;
+
+	/**
+	 * A customer's hold on some of a product.
+	 */
+	private static final class Hold {
+		private final int customerId;
+		private final int barcode;
+		private int amount;
+		private TimingWheel.Timeout<Hold> timeout;
+
+		private Hold(int customerId, int barcode) {
+			this.customerId = customerId;
+			this.barcode = barcode;
+		}
+	}
+
+	private final ConcurrentInventory available;
+	//Holds of each customer, keyed by customer id and then bar code.
+	private final HashMap<Integer, HashMap<Integer, Hold>> holds;
+	private final TimingWheel<Hold> wheel;
+	private final long holdMillis;
+
+	/**
+	 * Creates StockReservations for the given stock, with no holds.
+	 * @param stock The products in stock.
+	 * @param holdMillis How long a hold lasts after it was last changed, in milliseconds.
+	 */
+	public StockReservations(Inventory stock, long holdMillis) {
+		if(stock == null)
+			throw new IllegalArgumentException("Stock is null");
+		if(holdMillis <= 0)
+			throw new IllegalArgumentException("Hold time must be positive");
+
+		this.available = new ConcurrentInventory(stock);
+		this.holds = new HashMap<Integer, HashMap<Integer, Hold>>();
+		this.holdMillis = holdMillis;
+		this.wheel = new TimingWheel<Hold>(Math.min(TICK_MILLIS, holdMillis), WHEEL_SLOTS,
+				new TimingWheel.Expiry<Hold>() {
+			public void expired(TimingWheel.Timeout<Hold> timeout) {
+				expire(timeout);
+			}
+		});
+		this.wheel.start();
+	}
+
+	//Methods for reading availability.
+	/**
+	 * Returns the quantity of the product with the given bar code which is
+	 * neither sold nor held.
+	 * @param barcode The bar code of the product.
+	 * @return The quantity available to sell, or 0 if there is no such product.
+	 */
+	public int getAvailable(int barcode) {
+		return available.getQuantityOrDefault(barcode, 0);
+	}
+
+	/**
+	 * Returns the quantity of the product with the given bar code held by
+	 * the given customer.
+	 * @param customerId The id of the customer.
+	 * @param barcode The bar code of the product.
+	 * @return The quantity held by the customer.
+	 */
+	public synchronized int getHeld(int customerId, int barcode) {
+		Hold hold = holdOf(customerId, barcode);
+		return hold == null ? 0 : hold.amount;
+	}
+	//End methods for reading availability.
+
+	//Methods for changing holds.
+	/**
+	 * Holds the given amount of the product with the given bar code for the
+	 * given customer, if that much is available, and restarts the
+	 * customer's hold on the product.
+	 * @param customerId The id of the customer.
+	 * @param barcode The bar code of the product.
+	 * @param amount The amount to hold.
+	 * @return true if the amount is now held. Returns false, changing
+	 * nothing, if not enough is available or there is no such product.
+	 */
+	public synchronized boolean reserve(int customerId, int barcode, int amount) {
+		if(amount <= 0)
+			throw new IllegalArgumentException("Amount must be positive");
+		if(!available.contains(barcode) || !available.decrementIfAvailable(barcode, amount))
+			return false;
+
+		Hold hold = holdOf(customerId, barcode);
+		if(hold == null) {
+			hold = new Hold(customerId, barcode);
+			holdsOf(customerId).put(barcode, hold);
+		}
+		hold.amount += amount;
+		renew(hold);
+		return true;
+	}
+
+	/**
+	 * Makes sure the given customer holds at least as much of each product
+	 * as is in their basket, holding more where a hold has expired or been
+	 * released, and restarts every hold on the basket.
+	 * @param customer The customer whose basket is held.
+	 * @return The amount of each product, keyed by bar code, which this
+	 * call held in addition to what was already held, so that it can be
+	 * released if the basket is not bought. Returns null, changing nothing,
+	 * if not enough of some product is available.
+	 */
+	public synchronized HashMap<Integer, Integer> reserveBasket(Customer customer) {
+		int customerId = customer.getId();
+		HashMap<Integer, Integer> added = new HashMap<Integer, Integer>();
+
+		for(int i = 0; i < customer.basketSize(); i++) {
+			BasketEntry entry = customer.getFromBasket(i);
+			int barcode = entry.getProduct().getBarcode();
+			int shortfall = entry.getQuantity() - getHeld(customerId, barcode);
+
+			if(shortfall > 0 && !reserve(customerId, barcode, shortfall)) {
+				//Give back what this call held so that nothing is changed.
+				releaseAll(customerId, added);
+				return null;
+			}
+			if(shortfall > 0) {
+				Integer amount = added.get(barcode);
+				added.put(barcode, amount == null ? shortfall : amount + shortfall);
+			}
+			else if(holdOf(customerId, barcode) != null)
+				renew(holdOf(customerId, barcode));
+		}
+
+		return added;
+	}
+
+	/**
+	 * Releases up to the given amount of the given customer's hold on the
+	 * product with the given bar code, returning it to the available stock.
+	 * @param customerId The id of the customer.
+	 * @param barcode The bar code of the product.
+	 * @param amount The amount to release.
+	 */
+	public synchronized void release(int customerId, int barcode, int amount) {
+		Hold hold = holdOf(customerId, barcode);
+		if(hold == null || amount <= 0)
+			return;
+
+		int released = Math.min(amount, hold.amount);
+		available.increment(barcode, released);
+		reduce(hold, released);
+	}
+
+	/**
+	 * Releases up to the given amount of each of the given customer's
+	 * holds, e.g. those returned by reserveBasket.
+	 * @param customerId The id of the customer.
+	 * @param amounts The amount to release of each product, keyed by bar code.
+	 */
+	public synchronized void releaseAll(int customerId, Map<Integer, Integer> amounts) {
+		for(Map.Entry<Integer, Integer> amount : amounts.entrySet())
+			release(customerId, amount.getKey(), amount.getValue());
+	}
+
+	/**
+	 * Releases every hold of the given customer, e.g. when they empty their basket.
+	 * @param customerId The id of the customer.
+	 */
+	public synchronized void releaseAll(int customerId) {
+		HashMap<Integer, Hold> customerHolds = holds.remove(customerId);
+		if(customerHolds == null)
+			return;
+
+		for(Hold hold : customerHolds.values()) {
+			wheel.cancel(hold.timeout);
+			available.increment(hold.barcode, hold.amount);
+		}
+	}
+
+	/**
+	 * Turns the given customer's holds on their basket into sales, after
+	 * the basket has been checked out. The sold stock stays unavailable. Any
+	 * part of the basket which was not held is taken from the available stock.
+	 * @param customer The customer whose basket was checked out.
+	 */
+	public synchronized void commit(Customer customer) {
+		for(int i = 0; i < customer.basketSize(); i++) {
+			BasketEntry entry = customer.getFromBasket(i);
+			int barcode = entry.getProduct().getBarcode();
+			Hold hold = holdOf(customer.getId(), barcode);
+
+			int held = hold == null ? 0 : Math.min(hold.amount, entry.getQuantity());
+			if(hold != null)
+				reduce(hold, held);
+			if(entry.getQuantity() > held)
+				stockChanged(barcode, held - entry.getQuantity());
+		}
+	}
+	//End methods for changing holds.
+
+	//Methods for keeping the available stock up to date.
+	/**
+	 * Adds a product which has been added to stock.
+	 * @param product The product added to stock.
+	 */
+	public void addProduct(Product product) {
+		available.add(product);
+	}
+
+	/**
+	 * Adds products which have been added to stock together, e.g. when the
+	 * stock is replaced.
+	 * @param products The products added to stock.
+	 */
+	public void addProducts(List<Product> products) {
+		available.addAll(products);
+	}
+
+	/**
+	 * Removes a product which has been removed from stock, dropping every
+	 * hold on it without returning its stock. If the product is added
+	 * again, its new stock is all available.
+	 * @param barcode The bar code of the product removed from stock.
+	 */
+	public synchronized void removeProduct(int barcode) {
+		for(HashMap<Integer, Hold> customerHolds : new ArrayList<HashMap<Integer, Hold>>(holds.values())) {
+			Hold hold = customerHolds.get(barcode);
+			if(hold != null)
+				reduce(hold, hold.amount);
+		}
+		available.remove(barcode);
+	}
+
+	/**
+	 * Changes the available stock of the product with the given bar code
+	 * after its stock has changed by the given amount, e.g. when it is
+	 * restocked. If stock is removed which is held, the available stock
+	 * falls to zero and the holds are left as they are; the StorageEngine
+	 * will refuse to sell more than is in stock.
+	 * @param barcode The bar code of the product.
+	 * @param delta The change in stock.
+	 */
+	public void stockChanged(int barcode, int delta) {
+		if(!available.contains(barcode))
+			return;
+
+		if(delta > 0)
+			available.increment(barcode, delta);
+		else {
+			//Take as much of the removed stock as is available.
+			int taken = -delta;
+			while(taken > 0 && !available.decrementIfAvailable(barcode, taken))
+				taken = Math.min(taken, available.getQuantity(barcode));
+		}
+	}
+	//End methods for keeping the available stock up to date.
+
+	/**
+	 * Stops expiring holds. The holds are kept until they are released or committed.
+	 */
+	@Override
+	public void close() {
+		wheel.stop();
+	}
+
+	/**
+	 * Releases the hold of the given timeout, unless it has been renewed since.
+	 */
+	private synchronized void expire(TimingWheel.Timeout<Hold> timeout) {
+		Hold hold = timeout.getItem();
+		if(hold.timeout != timeout || holdOf(hold.customerId, hold.barcode) != hold)
+			return;
+
+		available.increment(hold.barcode, hold.amount);
+		hold.timeout = null;
+		reduce(hold, hold.amount);
+	}
+
+	/**
+	 * Restarts the time until the given hold expires.
+	 */
+	private void renew(Hold hold) {
+		wheel.cancel(hold.timeout);
+		hold.timeout = wheel.schedule(hold, holdMillis);
+	}
+
+	/**
+	 * Reduces the given hold by the given amount, removing it if nothing remains held.
+	 */
+	private void reduce(Hold hold, int amount) {
+		hold.amount -= amount;
+		if(hold.amount > 0)
+			return;
+
+		wheel.cancel(hold.timeout);
+		HashMap<Integer, Hold> customerHolds = holds.get(hold.customerId);
+		customerHolds.remove(hold.barcode);
+		if(customerHolds.isEmpty())
+			holds.remove(hold.customerId);
+	}
+
+	/**
+	 * Returns the given customer's hold on the given product, or null if there is none.
+	 */
+	private Hold holdOf(int customerId, int barcode) {
+		HashMap<Integer, Hold> customerHolds = holds.get(customerId);
+		return customerHolds == null ? null : customerHolds.get(barcode);
+	}
+
+	/**
+	 * Returns the holds of the given customer, creating the map if necessary.
+	 */
+	private HashMap<Integer, Hold> holdsOf(int customerId) {
+		HashMap<Integer, Hold> customerHolds = holds.get(customerId);
+		if(customerHolds == null) {
+			customerHolds = new HashMap<Integer, Hold>();
+			holds.put(customerId, customerHolds);
+		}
+		return customerHolds;
+	}
+}
@@ -0,0 +1,253 @@
+/**
+ * A StockSnapshot is a binary copy of the stock file which can be loaded
+ * without parsing text. It is written alongside the stock file and records
+ * the size and modification time of the stock file it copies, so a snapshot
+ * is only used while the stock file is unchanged.
+ * <p>
+ * The snapshot starts with a header holding a magic number, the format
+ * version, the record size, the number of products and strings, and the
+ * stock file's size and modification time. The header is followed by a
+ * dictionary of the brands and colours, each as a length and UTF-8 bytes,
+ * then a fixed width record per product, and finally a CRC32 checksum of
+ * everything before it. Each record holds the bar code, quantity, prices in
+ * pence, the dictionary ids of the brand and colour, the device class, the
+ * ordinal of the device type, whether the product is wired, and the ordinal
+ * of the keyboard layout or the mouse's button count. As enum ordinals are
+ * stored, VERSION must be increased if the enums are reordered.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+
+public class StockSnapshot {
+	private static final int MAGIC = 0x43415353;
+	private static final short VERSION = 1;
+	private static final int HEADER_SIZE = 32;
+	private static final int RECORD_SIZE = 40;
+	private static final int CHECKSUM_SIZE = 4;
+
+	private static final byte KEYBOARD = 0;
+	private static final byte MOUSE = 1;
+
+	private final File snapshotFile;
+
+	/**
+	 * Creates a StockSnapshot which reads from and writes to the file at the given path.
+	 * @param snapshotPath The file path of the snapshot.
+	 */
+	public StockSnapshot(String snapshotPath) {
+		if(snapshotPath == null)
+			throw new IllegalArgumentException("Snapshot path is null");
+
+		this.snapshotFile = new File(snapshotPath);
+	}
+
+	/**
+	 * Writes the given products to the snapshot, replacing its contents.
+	 * The products must be the same as those in the given stock file.
+	 * @param products The products in the stock file.
+	 * @param stockFile The stock file which the snapshot copies.
+	 * @throws IOException Thrown if the snapshot cannot be written.
+	 */
+	public void write(Inventory products, File stockFile) throws IOException {
+		//Give every brand and colour an id.
+		HashMap<String, Integer> ids = new HashMap<String, Integer>();
+		ArrayList<byte[]> strings = new ArrayList<byte[]>();
+		int stringBytes = 0;
+		for(int i = 0; i < products.size(); i++) {
+			Product p = products.get(i);
+			stringBytes += addString(p.getBrand(), ids, strings);
+			stringBytes += addString(p.getColour(), ids, strings);
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + stringBytes +
+				products.size() * RECORD_SIZE + CHECKSUM_SIZE);
+		buffer.putInt(MAGIC);
+		buffer.putShort(VERSION);
+		buffer.putShort((short)RECORD_SIZE);
+		buffer.putInt(products.size());
+		buffer.putInt(strings.size());
+		buffer.putLong(stockFile.length());
+		buffer.putLong(stockFile.lastModified());
+
+		for(byte[] str : strings) {
+			buffer.putShort((short)str.length);
+			buffer.put(str);
+		}
+
+		for(int i = 0; i < products.size(); i++) {
+			Product p = products.get(i);
+			buffer.putInt(p.getBarcode());
+			buffer.putInt(p.getQuantity());
+			buffer.putLong(p.getOriginalCostPence());
+			buffer.putLong(p.getRetailPricePence());
+			buffer.putInt(ids.get(p.getBrand()));
+			buffer.putInt(ids.get(p.getColour()));
+
+			if(p instanceof Keyboard) {
+				Keyboard k = (Keyboard)p;
+				buffer.put(KEYBOARD);
+				buffer.put((byte)k.getType().ordinal());
+				buffer.put((byte)(k.isWired() ? 1 : 0));
+				buffer.put((byte)0);
+				buffer.putInt(k.getLayout().ordinal());
+			}
+			else if(p instanceof Mouse) {
+				Mouse m = (Mouse)p;
+				buffer.put(MOUSE);
+				buffer.put((byte)m.getType().ordinal());
+				buffer.put((byte)(m.isWired() ? 1 : 0));
+				buffer.put((byte)0);
+				buffer.putInt(m.getButtonCount());
+			}
+			else
+				throw new IllegalArgumentException("Product " + p.getBarcode() + " has an unknown device class");
+		}
+
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, buffer.position());
+		buffer.putInt((int)crc.getValue());
+		buffer.flip();
+
+		//Replace the snapshot in one step so that a partly written snapshot is never read.
+		File tempFile = new File(snapshotFile.getPath() + ".tmp");
+		try(FileChannel channel = FileChannel.open(tempFile.toPath(), StandardOpenOption.CREATE,
+				StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			while(buffer.hasRemaining())
+				channel.write(buffer);
+		}
+		Files.move(tempFile.toPath(), snapshotFile.toPath(),
+				StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	/**
+	 * Adds the given string to the dictionary if it is not already there.
+	 * @return The number of bytes added to the dictionary.
+	 */
+	private static int addString(String str, HashMap<String, Integer> ids, ArrayList<byte[]> strings) {
+		if(ids.containsKey(str))
+			return 0;
+
+		byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+		if(bytes.length > Short.MAX_VALUE)
+			throw new IllegalArgumentException("String " + str + " is too long for a snapshot");
+
+		ids.put(str, strings.size());
+		strings.add(bytes);
+		return 2 + bytes.length;
+	}
+
+	/**
+	 * Reads the products in the snapshot, if it is a copy of the given stock
+	 * file as it is now. A snapshot which is damaged is reported and ignored.
+	 * @param stockFile The stock file which the snapshot should copy.
+	 * @return The products in the snapshot, or null if there is no snapshot
+	 * of the stock file.
+	 * @throws IOException Thrown if the snapshot cannot be read.
+	 */
+	public Inventory read(File stockFile) throws IOException {
+		if(!snapshotFile.exists())
+			return null;
+
+		ByteBuffer buffer;
+		try(FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+			if(channel.size() < HEADER_SIZE + CHECKSUM_SIZE || channel.size() > Integer.MAX_VALUE)
+				return damaged("it has an invalid size");
+
+			//Read the whole snapshot at once.
+			buffer = ByteBuffer.allocate((int)channel.size());
+			while(buffer.hasRemaining()) {
+				if(channel.read(buffer) < 0)
+					return damaged("it is shorter than expected");
+			}
+			buffer.flip();
+		}
+
+		if(buffer.getInt() != MAGIC)
+			return damaged("it is not a stock snapshot");
+		if(buffer.getShort() != VERSION || buffer.getShort() != RECORD_SIZE)
+			return null;
+
+		int productCount = buffer.getInt();
+		int stringCount = buffer.getInt();
+		if(buffer.getLong() != stockFile.length() || buffer.getLong() != stockFile.lastModified())
+			return null;
+
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, buffer.limit() - CHECKSUM_SIZE);
+		if(buffer.getInt(buffer.limit() - CHECKSUM_SIZE) != (int)crc.getValue())
+			return damaged("its checksum does not match");
+
+		try {
+			String[] strings = new String[stringCount];
+			for(int i = 0; i < stringCount; i++) {
+				int length = buffer.getShort();
+				strings[i] = new String(buffer.array(), buffer.position(), length, StandardCharsets.UTF_8);
+				buffer.position(buffer.position() + length);
+			}
+
+			if(buffer.remaining() != (long)productCount * RECORD_SIZE + CHECKSUM_SIZE)
+				return damaged("it has the wrong number of products");
+
+			KeyboardType[] keyboardTypes = KeyboardType.values();
+			KeyboardLayout[] layouts = KeyboardLayout.values();
+			MouseType[] mouseTypes = MouseType.values();
+
+			Inventory products = new Inventory();
+			for(int i = 0; i < productCount; i++) {
+				int barcode = buffer.getInt();
+				int quantity = buffer.getInt();
+				long originalCost = buffer.getLong();
+				long retailPrice = buffer.getLong();
+				String brand = strings[buffer.getInt()];
+				String colour = strings[buffer.getInt()];
+				byte deviceClass = buffer.get();
+				byte type = buffer.get();
+				boolean isWired = buffer.get() != 0;
+				buffer.get();
+				int extra = buffer.getInt();
+
+				if(deviceClass == KEYBOARD)
+					products.add(new Keyboard(barcode, brand, colour, isWired,
+							keyboardTypes[type], layouts[extra], originalCost, retailPrice, quantity));
+				else if(deviceClass == MOUSE)
+					products.add(new Mouse(barcode, brand, colour, isWired,
+							mouseTypes[type], extra, originalCost, retailPrice, quantity));
+				else
+					throw new IllegalArgumentException("Device class " + deviceClass + " is unknown");
+			}
+
+			return products;
+		}
+		catch(RuntimeException e) {
+			return damaged(e.toString());
+		}
+	}
+
+	/**
+	 * Deletes the snapshot, e.g. when the stock file has been replaced.
+	 * @throws IOException Thrown if the snapshot cannot be deleted.
+	 */
+	public void delete() throws IOException {
+		Files.deleteIfExists(snapshotFile.toPath());
+	}
+
+	/**
+	 * Reports that the snapshot cannot be used and returns null.
+	 */
+	private Inventory damaged(String reason) {
+		System.err.println("Stock snapshot " + snapshotFile + " is ignored because " + reason + ".");
+		return null;
+	}
+}
@@ -0,0 +1,124 @@
+/**
+ * A StorageEngine keeps the products, user accounts and activity logs used
+ * by a Database. FlatFileStorageEngine keeps them in text files and
+ * SqlStorageEngine keeps them in an embedded SQL database.
+ * <p>
+ * Products returned by an engine are copies, so modifying them does not
+ * affect the engine until they are passed back to it.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public interface StorageEngine extends Closeable {
+
+	//Methods for handling products.
+	/**
+	 * Returns every product in stock.
+	 * @return An Inventory of every product in stock.
+	 * @throws IOException Thrown if the products cannot be read.
+	 */
+	public Inventory getProducts() throws IOException;
+
+	/**
+	 * Returns an immutable snapshot of every product in stock. A snapshot
+	 * with the same version as an earlier one holds the same products.
+	 * @return A snapshot of every product in stock.
+	 * @throws IOException Thrown if the products cannot be read.
+	 */
+	public InventorySnapshot getSnapshot() throws IOException;
+
+	/**
+	 * Returns the product with the given bar code.
+	 * @param barcode The bar code of the product.
+	 * @return The product with the given bar code, or null if there is none.
+	 * @throws IOException Thrown if the product cannot be read.
+	 */
+	public Product getProduct(int barcode) throws IOException;
+
+	/**
+	 * Adds the given product, unless a product with the same bar code already exists.
+	 * @param product The product to add.
+	 * @return true if the product was added. Returns false if its bar code is already in use.
+	 * @throws IOException Thrown if the product cannot be written.
+	 */
+	public boolean addProduct(Product product) throws IOException;
+
+	/**
+	 * Sets the quantity in stock of the product with the given bar code.
+	 * @param barcode The bar code of the product whose quantity is set.
+	 * @param quantity The new quantity in stock.
+	 * @throws IOException Thrown if the product cannot be read or written.
+	 */
+	public void updateQuantity(int barcode, int quantity) throws IOException;
+
+	/**
+	 * Changes the quantity in stock of the product with the given bar code.
+	 * @param barcode The bar code of the product whose quantity is changed.
+	 * @param delta The amount to add to the quantity. Negative to remove stock.
+	 * @param reason A description of why the quantity changed, e.g. "purchased".
+	 * @throws IOException Thrown if the product cannot be read or written.
+	 */
+	public void adjustQuantity(int barcode, int delta, String reason) throws IOException;
+
+	/**
+	 * Checks out the given Customer's basket as a single transaction,
+	 * decreasing the quantity of every product in it and writing an
+	 * ActivityLog for each. If any BasketEntry cannot be fulfilled, no
+	 * changes are made.
+	 * @param customer The Customer whose basket is being checked out.
+	 * @param paymentType The payment type used for the checkout, e.g. "PayPal".
+	 * @throws IOException Thrown if the products or activity logs cannot be read or written.
+	 */
+	public void checkout(Customer customer, String paymentType) throws IOException;
+
+	/**
+	 * Replaces the products in stock with those in the given Inventory.
+	 * @param products The products which should be in stock.
+	 * @throws IOException Thrown if the products cannot be written.
+	 */
+	public void writeProducts(Inventory products) throws IOException;
+	//End methods for handling products.
+
+	//Methods for handling users.
+	/**
+	 * Returns every User.
+	 * @return An ArrayList of every User.
+	 * @throws IOException Thrown if the users cannot be read.
+	 */
+	public ArrayList<User> getUsers() throws IOException;
+
+	/**
+	 * Returns the User with the given id.
+	 * @param id The id of the User.
+	 * @return The User with the given id, or null if there is none.
+	 * @throws IOException Thrown if the users cannot be read.
+	 */
+	public User getUser(int id) throws IOException;
+	//End methods for handling users.
+
+	/**
+	 * Writes the given ActivityLogs together.
+	 * @param logs The ActivityLogs to write.
+	 * @throws IOException Thrown if the ActivityLogs cannot be written.
+	 */
+	public void writeActivityLogs(List<ActivityLog> logs) throws IOException;
+
+	/**
+	 * Writes any changes which have not yet been written.
+	 * @throws IOException Thrown if the changes cannot be written.
+	 */
+	public void flush() throws IOException;
+
+	/**
+	 * Writes any changes which have not yet been written and releases the
+	 * engine's files. The engine should not be used after it is closed.
+	 * @throws IOException Thrown if the changes cannot be written.
+	 */
+	@Override
+	public void close() throws IOException;
+}
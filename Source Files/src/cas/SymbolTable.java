@@ -0,0 +1,96 @@
+/**
+ * A SymbolTable gives each distinct string it is asked for a small int id,
+ * numbered from 0 in the order they were first seen, and keeps one copy of
+ * each string. Products hold the ids of their brand and colour rather than
+ * their own strings, so a large stock file in which thousands of products
+ * share a brand keeps only one copy of it, and products can be compared by
+ * brand or colour with int equality.
+ * <p>
+ * Ids are never reused and strings are never removed, which is suitable
+ * for brands and colours as there are few distinct ones. A SymbolTable is
+ * safe to use from several threads, e.g. while a ParallelStockLoader parses
+ * chunks of a file; looking up the string of an id does not lock.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class SymbolTable {
+	private static final int INITIAL_CAPACITY = 64;
+
+	private final ConcurrentHashMap<String, Integer> ids;
+	//The string of each id. Replaced when it grows, and written again after each id is added,
+	//so a thread which has been given an id sees its string.
+	private volatile String[] symbols;
+	private int size;
+
+	/**
+	 * Creates an empty SymbolTable.
+	 */
+	public SymbolTable() {
+		this.ids = new ConcurrentHashMap<String, Integer>();
+		this.symbols = new String[INITIAL_CAPACITY];
+	}
+
+	/**
+	 * Returns the id of the given string, giving it the next id if it has
+	 * not been seen before.
+	 * @param symbol The string whose id is returned.
+	 * @return The id of the string.
+	 */
+	public int intern(String symbol) {
+		if(symbol == null)
+			throw new IllegalArgumentException("Symbol is null.");
+
+		Integer id = ids.get(symbol);
+		if(id != null)
+			return id;
+
+		synchronized(this) {
+			id = ids.get(symbol);
+			if(id != null)
+				return id;
+
+			String[] grown = symbols;
+			if(size == grown.length)
+				grown = Arrays.copyOf(grown, size * 2);
+			grown[size] = symbol;
+			symbols = grown;
+			ids.put(symbol, size);
+			return size++;
+		}
+	}
+
+	/**
+	 * Returns the id of the given string without adding it.
+	 * @param symbol The string whose id is returned.
+	 * @return The id of the string, or -1 if it has not been seen.
+	 */
+	public int idOf(String symbol) {
+		Integer id = symbol == null ? null : ids.get(symbol);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the string with the given id.
+	 * @param id An id returned by intern.
+	 * @return The string with the id.
+	 */
+	public String get(int id) {
+		String[] current = symbols;
+		if(id < 0 || id >= current.length || current[id] == null)
+			throw new IndexOutOfBoundsException(id + " is not a symbol id.");
+
+		return current[id];
+	}
+
+	/**
+	 * Returns the number of distinct strings held.
+	 * @return The number of distinct strings held.
+	 */
+	public int size() {
+		return ids.size();
+	}
+}
@@ -0,0 +1,220 @@
+/**
+ * A TimingWheel runs a callback for each item scheduled on it once the
+ * item's delay has passed. Time is divided into ticks and the wheel has a
+ * fixed number of slots, one per tick, each holding a list of the timeouts
+ * which fall due on that tick modulo the number of slots. Scheduling and
+ * cancelling a timeout take constant time however many are scheduled, and
+ * each tick only looks at the timeouts in one slot, so the wheel suits
+ * many short lived timeouts which are mostly cancelled before they expire.
+ * <p>
+ * Timeouts expire up to one tick late. The wheel is advanced by a
+ * background thread once started, or by calling advance.
+ * @author Joseph Marcus Tungate
+ */
+package cas;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+public class TimingWheel<T> {
+
+	/**
+	 * Called for each timeout which expires.
+	 */
+	public interface Expiry<T> {
+		public void expired(Timeout<T> timeout);
+	}
+
+	/**
+	 * An item scheduled on the wheel, linked into the list of its slot.
+	 */
+	public static final class Timeout<T> {
+		private final T item;
+		private final long deadline;
+		private Timeout<T> previous;
+		private Timeout<T> next;
+		private boolean isScheduled;
+
+		private Timeout(T item, long deadline) {
+			this.item = item;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Returns the item which was scheduled.
+		 * @return The item which was scheduled.
+		 */
+		public T getItem() {
+			return this.item;
+		}
+	}
+
+	private final long tickNanos;
+	private final Timeout<T>[] slots;
+	private final Expiry<T> expiry;
+	private final long startNanos;
+	//The last tick whose slot has been processed.
+	private long currentTick;
+	private ScheduledExecutorService executor;
+
+	/**
+	 * Creates a TimingWheel with the given tick length and number of slots.
+	 * @param tickMillis The length of a tick in milliseconds.
+	 * @param slotCount The number of slots in the wheel.
+	 * @param expiry The callback run for each timeout which expires.
+	 */
+	@SuppressWarnings({"unchecked", "rawtypes"})
+	public TimingWheel(long tickMillis, int slotCount, Expiry<T> expiry) {
+		if(tickMillis <= 0)
+			throw new IllegalArgumentException("Tick length must be positive");
+		if(slotCount <= 0)
+			throw new IllegalArgumentException("Slot count must be positive");
+		if(expiry == null)
+			throw new IllegalArgumentException("Expiry is null");
+
+		this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+		this.slots = (Timeout<T>[])new Timeout[slotCount];
+		this.expiry = expiry;
+		this.startNanos = System.nanoTime();
+	}
+
+	/**
+	 * Schedules the given item to expire once the given delay has passed.
+	 * @param item The item to schedule.
+	 * @param delayMillis The delay in milliseconds.
+	 * @return The Timeout of the item, which can be used to cancel it.
+	 */
+	public synchronized Timeout<T> schedule(T item, long delayMillis) {
+		if(delayMillis < 0)
+			throw new IllegalArgumentException("Delay is negative");
+
+		long ticks = Math.max(1, (TimeUnit.MILLISECONDS.toNanos(delayMillis) + tickNanos - 1) / tickNanos);
+		Timeout<T> timeout = new Timeout<T>(item, Math.max(elapsedTicks(), currentTick) + ticks);
+
+		int slot = slotOf(timeout.deadline);
+		timeout.next = slots[slot];
+		if(slots[slot] != null)
+			slots[slot].previous = timeout;
+		slots[slot] = timeout;
+		timeout.isScheduled = true;
+		return timeout;
+	}
+
+	/**
+	 * Cancels the given timeout, so that it does not expire.
+	 * @param timeout The timeout to cancel.
+	 * @return true if the timeout was cancelled. Returns false if it had
+	 * already expired or been cancelled.
+	 */
+	public synchronized boolean cancel(Timeout<T> timeout) {
+		if(timeout == null || !timeout.isScheduled)
+			return false;
+
+		unlink(timeout);
+		return true;
+	}
+
+	/**
+	 * Processes every tick which has passed since the wheel was last
+	 * advanced, running the callback for each timeout which has expired.
+	 * The callbacks are run after the wheel is unlocked, so they may
+	 * schedule or cancel timeouts.
+	 */
+	public void advance() {
+		ArrayList<Timeout<T>> expired = new ArrayList<Timeout<T>>();
+
+		synchronized(this) {
+			long target = elapsedTicks();
+			//After a long pause every slot is processed once, which catches every expired timeout.
+			if(target - currentTick > slots.length)
+				currentTick = target - slots.length;
+
+			while(currentTick < target) {
+				currentTick++;
+				Timeout<T> timeout = slots[slotOf(currentTick)];
+				while(timeout != null) {
+					Timeout<T> next = timeout.next;
+					if(timeout.deadline <= currentTick) {
+						unlink(timeout);
+						expired.add(timeout);
+					}
+					timeout = next;
+				}
+			}
+		}
+
+		for(Timeout<T> timeout : expired) {
+			try {
+				expiry.expired(timeout);
+			}
+			catch(RuntimeException e) {
+				System.err.println("A timeout could not be expired.\n" + e.getMessage());
+			}
+		}
+	}
+
+	/**
+	 * Starts a background thread which advances the wheel once per tick.
+	 */
+	public synchronized void start() {
+		if(executor != null)
+			return;
+
+		executor = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, "Timing wheel");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+		executor.scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				advance();
+			}
+		}, tickNanos, tickNanos, TimeUnit.NANOSECONDS);
+	}
+
+	/**
+	 * Stops the background thread. Scheduled timeouts no longer expire
+	 * unless the wheel is advanced by calling advance.
+	 */
+	public synchronized void stop() {
+		if(executor != null) {
+			executor.shutdown();
+			executor = null;
+		}
+	}
+
+	/**
+	 * Returns the number of ticks since the wheel was created.
+	 */
+	private long elapsedTicks() {
+		return (System.nanoTime() - startNanos) / tickNanos;
+	}
+
+	/**
+	 * Returns the slot of the given tick.
+	 */
+	private int slotOf(long tick) {
+		return (int)(tick % slots.length);
+	}
+
+	/**
+	 * Removes the given timeout from the list of its slot.
+	 */
+	private void unlink(Timeout<T> timeout) {
+		if(timeout.previous != null)
+			timeout.previous.next = timeout.next;
+		else
+			slots[slotOf(timeout.deadline)] = timeout.next;
+		if(timeout.next != null)
+			timeout.next.previous = timeout.previous;
+
+		timeout.previous = null;
+		timeout.next = null;
+		timeout.isScheduled = false;
+	}
+}